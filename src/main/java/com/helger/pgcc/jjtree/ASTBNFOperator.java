@@ -0,0 +1,71 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.jjtree;
+
+import com.helger.pgcc.parser.EOperatorKind;
+
+/**
+ * A single operator of an OPERATORS expansion. If it has a node descriptor, a
+ * definite node is created every time the operator is applied to its operands.
+ */
+public class ASTBNFOperator extends JJTreeNode
+{
+  /** May be <code>null</code> for unknown kinds */
+  EOperatorKind m_kind;
+  /** <code>null</code> if no node is created */
+  NodeScope m_node_scope;
+
+  ASTBNFOperator (final int nID)
+  {
+    super (nID);
+  }
+
+  /**
+   * @return the number of child nodes of the created node
+   */
+  String getArity ()
+  {
+    final ASTNodeDescriptor nd = m_node_scope.getNodeDescriptor ();
+    if (nd.m_expression != null)
+      return nd.expression_text ();
+    return Integer.toString (m_kind == null ? 2 : m_kind.getOperandCount ());
+  }
+
+  /** Accept the visitor. **/
+  @Override
+  public Object jjtAccept (final JJTreeParserVisitor visitor, final Object data)
+  {
+    return visitor.visit (this, data);
+  }
+}
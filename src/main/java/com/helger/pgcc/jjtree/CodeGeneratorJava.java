@@ -44,6 +44,8 @@ import java.util.Map;
 import com.helger.commons.string.StringHelper;
 import com.helger.pgcc.jjtree.output.JJTreeStateJava;
 import com.helger.pgcc.jjtree.output.NodeFilesJava;
+import com.helger.pgcc.parser.EOperatorKind;
+import com.helger.pgcc.parser.JavaCCErrors;
 import com.helger.pgcc.parser.JavaCCGlobals;
 
 public class CodeGeneratorJava extends DefaultJJTreeVisitor
@@ -82,6 +84,9 @@ public class CodeGeneratorJava extends DefaultJJTreeVisitor
     final NodeScope ns = NodeScope.getEnclosingNodeScope (node);
     if (ns != null && !ns.isVoid ())
     {
+      if (JJTreeOptions.isNodeStorageFlat ())
+        _checkReturnJjtThis (node);
+
       boolean needClose = true;
       final Node sp = node.getScopingParent (ns);
 
@@ -123,6 +128,111 @@ public class CodeGeneratorJava extends DefaultJJTreeVisitor
     return visit ((JJTreeNode) node, io);
   }
 
+  /**
+   * With NODE_STORAGE=flat the children of a node are only stored in the
+   * arrays of the tree state, so a node returned from its own scope via
+   * <code>return jjtThis</code> has no children.
+   */
+  private static void _checkReturnJjtThis (final JJTreeNode node)
+  {
+    Token t = node.getFirstToken ();
+    while (t != null && t != node.getLastToken ())
+    {
+      if (t.image.equals ("return") && t.next != null && t.next.image.equals ("jjtThis"))
+      {
+        JavaCCErrors.warning ("Line " +
+                              t.beginLine +
+                              ", Column " +
+                              t.beginColumn +
+                              ": The node returned by \"return jjtThis\" has no children with NODE_STORAGE=" +
+                              JJTreeOptions.NODE_STORAGE_FLAT +
+                              ". Use rootNode() or popNode() of the tree state to get a node with its children.");
+      }
+      t = t.next;
+    }
+  }
+
+  @Override
+  public Object visit (final ASTBNFOperator node, final Object data)
+  {
+    final JJTreeIO io = (JJTreeIO) data;
+    final NodeScope ns = node.m_node_scope;
+    if (ns == null)
+    {
+      return visit ((JJTreeNode) node, io);
+    }
+
+    // The regular expression
+    final JJTreeNode regex = (JJTreeNode) node.jjtGetChild (0);
+    regex.jjtAccept (this, io);
+
+    // Print the "whiteOut" equivalent of the Node descriptor to preserve
+    // line numbers in the generated file.
+    final JJTreeNode nd = (JJTreeNode) node.jjtGetChild (1);
+    nd.jjtAccept (this, io);
+
+    /*
+     * The action is executed when the operator is applied, so all operands are
+     * on the stack already and the node is closed immediately with them.
+     */
+    final String indent = getIndentation (regex, 2);
+    io.print (" {");
+    openJJTreeComment (io, ns.getNodeDescriptorText ());
+    io.println ();
+    insertCreateNodeCode (ns, io, indent);
+    io.println (indent + ns.m_node_descriptor.openNode (ns.m_nodeVar));
+    if (JJTreeOptions.isNodeScopeHook ())
+    {
+      io.println (indent + "jjtreeOpenNodeScope(" + ns.m_nodeVar + ");");
+    }
+    if (JJTreeOptions.isTrackTokens () && JJTreeOptions.isNodeStorageFlat ())
+    {
+      // The tree state copies the tokens when the node is closed and takes the
+      // first token of the first child if the node has none
+      if (node.m_kind == EOperatorKind.PREFIX)
+        io.println (indent + ns.m_nodeVar + ".jjtSetFirstToken(jj_op_tokens[jj_op_sp]);");
+      io.println (indent + ns.m_nodeVar + ".jjtSetLastToken(getToken(0));");
+    }
+    io.println (indent + "jjtree.closeNodeScope(" + ns.m_nodeVar + ", " + node.getArity () + ");");
+    if (JJTreeOptions.isNodeScopeHook ())
+    {
+      io.println (indent + "jjtreeCloseNodeScope(" + ns.m_nodeVar + ");");
+    }
+    if (JJTreeOptions.isTrackTokens () && !JJTreeOptions.isNodeStorageFlat ())
+    {
+      if (node.m_kind == EOperatorKind.PREFIX)
+      {
+        // The operator token was pushed together with the operator
+        io.println (indent + ns.m_nodeVar + ".jjtSetFirstToken(jj_op_tokens[jj_op_sp]);");
+      }
+      else
+      {
+        io.println (indent + "if (" + ns.m_nodeVar + ".jjtGetNumChildren() > 0)");
+        io.println (indent +
+                    "  " +
+                    ns.m_nodeVar +
+                    ".jjtSetFirstToken(((" +
+                    (JJTreeOptions.getNodeClass ().length () > 0 ? JJTreeOptions.getNodeClass () : "SimpleNode") +
+                    ") " +
+                    ns.m_nodeVar +
+                    ".jjtGetChild(0)).jjtGetFirstToken());");
+      }
+      io.println (indent + ns.m_nodeVar + ".jjtSetLastToken(getToken(0));");
+    }
+    closeJJTreeComment (io);
+
+    // The action of the operator, if any
+    if (nd.getLastToken () != node.getLastToken ())
+    {
+      for (Token t = nd.getLastToken ().next; t != node.getLastToken ().next; t = t.next)
+      {
+        TokenUtils.print (t, io, "jjtThis", ns.m_nodeVar);
+      }
+    }
+    io.print ("}");
+    return null;
+  }
+
   @Override
   public Object visit (final ASTBNFDeclaration node, final Object data)
   {
@@ -369,17 +479,41 @@ public class CodeGeneratorJava extends DefaultJJTreeVisitor
 
   void insertOpenNodeCode (final NodeScope ns, final JJTreeIO io, final String indent)
   {
-    final String type = ns.m_node_descriptor.getNodeType ();
-    final String nodeClass;
-    if (JJTreeOptions.getNodeClass ().length () > 0 && !JJTreeOptions.isMulti ())
+    insertCreateNodeCode (ns, io, indent);
+
+    if (ns.usesCloseNodeVar ())
     {
-      nodeClass = JJTreeOptions.getNodeClass ();
+      io.println (indent + "boolean " + ns.m_closedVar + " = true;");
     }
-    else
+    if (JJTreeOptions.isTrackTokens () && JJTreeOptions.isNodeStorageFlat ())
     {
-      nodeClass = type;
+      // The tree state indexes the first token when the scope is opened
+      io.println (indent + ns.m_nodeVar + ".jjtSetFirstToken(getToken(1));");
+    }
+    io.println (indent + ns.m_node_descriptor.openNode (ns.m_nodeVar));
+    if (JJTreeOptions.isNodeScopeHook ())
+    {
+      io.println (indent + "jjtreeOpenNodeScope(" + ns.m_nodeVar + ");");
     }
 
+    if (JJTreeOptions.isTrackTokens () && !JJTreeOptions.isNodeStorageFlat ())
+    {
+      io.println (indent + ns.m_nodeVar + ".jjtSetFirstToken(getToken(1));");
+    }
+  }
+
+  private static String _getNodeClass (final NodeScope ns)
+  {
+    if (JJTreeOptions.getNodeClass ().length () > 0 && !JJTreeOptions.isMulti ())
+      return JJTreeOptions.getNodeClass ();
+    return ns.m_node_descriptor.getNodeType ();
+  }
+
+  void insertCreateNodeCode (final NodeScope ns, final JJTreeIO io, final String indent)
+  {
+    final String type = ns.m_node_descriptor.getNodeType ();
+    final String nodeClass = _getNodeClass (ns);
+
     /*
      * Ensure that there is a template definition file for the node type.
      */
@@ -416,26 +550,16 @@ public class CodeGeneratorJava extends DefaultJJTreeVisitor
       {
         io.println ("new " + nodeClass + "(" + parserArg + ns.m_node_descriptor.getNodeId () + ");");
       }
-
-    if (ns.usesCloseNodeVar ())
-    {
-      io.println (indent + "boolean " + ns.m_closedVar + " = true;");
-    }
-    io.println (indent + ns.m_node_descriptor.openNode (ns.m_nodeVar));
-    if (JJTreeOptions.isNodeScopeHook ())
-    {
-      io.println (indent + "jjtreeOpenNodeScope(" + ns.m_nodeVar + ");");
-    }
-
-    if (JJTreeOptions.isTrackTokens ())
-    {
-      io.println (indent + ns.m_nodeVar + ".jjtSetFirstToken(getToken(1));");
-    }
   }
 
   void insertCloseNodeCode (final NodeScope ns, final JJTreeIO io, final String indent, final boolean isFinal)
   {
     final String closeNode = ns.m_node_descriptor.closeNode (ns.m_nodeVar);
+    if (JJTreeOptions.isTrackTokens () && JJTreeOptions.isNodeStorageFlat ())
+    {
+      // The tree state copies the tokens when the node is closed
+      io.println (indent + ns.m_nodeVar + ".jjtSetLastToken(getToken(0));");
+    }
     io.println (indent + closeNode);
     if (ns.usesCloseNodeVar () && !isFinal)
     {
@@ -448,7 +572,7 @@ public class CodeGeneratorJava extends DefaultJJTreeVisitor
       io.println (indent + "}");
     }
 
-    if (JJTreeOptions.isTrackTokens ())
+    if (JJTreeOptions.isTrackTokens () && !JJTreeOptions.isNodeStorageFlat ())
     {
       io.println (indent + ns.m_nodeVar + ".jjtSetLastToken(getToken(0));");
     }
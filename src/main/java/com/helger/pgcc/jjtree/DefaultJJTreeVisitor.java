@@ -171,6 +171,16 @@ public class DefaultJJTreeVisitor implements JJTreeParserVisitor
     return defaultVisit (node, data);
   }
 
+  public Object visit (final ASTBNFOperators node, final Object data)
+  {
+    return defaultVisit (node, data);
+  }
+
+  public Object visit (final ASTBNFOperator node, final Object data)
+  {
+    return defaultVisit (node, data);
+  }
+
   public Object visit (final ASTREStringLiteral node, final Object data)
   {
     return defaultVisit (node, data);
@@ -64,6 +64,7 @@
 
 package com.helger.pgcc.jjtree;
 
+import java.io.File;
 import java.io.IOException;
 
 import javax.annotation.Nonnull;
@@ -202,7 +203,9 @@ public class JJTree
       try
       {
         final JJTreeParser parser = new JJTreeParser (new StreamProvider (io.getIn ()));
+        final Token aFirstToken = parser.token;
         parser.javacc_input ();
+        Options.normalizeTokenFieldAccess (aFirstToken, t -> t.next, t -> t.image);
 
         final ASTGrammar root = (ASTGrammar) parser.jjtree.rootNode ();
         if (Boolean.getBoolean ("jjtree-dump"))
@@ -229,7 +232,10 @@ public class JJTree
             NodeFilesJava.generateTreeConstants_java ();
             NodeFilesJava.generateVisitor_java ();
             NodeFilesJava.generateDefaultVisitor_java ();
+            NodeFilesJava.generateParallelVisitor_java ();
+            NodeFilesJava.generateWalker_java ();
             JJTreeStateJava.generateTreeState_java ();
+            NodeFilesJava.generateTreeSerializer_java (new File (io.getOutputFilename ()));
             break;
           case CPP:
             NodeFilesCpp.generateTreeConstants ();
@@ -126,6 +126,9 @@ public class JJTreeGlobals
     s_jjtreeOptions.add ("VISITOR_RETURN_TYPE");
     s_jjtreeOptions.add ("VISITOR_METHOD_NAME_INCLUDES_TYPE_NAME");
     s_jjtreeOptions.add ("NODE_INCLUDES");
+    s_jjtreeOptions.add ("NODE_STORAGE");
+    s_jjtreeOptions.add ("TREE_SERIALIZER");
+    s_jjtreeOptions.add ("PARALLEL_VISITOR");
   }
 
   static
@@ -78,6 +78,11 @@ import com.helger.pgcc.parser.Options;
  */
 public class JJTreeOptions extends Options
 {
+  /** Every node is an object that references its children */
+  public static final String NODE_STORAGE_OBJECTS = "objects";
+  /** The nodes are stored in arrays of the tree state */
+  public static final String NODE_STORAGE_FLAT = "flat";
+
   /**
    * Limit subclassing to derived classes.
    */
@@ -99,6 +104,8 @@ public class JJTreeOptions extends Options
     Options.s_optionValues.put ("VISITOR", Boolean.FALSE);
     Options.s_optionValues.put ("VISITOR_METHOD_NAME_INCLUDES_TYPE_NAME", Boolean.FALSE);
     Options.s_optionValues.put ("TRACK_TOKENS", Boolean.FALSE);
+    Options.s_optionValues.put ("TREE_SERIALIZER", Boolean.FALSE);
+    Options.s_optionValues.put ("PARALLEL_VISITOR", Boolean.FALSE);
 
     Options.s_optionValues.put ("NODE_PREFIX", "AST");
     Options.s_optionValues.put ("NODE_PACKAGE", "");
@@ -110,6 +117,7 @@ public class JJTreeOptions extends Options
     Options.s_optionValues.put ("VISITOR_DATA_TYPE", "");
     Options.s_optionValues.put ("VISITOR_RETURN_TYPE", "Object");
     Options.s_optionValues.put ("VISITOR_EXCEPTION", "");
+    Options.s_optionValues.put ("NODE_STORAGE", NODE_STORAGE_OBJECTS);
 
     Options.s_optionValues.put ("JJTREE_OUTPUT_DIRECTORY", "");
 
@@ -144,6 +152,49 @@ public class JJTreeOptions extends Options
         JavaCCErrors.warning ("VISITOR_EXCEPTION option will be ignored since VISITOR is false");
       }
     }
+
+    final String sNodeStorage = getNodeStorage ();
+    if (!sNodeStorage.equals (NODE_STORAGE_OBJECTS) && !sNodeStorage.equals (NODE_STORAGE_FLAT))
+    {
+      JavaCCErrors.warning ("Unsupported NODE_STORAGE value '" +
+                            sNodeStorage +
+                            "' - only '" +
+                            NODE_STORAGE_OBJECTS +
+                            "' and '" +
+                            NODE_STORAGE_FLAT +
+                            "' are supported. Using '" +
+                            NODE_STORAGE_OBJECTS +
+                            "'.");
+      Options.s_optionValues.put ("NODE_STORAGE", NODE_STORAGE_OBJECTS);
+    }
+    else
+      if (sNodeStorage.equals (NODE_STORAGE_FLAT) && !getOutputLanguage ().isJava ())
+      {
+        JavaCCErrors.warning ("NODE_STORAGE=" + NODE_STORAGE_FLAT + " is only supported for Java output and will be ignored.");
+        Options.s_optionValues.put ("NODE_STORAGE", NODE_STORAGE_OBJECTS);
+      }
+
+    if (isTreeSerializer () && !getOutputLanguage ().isJava ())
+    {
+      JavaCCErrors.warning ("TREE_SERIALIZER is only supported for Java output and will be ignored.");
+      Options.s_optionValues.put ("TREE_SERIALIZER", Boolean.FALSE);
+    }
+
+    if (isParallelVisitor ())
+    {
+      if (!getOutputLanguage ().isJava ())
+      {
+        JavaCCErrors.warning ("PARALLEL_VISITOR is only supported for Java output and will be ignored.");
+        Options.s_optionValues.put ("PARALLEL_VISITOR", Boolean.FALSE);
+      }
+      else
+        if (getJdkVersion ().isOlderThan (EJDKVersion.JDK_1_8))
+        {
+          // The parallel visitor uses ForkJoinPool.commonPool
+          JavaCCErrors.warning ("PARALLEL_VISITOR requires JDK_VERSION 1.8 or later and will be ignored.");
+          Options.s_optionValues.put ("PARALLEL_VISITOR", Boolean.FALSE);
+        }
+    }
   }
 
   /**
@@ -226,6 +277,51 @@ public class JJTreeOptions extends Options
     return booleanValue ("TRACK_TOKENS");
   }
 
+  /**
+   * Find the tree serializer value. If <code>true</code> a class is generated
+   * that writes trees in a compact binary format and reads them back without
+   * parsing.
+   *
+   * @return The requested tree serializer value.
+   */
+  public static boolean isTreeSerializer ()
+  {
+    return booleanValue ("TREE_SERIALIZER");
+  }
+
+  /**
+   * Find the parallel visitor value. If <code>true</code> and VISITOR is
+   * <code>true</code> an abstract default visitor is generated that visits the
+   * children of nodes with many children in parallel on a fork/join pool.
+   *
+   * @return The requested parallel visitor value.
+   */
+  public static boolean isParallelVisitor ()
+  {
+    return booleanValue ("PARALLEL_VISITOR");
+  }
+
+  /**
+   * Find the node storage value. With {@link #NODE_STORAGE_FLAT} the tree
+   * state keeps the closed nodes in arrays and node objects only exist while
+   * their scope is open or when they are created from the arrays on demand.
+   *
+   * @return The requested node storage value.
+   */
+  public static String getNodeStorage ()
+  {
+    return stringValue ("NODE_STORAGE");
+  }
+
+  /**
+   * @return <code>true</code> if the closed nodes are stored in the arrays of
+   *         the tree state.
+   */
+  public static boolean isNodeStorageFlat ()
+  {
+    return getNodeStorage ().equals (NODE_STORAGE_FLAT);
+  }
+
   /**
    * Find the node prefix value.
    *
@@ -88,6 +88,10 @@ public interface JJTreeParserVisitor
 
   Object visit (ASTBNFParenthesized node, Object data);
 
+  Object visit (ASTBNFOperators node, Object data);
+
+  Object visit (ASTBNFOperator node, Object data);
+
   Object visit (ASTREStringLiteral node, Object data);
 
   Object visit (ASTRENamed node, Object data);
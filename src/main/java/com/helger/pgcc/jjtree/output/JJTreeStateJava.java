@@ -37,17 +37,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UncheckedIOException;
+import java.util.List;
 
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.Immutable;
 
 import com.helger.commons.annotation.Nonempty;
-import com.helger.pgcc.EJDKVersion;
+import com.helger.pgcc.jjtree.ASTNodeDescriptor;
 import com.helger.pgcc.jjtree.JJTreeGlobals;
 import com.helger.pgcc.jjtree.JJTreeIO;
 import com.helger.pgcc.jjtree.JJTreeOptions;
 import com.helger.pgcc.output.OutputFile;
-import com.helger.pgcc.parser.Options;
 
 /**
  * Generate the State of a tree.
@@ -79,7 +79,10 @@ public final class JJTreeStateJava
     try (final OutputFile aOutputFile = new OutputFile (aFile); final PrintWriter ostr = aOutputFile.getPrintWriter ())
     {
       NodeFilesJava.generatePrologue (ostr);
-      _insertState (ostr);
+      if (JJTreeOptions.isNodeStorageFlat ())
+        _insertFlatState (ostr);
+      else
+        _insertState (ostr);
     }
     catch (final IOException e)
     {
@@ -89,28 +92,26 @@ public final class JJTreeStateJava
 
   private static void _insertState (@Nonnull final PrintWriter ostr)
   {
-    final EJDKVersion eJavaVersion = Options.getJdkVersion ();
-    final boolean bEmptyImplType = eJavaVersion.isNewerOrEqualsThan (EJDKVersion.JDK_1_7);
-
     ostr.println ("public class " + _nameState () + " implements java.io.Serializable {");
 
-    ostr.println ("  private java.util.List<Node> nodes;");
-    ostr.println ("  private java.util.List<Integer> marks;");
+    ostr.println ("  private Node[] nodes;");
+    ostr.println ("  private int[] marks;");
 
     ostr.println ();
     ostr.println ("  /* number of nodes on stack */");
     ostr.println ("  private int sp;");
     ostr.println ("  /* current mark */");
     ostr.println ("  private int mk;");
+    ostr.println ("  /* number of saved marks */");
+    ostr.println ("  private int msp;");
     ostr.println ("  private boolean node_created;");
     ostr.println ();
     ostr.println ("  public " + _nameState () + "() {");
-
-    ostr.println ("    nodes = new java.util.ArrayList<" + (bEmptyImplType ? "" : "Node") + ">();");
-    ostr.println ("    marks = new java.util.ArrayList<" + (bEmptyImplType ? "" : "Integer") + ">();");
-
+    ostr.println ("    nodes = new Node[64];");
+    ostr.println ("    marks = new int[64];");
     ostr.println ("    sp = 0;");
     ostr.println ("    mk = 0;");
+    ostr.println ("    msp = 0;");
     ostr.println ("  }");
     ostr.println ();
     ostr.println ("  /* Determines whether the current node was actually closed and");
@@ -123,37 +124,46 @@ public final class JJTreeStateJava
     ostr.println ("  /* Call this to reinitialize the node stack.  It is called");
     ostr.println ("     automatically by the parser's ReInit() method. */");
     ostr.println ("  public void reset() {");
-    ostr.println ("    nodes.clear();");
-    ostr.println ("    marks.clear();");
+    ostr.println ("    java.util.Arrays.fill(nodes, 0, sp, null);");
     ostr.println ("    sp = 0;");
     ostr.println ("    mk = 0;");
+    ostr.println ("    msp = 0;");
     ostr.println ("  }");
     ostr.println ();
     ostr.println ("  /* Returns the root node of the AST.  It only makes sense to call");
     ostr.println ("     this after a successful parse. */");
     ostr.println ("  public Node rootNode() {");
-    ostr.println ("    return nodes.get(0);");
+    ostr.println ("    if (sp == 0) {");
+    ostr.println ("      throw new IndexOutOfBoundsException(\"The node stack is empty\");");
+    ostr.println ("    }");
+    ostr.println ("    return nodes[0];");
     ostr.println ("  }");
     ostr.println ();
     ostr.println ("  /* Pushes a node on to the stack. */");
     ostr.println ("  public void pushNode(Node n) {");
-    ostr.println ("    nodes.add(n);");
-    ostr.println ("    ++sp;");
+    ostr.println ("    if (sp == nodes.length) {");
+    ostr.println ("      final Node[] newNodes = new Node[sp * 2];");
+    ostr.println ("      System.arraycopy(nodes, 0, newNodes, 0, sp);");
+    ostr.println ("      nodes = newNodes;");
+    ostr.println ("    }");
+    ostr.println ("    nodes[sp++] = n;");
     ostr.println ("  }");
     ostr.println ();
     ostr.println ("  /* Returns the node on the top of the stack, and remove it from the");
     ostr.println ("     stack.  */");
     ostr.println ("  public Node popNode() {");
-    ostr.println ("   --sp;");
+    ostr.println ("    --sp;");
     ostr.println ("    if (sp < mk) {");
-    ostr.println ("      mk = marks.remove(marks.size()-1).intValue();");
+    ostr.println ("      mk = marks[--msp];");
     ostr.println ("    }");
-    ostr.println ("    return nodes.remove(nodes.size()-1);");
+    ostr.println ("    final Node n = nodes[sp];");
+    ostr.println ("    nodes[sp] = null;");
+    ostr.println ("    return n;");
     ostr.println ("  }");
     ostr.println ();
     ostr.println ("  /* Returns the node currently on the top of the stack. */");
     ostr.println ("  public Node peekNode() {");
-    ostr.println ("    return nodes.get(nodes.size()-1);");
+    ostr.println ("    return nodes[sp - 1];");
     ostr.println ("  }");
     ostr.println ();
     ostr.println ("  /* Returns the number of children on the stack in the current node");
@@ -164,30 +174,48 @@ public final class JJTreeStateJava
     ostr.println ();
     ostr.println ("  /* Parameter is currently unused. */");
     ostr.println ("  public void clearNodeScope(@SuppressWarnings(\"unused\") final Node n) {");
-    ostr.println ("    while (sp > mk) {");
-    ostr.println ("      popNode();");
-    ostr.println ("    }");
-    ostr.println ("    mk = marks.remove(marks.size()-1).intValue();");
+    ostr.println ("    java.util.Arrays.fill(nodes, mk, sp, null);");
+    ostr.println ("    sp = mk;");
+    ostr.println ("    mk = marks[--msp];");
     ostr.println ("  }");
     ostr.println ();
     ostr.println ("  public void openNodeScope(final Node n) {");
-    ostr.println ("    marks.add(Integer.valueOf(mk));");
+    ostr.println ("    if (msp == marks.length) {");
+    ostr.println ("      final int[] newMarks = new int[msp * 2];");
+    ostr.println ("      System.arraycopy(marks, 0, newMarks, 0, msp);");
+    ostr.println ("      marks = newMarks;");
+    ostr.println ("    }");
+    ostr.println ("    marks[msp++] = mk;");
     ostr.println ("    mk = sp;");
     ostr.println ("    n.jjtOpen();");
     ostr.println ("  }");
     ostr.println ();
+    ostr.println ("  /* Makes the topmost num nodes of the stack the children of n.  They");
+    ostr.println ("     are added from the last to the first one, so that the children");
+    ostr.println ("     array of a SimpleNode is allocated only once with the right");
+    ostr.println ("     size. */");
+    ostr.println ("  private void addChildren(final Node n, final int num) {");
+    ostr.println ("    final int base = sp - num;");
+    ostr.println ("    for (int i = num - 1; i >= 0; --i) {");
+    ostr.println ("      if (base + i < mk) {");
+    ostr.println ("        // The child belongs to an enclosing scope");
+    ostr.println ("        mk = marks[--msp];");
+    ostr.println ("      }");
+    ostr.println ("      final Node c = nodes[base + i];");
+    ostr.println ("      nodes[base + i] = null;");
+    ostr.println ("      c.jjtSetParent(n);");
+    ostr.println ("      n.jjtAddChild(c, i);");
+    ostr.println ("    }");
+    ostr.println ("    sp = base;");
+    ostr.println ("  }");
+    ostr.println ();
     ostr.println ("  /* A definite node is constructed from a specified number of");
     ostr.println ("     children.  That number of nodes are popped from the stack and");
     ostr.println ("     made the children of the definite node.  Then the definite node");
     ostr.println ("     is pushed on to the stack. */");
-    ostr.println ("  public void closeNodeScope(final Node n, final int numIn) {");
-    ostr.println ("    mk = marks.remove(marks.size()-1).intValue();");
-    ostr.println ("    int num = numIn;");
-    ostr.println ("    while (num-- > 0) {");
-    ostr.println ("      Node c = popNode();");
-    ostr.println ("      c.jjtSetParent(n);");
-    ostr.println ("      n.jjtAddChild(c, num);");
-    ostr.println ("    }");
+    ostr.println ("  public void closeNodeScope(final Node n, final int num) {");
+    ostr.println ("    mk = marks[--msp];");
+    ostr.println ("    addChildren(n, num);");
     ostr.println ("    n.jjtClose();");
     ostr.println ("    pushNode(n);");
     ostr.println ("    node_created = true;");
@@ -201,18 +229,599 @@ public final class JJTreeStateJava
     ostr.println ("     constructed and they are left on the stack. */");
     ostr.println ("  public void closeNodeScope(final Node n, final boolean condition) {");
     ostr.println ("    if (condition) {");
-    ostr.println ("      int a = nodeArity();");
-    ostr.println ("      mk = marks.remove(marks.size()-1).intValue();");
-    ostr.println ("      while (a-- > 0) {");
-    ostr.println ("        final Node c = popNode();");
-    ostr.println ("        c.jjtSetParent(n);");
-    ostr.println ("        n.jjtAddChild(c, a);");
-    ostr.println ("      }");
+    ostr.println ("      final int a = nodeArity();");
+    ostr.println ("      mk = marks[--msp];");
+    ostr.println ("      addChildren(n, a);");
     ostr.println ("      n.jjtClose();");
     ostr.println ("      pushNode(n);");
     ostr.println ("      node_created = true;");
     ostr.println ("    } else {");
-    ostr.println ("      mk = marks.remove(marks.size()-1).intValue();");
+    ostr.println ("      mk = marks[--msp];");
+    ostr.println ("      node_created = false;");
+    ostr.println ("    }");
+    ostr.println ("  }");
+    ostr.println ("}");
+  }
+
+  @Nonnull
+  static String getNodeClass ()
+  {
+    return JJTreeOptions.getNodeClass ().length () > 0 ? JJTreeOptions.getNodeClass () : "SimpleNode";
+  }
+
+  static void insertCreateNode (@Nonnull final PrintWriter ostr)
+  {
+    final String sFactory = JJTreeOptions.getNodeFactory ();
+    ostr.println ("  /* Creates the node object of a node kind. */");
+    ostr.println ("  private static Node createNode(final int kind) {");
+    if (sFactory.length () > 0 && !sFactory.equals ("*"))
+    {
+      ostr.println ("    return " + sFactory + ".jjtCreate(kind);");
+    }
+    else
+    {
+      final String sCreate = sFactory.equals ("*") ? ".jjtCreate(kind);" : "(kind);";
+      final String sNew = sFactory.equals ("*") ? "" : "new ";
+      if (JJTreeOptions.isMulti ())
+      {
+        final List <String> aNodeIds = ASTNodeDescriptor.getNodeIds ();
+        final List <String> aNodeNames = ASTNodeDescriptor.getNodeNames ();
+        ostr.println ("    switch (kind) {");
+        for (int i = 0; i < aNodeIds.size (); ++i)
+        {
+          final String sName = aNodeNames.get (i);
+          if (!sName.equals ("void"))
+          {
+            ostr.println ("      case " + NodeFilesJava.nodeConstants () + "." + aNodeIds.get (i) + ":");
+            ostr.println ("        return " + sNew + JJTreeOptions.getNodePrefix () + sName + sCreate);
+          }
+        }
+        ostr.println ("      default:");
+        ostr.println ("        return " + sNew + "SimpleNode" + sCreate);
+        ostr.println ("    }");
+      }
+      else
+        ostr.println ("    return " + sNew + getNodeClass () + sCreate);
+    }
+    ostr.println ("  }");
+  }
+
+  private static void _insertFlatState (@Nonnull final PrintWriter ostr)
+  {
+    final boolean bTrackTokens = JJTreeOptions.isTrackTokens ();
+    final String sNodeClass = getNodeClass ();
+
+    ostr.println ("/* The closed nodes are stored in arrays and identified by their index.");
+    ostr.println ("   Node objects only exist while their scope is open, or when they are");
+    ostr.println ("   created from the arrays by toNode(), rootNode(), popNode() and");
+    ostr.println ("   peekNode().  Values set with jjtSetValue() are not stored.");
+    if (bTrackTokens)
+    {
+      ostr.println ("   The first and last token of the nodes are stored as their index in");
+      ostr.println ("   the token chain, so the state does not keep the tokens reachable.");
+      ostr.println ("   Only toNode(int, Token) and rootNode(Token) set the tokens of the");
+      ostr.println ("   created node objects.");
+    }
+    ostr.println ("*/");
+    ostr.println ("public class " + _nameState () + " implements java.io.Serializable {");
+    ostr.println ("  /* Callback of walk(). */");
+    ostr.println ("  public interface FlatVisitor {");
+    ostr.println ("    /* Called before the children of the node are visited.  Return");
+    ostr.println ("       false to skip the children. */");
+    ostr.println ("    boolean enter(int node);");
+    ostr.println ();
+    ostr.println ("    /* Called after the children of the node were visited. */");
+    ostr.println ("    void leave(int node);");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* index of a missing parent, child or sibling */");
+    ostr.println ("  public static final int NONE = -1;");
+    ostr.println ();
+    ostr.println ("  /* the indices of the nodes on the stack */");
+    ostr.println ("  private int[] nodes;");
+    ostr.println ("  private int[] marks;");
+    ostr.println ();
+    ostr.println ("  /* number of nodes on stack */");
+    ostr.println ("  private int sp;");
+    ostr.println ("  /* current mark */");
+    ostr.println ("  private int mk;");
+    ostr.println ("  /* number of saved marks */");
+    ostr.println ("  private int msp;");
+    ostr.println ("  private boolean node_created;");
+    ostr.println ();
+    ostr.println ("  /* number of stored nodes */");
+    ostr.println ("  private int count;");
+    ostr.println ("  private int[] kind;");
+    ostr.println ("  private int[] parent;");
+    ostr.println ("  private int[] firstChild;");
+    ostr.println ("  private int[] nextSibling;");
+    if (bTrackTokens)
+    {
+      ostr.println ("  /* indices of the first and last token of the nodes */");
+      ostr.println ("  private int[] firstToken;");
+      ostr.println ("  private int[] lastToken;");
+      ostr.println ();
+      ostr.println ("  /* the last indexed token - only the tokens from here on stay");
+      ostr.println ("     reachable from the state */");
+      ostr.println ("  private Token cursor;");
+      ostr.println ("  private int cursorIndex;");
+      ostr.println ("  /* first token and its index of each open scope */");
+      ostr.println ("  private Token[] scopeToken;");
+      ostr.println ("  private int[] scopeTokenIndex;");
+    }
+    ostr.println ();
+    ostr.println ("  public " + _nameState () + "() {");
+    ostr.println ("    nodes = new int[64];");
+    ostr.println ("    marks = new int[64];");
+    ostr.println ("    sp = 0;");
+    ostr.println ("    mk = 0;");
+    ostr.println ("    msp = 0;");
+    ostr.println ("    count = 0;");
+    ostr.println ("    kind = new int[256];");
+    ostr.println ("    parent = new int[256];");
+    ostr.println ("    firstChild = new int[256];");
+    ostr.println ("    nextSibling = new int[256];");
+    if (bTrackTokens)
+    {
+      ostr.println ("    firstToken = new int[256];");
+      ostr.println ("    lastToken = new int[256];");
+      ostr.println ("    scopeToken = new Token[64];");
+      ostr.println ("    scopeTokenIndex = new int[64];");
+    }
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  private static int[] grow(final int[] a, final int size) {");
+    ostr.println ("    final int[] ret = new int[size * 2];");
+    ostr.println ("    System.arraycopy(a, 0, ret, 0, size);");
+    ostr.println ("    return ret;");
+    ostr.println ("  }");
+    ostr.println ();
+    if (bTrackTokens)
+    {
+      ostr.println ("  private static Token[] grow(final Token[] a, final int size) {");
+      ostr.println ("    final Token[] ret = new Token[size * 2];");
+      ostr.println ("    System.arraycopy(a, 0, ret, 0, size);");
+      ostr.println ("    return ret;");
+      ostr.println ("  }");
+      ostr.println ();
+    }
+    ostr.println ("  /* Determines whether the current node was actually closed and");
+    ostr.println ("     pushed.  This should only be called in the final user action of a");
+    ostr.println ("     node scope. */");
+    ostr.println ("  public boolean nodeCreated() {");
+    ostr.println ("    return node_created;");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Call this to reinitialize the node stack.  It is called");
+    ostr.println ("     automatically by the parser's ReInit() method. */");
+    ostr.println ("  public void reset() {");
+    if (bTrackTokens)
+    {
+      ostr.println ("    java.util.Arrays.fill(scopeToken, 0, msp, null);");
+      ostr.println ("    cursor = null;");
+      ostr.println ("    cursorIndex = 0;");
+    }
+    ostr.println ("    count = 0;");
+    ostr.println ("    sp = 0;");
+    ostr.println ("    mk = 0;");
+    ostr.println ("    msp = 0;");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Returns the index of the root node of the AST.  It only makes sense");
+    ostr.println ("     to call this after a successful parse. */");
+    ostr.println ("  public int rootIndex() {");
+    ostr.println ("    if (sp == 0) {");
+    ostr.println ("      throw new IndexOutOfBoundsException(\"The node stack is empty\");");
+    ostr.println ("    }");
+    ostr.println ("    return nodes[0];");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Returns the root node of the AST as objects.  It only makes sense");
+    ostr.println ("     to call this after a successful parse. */");
+    ostr.println ("  public Node rootNode() {");
+    ostr.println ("    return toNode(rootIndex());");
+    ostr.println ("  }");
+    ostr.println ();
+    if (bTrackTokens)
+    {
+      ostr.println ("  /* Returns the root node of the AST as objects with the tokens looked");
+      ostr.println ("     up from first, the token with the index 0. */");
+      ostr.println ("  public Node rootNode(final Token first) {");
+      ostr.println ("    return toNode(rootIndex(), first);");
+      ostr.println ("  }");
+      ostr.println ();
+    }
+    ostr.println ("  /* Returns the number of stored nodes.  The indices of the nodes are");
+    ostr.println ("     0 to getNodeCount()-1, children have smaller indices than their");
+    ostr.println ("     parents. */");
+    ostr.println ("  public int getNodeCount() {");
+    ostr.println ("    return count;");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Returns the id of the node, one of the constants of " + NodeFilesJava.nodeConstants () + ". */");
+    ostr.println ("  public int getKind(final int node) {");
+    ostr.println ("    return kind[node];");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  public String getName(final int node) {");
+    ostr.println ("    return " + NodeFilesJava.nodeConstants () + ".jjtNodeName[kind[node]];");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  public int getParent(final int node) {");
+    ostr.println ("    return parent[node];");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  public int getFirstChild(final int node) {");
+    ostr.println ("    return firstChild[node];");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  public int getNextSibling(final int node) {");
+    ostr.println ("    return nextSibling[node];");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  public int getNumChildren(final int node) {");
+    ostr.println ("    int ret = 0;");
+    ostr.println ("    for (int c = firstChild[node]; c != NONE; c = nextSibling[c]) {");
+    ostr.println ("      ++ret;");
+    ostr.println ("    }");
+    ostr.println ("    return ret;");
+    ostr.println ("  }");
+    ostr.println ();
+    if (bTrackTokens)
+    {
+      ostr.println ("  /* Token indices count the regular tokens of the token chain.  The");
+      ostr.println ("     first token of the first opened node has the index 0.  Returns");
+      ostr.println ("     NONE if the node has no first token. */");
+      ostr.println ("  public int getFirstTokenIndex(final int node) {");
+      ostr.println ("    return firstToken[node];");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  public int getLastTokenIndex(final int node) {");
+      ostr.println ("    return lastToken[node];");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* Returns the index of a token of the token chain, or NONE if it is");
+      ostr.println ("     not part of the chain.  Tokens after the cursor are found by");
+      ostr.println ("     moving the cursor forward, tokens before it by walking from the");
+      ostr.println ("     token to the cursor. */");
+      ostr.println ("  private int tokenIndex(final Token t) {");
+      ostr.println ("    if (t == null) {");
+      ostr.println ("      return NONE;");
+      ostr.println ("    }");
+      ostr.println ("    if (cursor == null) {");
+      ostr.println ("      cursor = t;");
+      ostr.println ("      cursorIndex = 0;");
+      ostr.println ("      return 0;");
+      ostr.println ("    }");
+      ostr.println ("    int i = cursorIndex;");
+      ostr.println ("    for (Token c = cursor; c != null; c = c.next, ++i) {");
+      ostr.println ("      if (c == t) {");
+      ostr.println ("        cursor = t;");
+      ostr.println ("        cursorIndex = i;");
+      ostr.println ("        return i;");
+      ostr.println ("      }");
+      ostr.println ("    }");
+      ostr.println ("    int distance = 0;");
+      ostr.println ("    for (Token c = t; c != null; c = c.next, ++distance) {");
+      ostr.println ("      if (c == cursor) {");
+      ostr.println ("        return cursorIndex - distance;");
+      ostr.println ("      }");
+      ostr.println ("    }");
+      ostr.println ("    return NONE;");
+      ostr.println ("  }");
+      ostr.println ();
+    }
+    ostr.println ("  /* Visits the node and all its descendants in document order.  No");
+    ostr.println ("     recursion is used, so the depth of the tree is not limited by");
+    ostr.println ("     the stack size. */");
+    ostr.println ("  public void walk(final int root, final FlatVisitor visitor) {");
+    ostr.println ("    int node = root;");
+    ostr.println ("    while (true) {");
+    ostr.println ("      if (visitor.enter(node) && firstChild[node] != NONE) {");
+    ostr.println ("        node = firstChild[node];");
+    ostr.println ("        continue;");
+    ostr.println ("      }");
+    ostr.println ("      while (true) {");
+    ostr.println ("        visitor.leave(node);");
+    ostr.println ("        if (node == root) {");
+    ostr.println ("          return;");
+    ostr.println ("        }");
+    ostr.println ("        if (nextSibling[node] != NONE) {");
+    ostr.println ("          node = nextSibling[node];");
+    ostr.println ("          break;");
+    ostr.println ("        }");
+    ostr.println ("        node = parent[node];");
+    ostr.println ("      }");
+    ostr.println ("    }");
+    ostr.println ("  }");
+    ostr.println ();
+    insertCreateNode (ostr);
+    ostr.println ();
+    if (bTrackTokens)
+    {
+      ostr.println ("  /* Creates the node objects of the node and all its descendants");
+      ostr.println ("     without tokens. */");
+      ostr.println ("  public Node toNode(final int node) {");
+      ostr.println ("    return toNode(node, null);");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* Creates the node objects of the node and all its descendants.  The");
+      ostr.println ("     tokens of the nodes are looked up in the token chain starting with");
+      ostr.println ("     first, the token with the index 0.  If first is null the nodes");
+      ostr.println ("     have no tokens. */");
+      ostr.println ("  public Node toNode(final int node, final Token first) {");
+      ostr.println ("    // The tokens of the subtree, found with a single pass over the chain");
+      ostr.println ("    final int lo = firstToken[node];");
+      ostr.println ("    Token[] tokens = null;");
+      ostr.println ("    if (first != null && lo != NONE && lastToken[node] >= lo) {");
+      ostr.println ("      tokens = new Token[lastToken[node] - lo + 1];");
+      ostr.println ("      Token t = first;");
+      ostr.println ("      for (int i = 0; i < lo && t != null; ++i) {");
+      ostr.println ("        t = t.next;");
+      ostr.println ("      }");
+      ostr.println ("      for (int i = 0; i < tokens.length && t != null; ++i) {");
+      ostr.println ("        tokens[i] = t;");
+      ostr.println ("        t = t.next;");
+      ostr.println ("      }");
+      ostr.println ("    }");
+    }
+    else
+    {
+      ostr.println ("  /* Creates the node objects of the node and all its descendants. */");
+      ostr.println ("  public Node toNode(final int node) {");
+    }
+    ostr.println ("    // The created nodes whose children are not complete yet, each");
+    ostr.println ("    // followed by its children created so far");
+    ostr.println ("    Node[] created = new Node[64];");
+    ostr.println ("    int[] open = new int[64];");
+    ostr.println ("    int top = 0;");
+    ostr.println ("    int depth = 0;");
+    ostr.println ("    int c = node;");
+    ostr.println ("    while (true) {");
+    ostr.println ("      if (top == created.length) {");
+    ostr.println ("        created = java.util.Arrays.copyOf(created, top * 2);");
+    ostr.println ("      }");
+    ostr.println ("      if (depth == open.length) {");
+    ostr.println ("        open = grow(open, depth);");
+    ostr.println ("      }");
+    ostr.println ("      final Node n = createNode(kind[c]);");
+    ostr.println ("      n.jjtOpen();");
+    ostr.println ("      open[depth++] = top;");
+    ostr.println ("      created[top++] = n;");
+    ostr.println ("      if (firstChild[c] != NONE) {");
+    ostr.println ("        c = firstChild[c];");
+    ostr.println ("        continue;");
+    ostr.println ("      }");
+    ostr.println ("      while (true) {");
+    ostr.println ("        final int p = open[--depth];");
+    ostr.println ("        final Node parentNode = created[p];");
+    ostr.println ("        // Add the last child first, so that the children array is");
+    ostr.println ("        // allocated only once");
+    ostr.println ("        for (int i = top - 1; i > p; --i) {");
+    ostr.println ("          created[i].jjtSetParent(parentNode);");
+    ostr.println ("          parentNode.jjtAddChild(created[i], i - p - 1);");
+    ostr.println ("          created[i] = null;");
+    ostr.println ("        }");
+    ostr.println ("        top = p + 1;");
+    if (bTrackTokens)
+    {
+      ostr.println ("        if (tokens != null) {");
+      ostr.println ("          ((" + sNodeClass + ") parentNode).jjtSetFirstToken(tokenAt(tokens, lo, firstToken[c]));");
+      ostr.println ("          ((" + sNodeClass + ") parentNode).jjtSetLastToken(tokenAt(tokens, lo, lastToken[c]));");
+      ostr.println ("        }");
+    }
+    ostr.println ("        parentNode.jjtClose();");
+    ostr.println ("        if (c == node) {");
+    ostr.println ("          return parentNode;");
+    ostr.println ("        }");
+    ostr.println ("        if (nextSibling[c] != NONE) {");
+    ostr.println ("          c = nextSibling[c];");
+    ostr.println ("          break;");
+    ostr.println ("        }");
+    ostr.println ("        c = parent[c];");
+    ostr.println ("      }");
+    ostr.println ("    }");
+    ostr.println ("  }");
+    ostr.println ();
+    if (bTrackTokens)
+    {
+      ostr.println ("  private static Token tokenAt(final Token[] tokens, final int lo, final int index) {");
+      ostr.println ("    return index >= lo && index - lo < tokens.length ? tokens[index - lo] : null;");
+      ostr.println ("  }");
+      ostr.println ();
+    }
+    if (bTrackTokens)
+    {
+      ostr.println ("  /* Returns the index of the first token of the node whose scope was");
+      ostr.println ("     just closed.  Tokens set after opening the scope, like the");
+      ostr.println ("     operator token of a prefix operator, are looked up now. */");
+      ostr.println ("  private int closeScopeToken(final Node n) {");
+      ostr.println ("    final Token t = ((" + sNodeClass + ") n).jjtGetFirstToken();");
+      ostr.println ("    final int ret = t == scopeToken[msp] ? scopeTokenIndex[msp] : tokenIndex(t);");
+      ostr.println ("    scopeToken[msp] = null;");
+      ostr.println ("    return ret;");
+      ostr.println ("  }");
+      ostr.println ();
+    }
+    ostr.println ("  /* Stores the node with the topmost num nodes of the stack as its");
+    ostr.println ("     children, which are removed from the stack.  Returns the index");
+    ostr.println ("     of the node. */");
+    if (bTrackTokens)
+      ostr.println ("  private int addNode(final Node n, final int num, final int first) {");
+    else
+      ostr.println ("  private int addNode(final Node n, final int num) {");
+    ostr.println ("    if (count == kind.length) {");
+    ostr.println ("      kind = grow(kind, count);");
+    ostr.println ("      parent = grow(parent, count);");
+    ostr.println ("      firstChild = grow(firstChild, count);");
+    ostr.println ("      nextSibling = grow(nextSibling, count);");
+    if (bTrackTokens)
+    {
+      ostr.println ("      firstToken = grow(firstToken, count);");
+      ostr.println ("      lastToken = grow(lastToken, count);");
+    }
+    ostr.println ("    }");
+    ostr.println ("    final int index = count++;");
+    ostr.println ("    int next = NONE;");
+    ostr.println ("    for (int i = sp - 1; i >= sp - num; --i) {");
+    ostr.println ("      if (i < mk) {");
+    ostr.println ("        // The child belongs to an enclosing scope");
+    ostr.println ("        mk = marks[--msp];");
+    if (bTrackTokens)
+      ostr.println ("        scopeToken[msp] = null;");
+    ostr.println ("      }");
+    ostr.println ("      parent[nodes[i]] = index;");
+    ostr.println ("      nextSibling[nodes[i]] = next;");
+    ostr.println ("      next = nodes[i];");
+    ostr.println ("    }");
+    ostr.println ("    sp -= num;");
+    ostr.println ("    kind[index] = n.getId();");
+    ostr.println ("    parent[index] = NONE;");
+    ostr.println ("    firstChild[index] = next;");
+    ostr.println ("    nextSibling[index] = NONE;");
+    if (bTrackTokens)
+    {
+      ostr.println ("    firstToken[index] = first != NONE || next == NONE ? first : firstToken[next];");
+      ostr.println ("    lastToken[index] = tokenIndex(((" + sNodeClass + ") n).jjtGetLastToken());");
+    }
+    ostr.println ("    return index;");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Stores the node object and all its descendants. */");
+    ostr.println ("  private int addTree(final Node root) {");
+    ostr.println ("    // The nodes from the root to the current node, each with the index");
+    ostr.println ("    // of its next child to store");
+    ostr.println ("    Node[] path = new Node[64];");
+    ostr.println ("    int[] nextChild = new int[64];");
+    ostr.println ("    int depth = 0;");
+    ostr.println ("    path[0] = root;");
+    ostr.println ("    nextChild[0] = 0;");
+    ostr.println ("    while (true) {");
+    ostr.println ("      final Node n = path[depth];");
+    ostr.println ("      final int num = n.jjtGetNumChildren();");
+    ostr.println ("      if (nextChild[depth] < num) {");
+    ostr.println ("        final Node child = n.jjtGetChild(nextChild[depth]++);");
+    ostr.println ("        if (++depth == path.length) {");
+    ostr.println ("          path = java.util.Arrays.copyOf(path, depth * 2);");
+    ostr.println ("          nextChild = grow(nextChild, depth);");
+    ostr.println ("        }");
+    ostr.println ("        path[depth] = child;");
+    ostr.println ("        nextChild[depth] = 0;");
+    ostr.println ("        continue;");
+    ostr.println ("      }");
+    if (bTrackTokens)
+      ostr.println ("      final int index = addNode(n, num, tokenIndex(((" + sNodeClass + ") n).jjtGetFirstToken()));");
+    else
+      ostr.println ("      final int index = addNode(n, num);");
+    ostr.println ("      if (depth == 0) {");
+    ostr.println ("        return index;");
+    ostr.println ("      }");
+    ostr.println ("      path[depth--] = null;");
+    ostr.println ("      pushIndex(index);");
+    ostr.println ("    }");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  private void pushIndex(final int index) {");
+    ostr.println ("    if (sp == nodes.length) {");
+    ostr.println ("      nodes = grow(nodes, sp);");
+    ostr.println ("    }");
+    ostr.println ("    nodes[sp++] = index;");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Pushes a node on to the stack. */");
+    ostr.println ("  public void pushNode(Node n) {");
+    ostr.println ("    pushIndex(addTree(n));");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Returns the node on the top of the stack, and remove it from the");
+    ostr.println ("     stack.  */");
+    ostr.println ("  public Node popNode() {");
+    ostr.println ("    --sp;");
+    ostr.println ("    if (sp < mk) {");
+    ostr.println ("      mk = marks[--msp];");
+    if (bTrackTokens)
+      ostr.println ("      scopeToken[msp] = null;");
+    ostr.println ("    }");
+    ostr.println ("    return toNode(nodes[sp]);");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Returns the node currently on the top of the stack. */");
+    ostr.println ("  public Node peekNode() {");
+    ostr.println ("    return toNode(nodes[sp - 1]);");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Returns the number of children on the stack in the current node");
+    ostr.println ("     scope. */");
+    ostr.println ("  public int nodeArity() {");
+    ostr.println ("    return sp - mk;");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* Parameter is currently unused. */");
+    ostr.println ("  public void clearNodeScope(@SuppressWarnings(\"unused\") final Node n) {");
+    ostr.println ("    sp = mk;");
+    ostr.println ("    mk = marks[--msp];");
+    if (bTrackTokens)
+      ostr.println ("    scopeToken[msp] = null;");
+    ostr.println ("  }");
+    ostr.println ();
+    if (bTrackTokens)
+    {
+      ostr.println ("  /* The parser sets the first token before the scope is opened, so");
+      ostr.println ("     it is indexed while it is still ahead of the cursor. */");
+    }
+    ostr.println ("  public void openNodeScope(final Node n) {");
+    ostr.println ("    if (msp == marks.length) {");
+    ostr.println ("      marks = grow(marks, msp);");
+    if (bTrackTokens)
+    {
+      ostr.println ("      scopeToken = grow(scopeToken, msp);");
+      ostr.println ("      scopeTokenIndex = grow(scopeTokenIndex, msp);");
+    }
+    ostr.println ("    }");
+    if (bTrackTokens)
+    {
+      ostr.println ("    scopeToken[msp] = ((" + sNodeClass + ") n).jjtGetFirstToken();");
+      ostr.println ("    scopeTokenIndex[msp] = tokenIndex(scopeToken[msp]);");
+    }
+    ostr.println ("    marks[msp++] = mk;");
+    ostr.println ("    mk = sp;");
+    ostr.println ("    n.jjtOpen();");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ("  /* A definite node is constructed from a specified number of");
+    ostr.println ("     children.  That number of nodes are popped from the stack and");
+    ostr.println ("     made the children of the definite node.  Then the definite node");
+    ostr.println ("     is pushed on to the stack. */");
+    ostr.println ("  public void closeNodeScope(final Node n, final int num) {");
+    ostr.println ("    mk = marks[--msp];");
+    ostr.println ("    n.jjtClose();");
+    if (bTrackTokens)
+      ostr.println ("    pushIndex(addNode(n, num, closeScopeToken(n)));");
+    else
+      ostr.println ("    pushIndex(addNode(n, num));");
+    ostr.println ("    node_created = true;");
+    ostr.println ("  }");
+    ostr.println ();
+    ostr.println ();
+    ostr.println ("  /* A conditional node is constructed if its condition is true.  All");
+    ostr.println ("     the nodes that have been pushed since the node was opened are");
+    ostr.println ("     made children of the conditional node, which is then pushed");
+    ostr.println ("     on to the stack.  If the condition is false the node is not");
+    ostr.println ("     constructed and they are left on the stack. */");
+    ostr.println ("  public void closeNodeScope(final Node n, final boolean condition) {");
+    ostr.println ("    if (condition) {");
+    ostr.println ("      final int a = nodeArity();");
+    ostr.println ("      mk = marks[--msp];");
+    ostr.println ("      n.jjtClose();");
+    if (bTrackTokens)
+      ostr.println ("      pushIndex(addNode(n, a, closeScopeToken(n)));");
+    else
+      ostr.println ("      pushIndex(addNode(n, a));");
+    ostr.println ("      node_created = true;");
+    ostr.println ("    } else {");
+    ostr.println ("      mk = marks[--msp];");
+    if (bTrackTokens)
+      ostr.println ("      scopeToken[msp] = null;");
     ostr.println ("      node_created = false;");
     ostr.println ("    }");
     ostr.println ("  }");
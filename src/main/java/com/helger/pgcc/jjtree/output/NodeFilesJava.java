@@ -76,12 +76,14 @@ import java.util.Set;
 import javax.annotation.concurrent.Immutable;
 
 import com.helger.commons.string.StringHelper;
+import com.helger.pgcc.EJDKVersion;
 import com.helger.pgcc.PGVersion;
 import com.helger.pgcc.jjtree.ASTNodeDescriptor;
 import com.helger.pgcc.jjtree.JJTreeGlobals;
 import com.helger.pgcc.jjtree.JJTreeIO;
 import com.helger.pgcc.jjtree.JJTreeOptions;
 import com.helger.pgcc.output.OutputFile;
+import com.helger.pgcc.parser.JavaCCErrors;
 import com.helger.pgcc.parser.Options;
 import com.helger.pgcc.utils.OutputFileGenerator;
 
@@ -309,7 +311,12 @@ public final class NodeFilesJava
 
   private static String _getVisitMethodName (final String className)
   {
-    final StringBuilder sb = new StringBuilder ("visit");
+    return _getMethodName ("visit", className);
+  }
+
+  private static String _getMethodName (final String sPrefix, final String className)
+  {
+    final StringBuilder sb = new StringBuilder (sPrefix);
     if (Options.booleanValue ("VISITOR_METHOD_NAME_INCLUDES_TYPE_NAME"))
     {
       sb.append (Character.toUpperCase (className.charAt (0)));
@@ -392,6 +399,675 @@ public final class NodeFilesJava
     }
   }
 
+  static String parallelVisitorClass ()
+  {
+    return JJTreeGlobals.s_parserName + "ParallelVisitor";
+  }
+
+  /**
+   * Generate a default visitor that visits the children of nodes with many
+   * children in parallel on a fork/join pool.
+   */
+  public static void generateParallelVisitor_java ()
+  {
+    if (!JJTreeOptions.isVisitor () || !JJTreeOptions.isParallelVisitor ())
+    {
+      return;
+    }
+    if (Options.getJdkVersion ().isOlderThan (EJDKVersion.JDK_1_8))
+    {
+      // JDK_VERSION may be set in the grammar file
+      JavaCCErrors.warning ("PARALLEL_VISITOR requires JDK_VERSION 1.8 or later and will be ignored.");
+      return;
+    }
+
+    final String className = parallelVisitorClass ();
+    final File file = new File (JJTreeOptions.getJJTreeOutputDirectory (), className + ".java");
+
+    try (final OutputFile outputFile = new OutputFile (file); final PrintWriter ostr = outputFile.getPrintWriter ())
+    {
+      final String ve = _mergeVisitorException ();
+      final String argumentType = StringHelper.hasText (JJTreeOptions.getVisitorDataType ()) ? JJTreeOptions.getVisitorDataType ()
+                                                                                            : "Object";
+      final String ret = JJTreeOptions.getVisitorReturnType ();
+      final boolean bVoid = ret.trim ().equals ("void");
+
+      generatePrologue (ostr);
+      ostr.println ("/* A default visitor that visits the children of a node in parallel on a");
+      ostr.println ("   fork/join pool if the node has more children than the threshold.  The");
+      ostr.println ("   children are split into ranges and every range is visited by a task");
+      ostr.println ("   with its own data object created by createData, so the data objects");
+      ostr.println ("   need not be thread-safe.  When the tasks are finished their data");
+      ostr.println ("   objects are merged into the data of the node in the order of the");
+      ostr.println ("   children by mergeData.  The visitor itself is shared by all tasks and");
+      ostr.println ("   should not keep per-visit state in fields. */");
+      ostr.println ("public abstract class " + className + " extends " + defaultVisitorClass () + " {");
+      ostr.println ("  public static final int DEFAULT_THRESHOLD = 64;");
+      ostr.println ();
+      ostr.println ("  private final java.util.concurrent.ForkJoinPool pool;");
+      ostr.println ("  private final int threshold;");
+      ostr.println ();
+      ostr.println ("  public " + className + "() {");
+      ostr.println ("    this(java.util.concurrent.ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* The children of nodes with more than threshold children are visited in");
+      ostr.println ("     parallel, in ranges of at most threshold children. */");
+      ostr.println ("  public " + className + "(final java.util.concurrent.ForkJoinPool pool, final int threshold) {");
+      ostr.println ("    if (threshold < 1)");
+      ostr.println ("      throw new IllegalArgumentException(\"threshold must be positive: \" + threshold);");
+      ostr.println ("    this.pool = pool;");
+      ostr.println ("    this.threshold = threshold;");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* Creates the data object of a task that visits a range of the children");
+      ostr.println ("     of node.  parentData is the data passed to the node and must not be");
+      ostr.println ("     modified. */");
+      ostr.println ("  protected abstract " + argumentType + " createData(SimpleNode node, " + argumentType + " parentData);");
+      ostr.println ();
+      ostr.println ("  /* Merges the data of a finished task into target.  Called in the order");
+      ostr.println ("     of the children, never concurrently for the same target. */");
+      ostr.println ("  protected void mergeData(final " + argumentType + " target, final " + argumentType + " source) {");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  @Override");
+      ostr.println ("  public " + ret + " defaultVisit(final SimpleNode node, final " + argumentType + " data)" + ve + " {");
+      ostr.println ("    final int n = node.jjtGetNumChildren();");
+      ostr.println ("    if (n <= threshold)");
+      ostr.println ("      " + (bVoid ? "" : "return ") + "super.defaultVisit(node, data);");
+      ostr.println ("    else {");
+      ostr.println ("      final ChildrenTask task = new ChildrenTask(node, 0, n, data);");
+      if (StringHelper.hasText (JJTreeOptions.getVisitorException ()))
+      {
+        final String sException = JJTreeOptions.getVisitorException ();
+        ostr.println ("      try {");
+        ostr.println ("        mergeData(data, java.util.concurrent.ForkJoinTask.getPool() == pool ? task.invoke() : pool.invoke(task));");
+        ostr.println ("      } catch (final java.util.concurrent.CompletionException ex) {");
+        ostr.println ("        // Thrown by a visit method of a task");
+        ostr.println ("        for (Throwable t = ex.getCause(); t != null; t = t.getCause())");
+        ostr.println ("          if (t instanceof " + sException + ")");
+        ostr.println ("            throw (" + sException + ") t;");
+        ostr.println ("        throw ex;");
+        ostr.println ("      }");
+      }
+      else
+        ostr.println ("      mergeData(data, java.util.concurrent.ForkJoinTask.getPool() == pool ? task.invoke() : pool.invoke(task));");
+      if (!bVoid)
+        ostr.println ("      return data;");
+      ostr.println ("    }");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  private final class ChildrenTask extends java.util.concurrent.RecursiveTask<" + argumentType + "> {");
+      ostr.println ("    private static final long serialVersionUID = 1L;");
+      ostr.println ();
+      ostr.println ("    private final SimpleNode node;");
+      ostr.println ("    private final int from;");
+      ostr.println ("    private final int to;");
+      ostr.println ("    private final " + argumentType + " parentData;");
+      ostr.println ();
+      ostr.println ("    ChildrenTask(final SimpleNode node, final int from, final int to, final " + argumentType + " parentData) {");
+      ostr.println ("      this.node = node;");
+      ostr.println ("      this.from = from;");
+      ostr.println ("      this.to = to;");
+      ostr.println ("      this.parentData = parentData;");
+      ostr.println ("    }");
+      ostr.println ();
+      ostr.println ("    @Override");
+      ostr.println ("    protected " + argumentType + " compute() {");
+      ostr.println ("      if (to - from <= threshold) {");
+      ostr.println ("        final " + argumentType + " data = createData(node, parentData);");
+      if (StringHelper.hasText (ve))
+      {
+        ostr.println ("        try {");
+        ostr.println ("          for (int i = from; i < to; ++i)");
+        ostr.println ("            node.jjtGetChild(i).jjtAccept(" + className + ".this, data);");
+        ostr.println ("        } catch (final " + JJTreeOptions.getVisitorException () + " ex) {");
+        ostr.println ("          throw new java.util.concurrent.CompletionException(ex);");
+        ostr.println ("        }");
+      }
+      else
+      {
+        ostr.println ("        for (int i = from; i < to; ++i)");
+        ostr.println ("          node.jjtGetChild(i).jjtAccept(" + className + ".this, data);");
+      }
+      ostr.println ("        return data;");
+      ostr.println ("      }");
+      ostr.println ("      final int mid = (from + to) >>> 1;");
+      ostr.println ("      final ChildrenTask right = new ChildrenTask(node, mid, to, parentData);");
+      ostr.println ("      right.fork();");
+      ostr.println ("      final " + argumentType + " data = new ChildrenTask(node, from, mid, parentData).compute();");
+      ostr.println ("      mergeData(data, right.join());");
+      ostr.println ("      return data;");
+      ostr.println ("    }");
+      ostr.println ("  }");
+      ostr.println ("}");
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException (e);
+    }
+  }
+
+  static String walkerClass ()
+  {
+    return JJTreeGlobals.s_parserName + "Walker";
+  }
+
+  /**
+   * Generate a walker that traverses a tree with an explicit stack instead of
+   * recursion and calls the callbacks of the node types by a switch on the
+   * node id.
+   */
+  public static void generateWalker_java ()
+  {
+    if (!JJTreeOptions.isVisitor ())
+    {
+      return;
+    }
+
+    final String className = walkerClass ();
+    final File file = new File (JJTreeOptions.getJJTreeOutputDirectory (), className + ".java");
+
+    try (final OutputFile outputFile = new OutputFile (file); final PrintWriter ostr = outputFile.getPrintWriter ())
+    {
+      final List <String> nodeIds = ASTNodeDescriptor.getNodeIds ();
+      final List <String> nodeNames = ASTNodeDescriptor.getNodeNames ();
+      final String ve = _mergeVisitorException ();
+
+      generatePrologue (ostr);
+      ostr.println ("/* Traverses a tree with an explicit stack instead of recursion, so the");
+      ostr.println ("   depth of the tree is not limited by the stack size.  Override the");
+      ostr.println ("   enter and leave methods of the node types of interest. */");
+      ostr.println ("public class " + className + " {");
+      ostr.println ("  /* Called before the children of the node are visited.  Return false");
+      ostr.println ("     to skip the children. */");
+      ostr.println ("  protected boolean enterDefault(final SimpleNode node)" + ve + " {");
+      ostr.println ("    return true;");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* Called after the children of the node were visited. */");
+      ostr.println ("  protected void leaveDefault(final SimpleNode node)" + ve + " {");
+      ostr.println ("  }");
+      ostr.println ();
+
+      if (JJTreeOptions.isMulti ())
+      {
+        for (final String n : nodeNames)
+        {
+          if (n.equals ("void"))
+          {
+            continue;
+          }
+          final String nodeType = JJTreeOptions.getNodePrefix () + n;
+          ostr.println ("  protected boolean " + _getMethodName ("enter", nodeType) + "(final " + nodeType + " node)" + ve + " {");
+          ostr.println ("    return enterDefault(node);");
+          ostr.println ("  }");
+          ostr.println ();
+          ostr.println ("  protected void " + _getMethodName ("leave", nodeType) + "(final " + nodeType + " node)" + ve + " {");
+          ostr.println ("    leaveDefault(node);");
+          ostr.println ("  }");
+          ostr.println ();
+        }
+      }
+
+      for (final String sWhat : new String [] { "enter", "leave" })
+      {
+        final boolean bEnter = sWhat.equals ("enter");
+        ostr.println ("  private " + (bEnter ? "boolean" : "void") + " " + sWhat + "Node(final Node node)" + ve + " {");
+        final String sReturn = bEnter ? "return " : "";
+        if (JJTreeOptions.isMulti ())
+        {
+          ostr.println ("    switch (node.getId()) {");
+          for (int i = 0; i < nodeIds.size (); ++i)
+          {
+            final String n = nodeNames.get (i);
+            if (n.equals ("void"))
+            {
+              continue;
+            }
+            final String nodeType = JJTreeOptions.getNodePrefix () + n;
+            ostr.println ("      case " + nodeConstants () + "." + nodeIds.get (i) + ":");
+            ostr.println ("        " + sReturn + _getMethodName (sWhat, nodeType) + "((" + nodeType + ") node);");
+            if (!bEnter)
+              ostr.println ("        break;");
+          }
+          ostr.println ("      default:");
+          ostr.println ("        " + sReturn + sWhat + "Default((SimpleNode) node);");
+          ostr.println ("    }");
+        }
+        else
+          ostr.println ("    " + sReturn + sWhat + "Default((SimpleNode) node);");
+        ostr.println ("  }");
+        ostr.println ();
+      }
+
+      ostr.println ("  /* Visits the node and all its descendants in document order. */");
+      ostr.println ("  public void walk(final Node root)" + ve + " {");
+      ostr.println ("    if (!enterNode(root)) {");
+      ostr.println ("      leaveNode(root);");
+      ostr.println ("      return;");
+      ostr.println ("    }");
+      ostr.println ("    // The path from the root to the current node and the index of");
+      ostr.println ("    // the next child of each of its nodes");
+      ostr.println ("    Node[] nodes = new Node[64];");
+      ostr.println ("    int[] next = new int[64];");
+      ostr.println ("    nodes[0] = root;");
+      ostr.println ("    next[0] = 0;");
+      ostr.println ("    int sp = 1;");
+      ostr.println ("    while (sp > 0) {");
+      ostr.println ("      final Node node = nodes[sp - 1];");
+      ostr.println ("      final int i = next[sp - 1];");
+      ostr.println ("      if (i < node.jjtGetNumChildren()) {");
+      ostr.println ("        next[sp - 1] = i + 1;");
+      ostr.println ("        final Node child = node.jjtGetChild(i);");
+      ostr.println ("        if (enterNode(child)) {");
+      ostr.println ("          if (sp == nodes.length) {");
+      ostr.println ("            final Node[] newNodes = new Node[sp * 2];");
+      ostr.println ("            System.arraycopy(nodes, 0, newNodes, 0, sp);");
+      ostr.println ("            nodes = newNodes;");
+      ostr.println ("            final int[] newNext = new int[sp * 2];");
+      ostr.println ("            System.arraycopy(next, 0, newNext, 0, sp);");
+      ostr.println ("            next = newNext;");
+      ostr.println ("          }");
+      ostr.println ("          nodes[sp] = child;");
+      ostr.println ("          next[sp] = 0;");
+      ostr.println ("          ++sp;");
+      ostr.println ("        } else {");
+      ostr.println ("          leaveNode(child);");
+      ostr.println ("        }");
+      ostr.println ("      } else {");
+      ostr.println ("        nodes[--sp] = null;");
+      ostr.println ("        leaveNode(node);");
+      ostr.println ("      }");
+      ostr.println ("    }");
+      ostr.println ("  }");
+      ostr.println ("}");
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException (e);
+    }
+  }
+
+  static String treeSerializerClass ()
+  {
+    return JJTreeGlobals.s_parserName + "TreeSerializer";
+  }
+
+  /**
+   * Generate a class that writes trees in a compact binary format and reads
+   * them back from a memory mapped file. The format is versioned by the
+   * checksum of the generated grammar.
+   *
+   * @param grammarFile
+   *        the grammar file generated by JJTree
+   */
+  public static void generateTreeSerializer_java (final File grammarFile)
+  {
+    if (!JJTreeOptions.isTreeSerializer ())
+    {
+      return;
+    }
+
+    final String className = treeSerializerClass ();
+    final File file = new File (JJTreeOptions.getJJTreeOutputDirectory (), className + ".java");
+
+    try (final OutputFile outputFile = new OutputFile (file); final PrintWriter ostr = outputFile.getPrintWriter ())
+    {
+      final String sChecksum = OutputFile.getChecksum (grammarFile);
+      final boolean bTokens = JJTreeOptions.isTrackTokens ();
+      // Same conditions as in Options.validate
+      final boolean bLazyImage = JJTreeOptions.isLazyTokenImage () && !JJTreeOptions.isJavaUnicodeEscape ();
+      final boolean bLazyLineColumn = JJTreeOptions.isLazyLineColumn () &&
+                                      JJTreeOptions.isKeepLineColumn () &&
+                                      !JJTreeOptions.isJavaUnicodeEscape ();
+      final boolean bLineColumn = JJTreeOptions.isKeepLineColumn () && !bLazyLineColumn;
+      final boolean bOffsets = bLazyImage || bLazyLineColumn;
+      final String sNodeClass = JJTreeStateJava.getNodeClass ();
+      final String sTokenFactory = JJTreeOptions.getTokenFactory ().length () > 0 ? JJTreeOptions.getTokenFactory ()
+                                                                                  : "Token";
+
+      generatePrologue (ostr);
+      ostr.println ("/* Writes trees in a compact binary format and reads them back without");
+      ostr.println ("   lexing or parsing.  All numbers are unsigned LEB128 varints, signed");
+      ostr.println ("   numbers are zigzag encoded:");
+      ostr.println ("     magic, grammar checksum");
+      if (bTokens)
+      {
+        if (bLazyLineColumn)
+          ostr.println ("     line index (0 if there is none, else 1, start line, start column,");
+          ostr.println ("       tab size, line start count, line starts as deltas, tab count,");
+          ostr.println ("       tabs as deltas)");
+        ostr.println ("     image count, images (UTF-8)");
+        ostr.println ("     token count, tokens (kind, image index + 1, positions as deltas)");
+      }
+      ostr.println ("     node count, nodes in post-order (id, child count" + (bTokens ? ", first and last token index + 1" : "") + ")");
+      ostr.println ("   Data written for another grammar is rejected by the checksum.  Node");
+      if (bTokens)
+      {
+        ostr.println ("   values, special tokens and tokens outside of the tokens of the root");
+        ostr.println ("   are not written. */");
+      }
+      else
+        ostr.println ("   values are not written. */");
+      ostr.println ("public final class " + className + " {");
+      ostr.println ("  /* The checksum of the grammar the format belongs to. */");
+      ostr.println ("  public static final String GRAMMAR_CHECKSUM = \"" + sChecksum + "\";");
+      ostr.println ();
+      ostr.println ("  private static final int MAGIC = 0x4A4A5442;");
+      ostr.println ();
+      ostr.println ("  private " + className + "() {");
+      ostr.println ("  }");
+      ostr.println ();
+
+      // Writing
+      ostr.println ("  /* Writes the tree to the file. */");
+      ostr.println ("  public static void write(final Node root, final java.nio.file.Path file) throws java.io.IOException {");
+      ostr.println ("    try (final java.io.OutputStream out = java.nio.file.Files.newOutputStream(file)) {");
+      ostr.println ("      write(root, out);");
+      ostr.println ("    }");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* Writes the tree to the stream, which is not closed. */");
+      ostr.println ("  public static void write(final Node root, final java.io.OutputStream out) throws java.io.IOException {");
+      ostr.println ("    final Encoder enc = new Encoder(out);");
+      ostr.println ("    enc.writeInt(MAGIC);");
+      ostr.println ("    enc.writeString(GRAMMAR_CHECKSUM);");
+      if (bTokens)
+      {
+        ostr.println ();
+        ostr.println ("    // The tokens of the root and their distinct images");
+        ostr.println ("    final java.util.Map<Token, Integer> tokenIndex = new java.util.IdentityHashMap<>();");
+        ostr.println ("    final java.util.List<Token> tokens = new java.util.ArrayList<>();");
+        ostr.println ("    final java.util.Map<String, Integer> imageIndex = new java.util.HashMap<>();");
+        ostr.println ("    final java.util.List<String> images = new java.util.ArrayList<>();");
+        ostr.println ("    final Token lastToken = ((" + sNodeClass + ") root).jjtGetLastToken();");
+        ostr.println ("    for (Token t = ((" + sNodeClass + ") root).jjtGetFirstToken(); t != null && lastToken != null; t = t.next) {");
+        ostr.println ("      tokenIndex.put(t, Integer.valueOf(tokens.size()));");
+        ostr.println ("      tokens.add(t);");
+        ostr.println ("      final String image = t." + (bLazyImage ? "getImage()" : "image") + ";");
+        ostr.println ("      if (image != null && !imageIndex.containsKey(image)) {");
+        ostr.println ("        imageIndex.put(image, Integer.valueOf(images.size()));");
+        ostr.println ("        images.add(image);");
+        ostr.println ("      }");
+        ostr.println ("      if (t == lastToken)");
+        ostr.println ("        break;");
+        ostr.println ("    }");
+        if (bLazyLineColumn)
+        {
+          ostr.println ("    if (tokens.isEmpty() || tokens.get(0).lineIndex == null)");
+          ostr.println ("      enc.writeVarInt(0);");
+          ostr.println ("    else {");
+          ostr.println ("      final LineIndex lineIndex = tokens.get(0).lineIndex;");
+          ostr.println ("      enc.writeVarInt(1);");
+          ostr.println ("      enc.writeSigned(lineIndex.getStartLine());");
+          ostr.println ("      enc.writeSigned(lineIndex.getStartColumn());");
+          ostr.println ("      enc.writeVarInt(lineIndex.getTabSize());");
+          ostr.println ("      enc.writeDeltas(lineIndex.getLineStarts());");
+          ostr.println ("      enc.writeDeltas(lineIndex.getTabs());");
+          ostr.println ("    }");
+        }
+        ostr.println ("    enc.writeVarInt(images.size());");
+        ostr.println ("    for (final String image : images)");
+        ostr.println ("      enc.writeString(image);");
+        ostr.println ("    enc.writeVarInt(tokens.size());");
+        if (bLineColumn)
+          ostr.println ("    int prevLine = 0;");
+        if (bOffsets)
+          ostr.println ("    int prevOffset = 0;");
+        ostr.println ("    for (final Token t : tokens) {");
+        ostr.println ("      enc.writeVarInt(t.kind);");
+        ostr.println ("      final String image = t." + (bLazyImage ? "getImage()" : "image") + ";");
+        ostr.println ("      enc.writeVarInt(image == null ? 0 : imageIndex.get(image).intValue() + 1);");
+        if (bLineColumn)
+        {
+          ostr.println ("      enc.writeSigned(t.beginLine - prevLine);");
+          ostr.println ("      enc.writeSigned(t.beginColumn);");
+          ostr.println ("      enc.writeSigned(t.endLine - t.beginLine);");
+          ostr.println ("      enc.writeSigned(t.endColumn - t.beginColumn);");
+          ostr.println ("      prevLine = t.endLine;");
+        }
+        if (bOffsets)
+        {
+          ostr.println ("      enc.writeSigned(t.beginOffset - prevOffset);");
+          ostr.println ("      enc.writeSigned(t.endOffset - t.beginOffset);");
+          ostr.println ("      prevOffset = t.endOffset;");
+        }
+        ostr.println ("    }");
+      }
+      ostr.println ();
+      ostr.println ("    // The nodes in post-order, so that the reader finds the children of a");
+      ostr.println ("    // node on its stack");
+      ostr.println ("    final java.util.List<Node> nodes = new java.util.ArrayList<>();");
+      ostr.println ("    Node[] stack = new Node[64];");
+      ostr.println ("    int[] next = new int[64];");
+      ostr.println ("    stack[0] = root;");
+      ostr.println ("    int sp = 1;");
+      ostr.println ("    while (sp > 0) {");
+      ostr.println ("      final Node node = stack[sp - 1];");
+      ostr.println ("      final int i = next[sp - 1];");
+      ostr.println ("      if (i < node.jjtGetNumChildren()) {");
+      ostr.println ("        next[sp - 1] = i + 1;");
+      ostr.println ("        if (sp == stack.length) {");
+      ostr.println ("          stack = java.util.Arrays.copyOf(stack, sp * 2);");
+      ostr.println ("          next = java.util.Arrays.copyOf(next, sp * 2);");
+      ostr.println ("        }");
+      ostr.println ("        stack[sp] = node.jjtGetChild(i);");
+      ostr.println ("        next[sp] = 0;");
+      ostr.println ("        ++sp;");
+      ostr.println ("      } else {");
+      ostr.println ("        stack[--sp] = null;");
+      ostr.println ("        nodes.add(node);");
+      ostr.println ("      }");
+      ostr.println ("    }");
+      ostr.println ("    enc.writeVarInt(nodes.size());");
+      ostr.println ("    for (final Node node : nodes) {");
+      ostr.println ("      enc.writeVarInt(node.getId());");
+      ostr.println ("      enc.writeVarInt(node.jjtGetNumChildren());");
+      if (bTokens)
+      {
+        ostr.println ("      final Integer first = tokenIndex.get(((" + sNodeClass + ") node).jjtGetFirstToken());");
+        ostr.println ("      final Integer last = tokenIndex.get(((" + sNodeClass + ") node).jjtGetLastToken());");
+        ostr.println ("      enc.writeVarInt(first == null ? 0 : first.intValue() + 1);");
+        ostr.println ("      enc.writeVarInt(last == null ? 0 : last.intValue() + 1);");
+      }
+      ostr.println ("    }");
+      ostr.println ("    enc.flush();");
+      ostr.println ("  }");
+      ostr.println ();
+
+      // Reading
+      ostr.println ("  /* Reads a tree from a memory mapped file. */");
+      ostr.println ("  public static Node read(final java.nio.file.Path file) throws java.io.IOException {");
+      ostr.println ("    try (final java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(file, java.nio.file.StandardOpenOption.READ)) {");
+      ostr.println ("      return read(channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, channel.size()));");
+      ostr.println ("    }");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  /* Reads a tree from the buffer, starting at its position. */");
+      ostr.println ("  public static Node read(final java.nio.ByteBuffer buf) throws java.io.IOException {");
+      ostr.println ("    try {");
+      ostr.println ("      if (buf.getInt() != MAGIC)");
+      ostr.println ("        throw new java.io.IOException(\"Not a serialized tree\");");
+      ostr.println ("      final String checksum = readString(buf);");
+      ostr.println ("      if (!checksum.equals(GRAMMAR_CHECKSUM))");
+      ostr.println ("        throw new java.io.IOException(\"The tree was written for another grammar (checksum \" + checksum + \" instead of \" + GRAMMAR_CHECKSUM + \")\");");
+      if (bTokens)
+      {
+        ostr.println ();
+        if (bLazyLineColumn)
+        {
+          ostr.println ("      LineIndex lineIndex = null;");
+          ostr.println ("      if (readVarInt(buf) != 0) {");
+          ostr.println ("        final int startLine = readSigned(buf);");
+          ostr.println ("        final int startColumn = readSigned(buf);");
+          ostr.println ("        final int tabSize = readVarInt(buf);");
+          ostr.println ("        final int[] lineStarts = readDeltas(buf);");
+          ostr.println ("        lineIndex = new LineIndex(startLine, startColumn, tabSize, lineStarts, readDeltas(buf));");
+          ostr.println ("      }");
+        }
+        ostr.println ("      final String[] images = new String[readVarInt(buf) + 1];");
+        ostr.println ("      for (int i = 1; i < images.length; ++i)");
+        ostr.println ("        images[i] = readString(buf);");
+        ostr.println ("      final Token[] tokens = new Token[readVarInt(buf) + 1];");
+        if (bLineColumn)
+          ostr.println ("      int prevLine = 0;");
+        if (bOffsets)
+          ostr.println ("      int prevOffset = 0;");
+        ostr.println ("      for (int i = 1; i < tokens.length; ++i) {");
+        ostr.println ("        final int kind = readVarInt(buf);");
+        ostr.println ("        final Token t = " + sTokenFactory + ".newToken(kind, images[readVarInt(buf)]);");
+        if (bLineColumn)
+        {
+          ostr.println ("        t.beginLine = prevLine + readSigned(buf);");
+          ostr.println ("        t.beginColumn = readSigned(buf);");
+          ostr.println ("        t.endLine = t.beginLine + readSigned(buf);");
+          ostr.println ("        t.endColumn = t.beginColumn + readSigned(buf);");
+          ostr.println ("        prevLine = t.endLine;");
+        }
+        if (bOffsets)
+        {
+          ostr.println ("        t.beginOffset = prevOffset + readSigned(buf);");
+          ostr.println ("        t.endOffset = t.beginOffset + readSigned(buf);");
+          ostr.println ("        prevOffset = t.endOffset;");
+        }
+        if (bLazyLineColumn)
+          ostr.println ("        t.lineIndex = lineIndex;");
+        ostr.println ("        if (i > 1)");
+        ostr.println ("          tokens[i - 1].next = t;");
+        ostr.println ("        tokens[i] = t;");
+        ostr.println ("      }");
+      }
+      ostr.println ();
+      ostr.println ("      final int count = readVarInt(buf);");
+      ostr.println ("      Node[] stack = new Node[64];");
+      ostr.println ("      int sp = 0;");
+      ostr.println ("      for (int i = 0; i < count; ++i) {");
+      ostr.println ("        final Node n = createNode(readVarInt(buf));");
+      ostr.println ("        final int num = readVarInt(buf);");
+      ostr.println ("        if (num > sp)");
+      ostr.println ("          throw new java.io.IOException(\"Corrupt tree\");");
+      ostr.println ("        n.jjtOpen();");
+      ostr.println ("        // Add the last child first, so that the children array is");
+      ostr.println ("        // allocated only once");
+      ostr.println ("        for (int c = num - 1; c >= 0; --c) {");
+      ostr.println ("          final Node child = stack[--sp];");
+      ostr.println ("          stack[sp] = null;");
+      ostr.println ("          child.jjtSetParent(n);");
+      ostr.println ("          n.jjtAddChild(child, c);");
+      ostr.println ("        }");
+      if (bTokens)
+      {
+        ostr.println ("        ((" + sNodeClass + ") n).jjtSetFirstToken(tokens[readVarInt(buf)]);");
+        ostr.println ("        ((" + sNodeClass + ") n).jjtSetLastToken(tokens[readVarInt(buf)]);");
+      }
+      ostr.println ("        n.jjtClose();");
+      ostr.println ("        if (sp == stack.length)");
+      ostr.println ("          stack = java.util.Arrays.copyOf(stack, sp * 2);");
+      ostr.println ("        stack[sp++] = n;");
+      ostr.println ("      }");
+      ostr.println ("      if (sp != 1)");
+      ostr.println ("        throw new java.io.IOException(\"Corrupt tree\");");
+      ostr.println ("      return stack[0];");
+      ostr.println ("    } catch (final java.nio.BufferUnderflowException | IndexOutOfBoundsException ex) {");
+      ostr.println ("      throw new java.io.IOException(\"Truncated or corrupt tree\", ex);");
+      ostr.println ("    }");
+      ostr.println ("  }");
+      ostr.println ();
+      JJTreeStateJava.insertCreateNode (ostr);
+      ostr.println ();
+      ostr.println ("  private static int readVarInt(final java.nio.ByteBuffer buf) throws java.io.IOException {");
+      ostr.println ("    int value = 0;");
+      ostr.println ("    for (int shift = 0; shift < 32; shift += 7) {");
+      ostr.println ("      final byte b = buf.get();");
+      ostr.println ("      value |= (b & 0x7f) << shift;");
+      ostr.println ("      if (b >= 0)");
+      ostr.println ("        return value;");
+      ostr.println ("    }");
+      ostr.println ("    throw new java.io.IOException(\"Corrupt tree\");");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  private static int readSigned(final java.nio.ByteBuffer buf) throws java.io.IOException {");
+      ostr.println ("    final int value = readVarInt(buf);");
+      ostr.println ("    return (value >>> 1) ^ -(value & 1);");
+      ostr.println ("  }");
+      ostr.println ();
+      ostr.println ("  private static String readString(final java.nio.ByteBuffer buf) throws java.io.IOException {");
+      ostr.println ("    final byte[] bytes = new byte[readVarInt(buf)];");
+      ostr.println ("    buf.get(bytes);");
+      ostr.println ("    return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);");
+      ostr.println ("  }");
+      ostr.println ();
+      if (bTokens && bLazyLineColumn)
+      {
+        ostr.println ("  private static int[] readDeltas(final java.nio.ByteBuffer buf) throws java.io.IOException {");
+        ostr.println ("    final int count = readVarInt(buf);");
+        ostr.println ("    // Every delta takes at least one byte");
+        ostr.println ("    if (count < 0 || count > buf.remaining())");
+        ostr.println ("      throw new java.io.IOException(\"Corrupt tree\");");
+        ostr.println ("    final int[] values = new int[count];");
+        ostr.println ("    int prev = 0;");
+        ostr.println ("    for (int i = 0; i < count; ++i) {");
+        ostr.println ("      final int delta = readVarInt(buf);");
+        ostr.println ("      if (delta < 0)");
+        ostr.println ("        throw new java.io.IOException(\"Corrupt tree\");");
+        ostr.println ("      prev += delta;");
+        ostr.println ("      values[i] = prev;");
+        ostr.println ("    }");
+        ostr.println ("    return values;");
+        ostr.println ("  }");
+        ostr.println ();
+      }
+      ostr.println ("  private static final class Encoder extends java.io.BufferedOutputStream {");
+      ostr.println ("    Encoder(final java.io.OutputStream out) {");
+      ostr.println ("      super(out, 8192);");
+      ostr.println ("    }");
+      ostr.println ();
+      ostr.println ("    void writeInt(final int value) throws java.io.IOException {");
+      ostr.println ("      write(value >>> 24);");
+      ostr.println ("      write(value >>> 16);");
+      ostr.println ("      write(value >>> 8);");
+      ostr.println ("      write(value);");
+      ostr.println ("    }");
+      ostr.println ();
+      ostr.println ("    void writeVarInt(int value) throws java.io.IOException {");
+      ostr.println ("      while ((value & ~0x7f) != 0) {");
+      ostr.println ("        write((value & 0x7f) | 0x80);");
+      ostr.println ("        value >>>= 7;");
+      ostr.println ("      }");
+      ostr.println ("      write(value);");
+      ostr.println ("    }");
+      ostr.println ();
+      ostr.println ("    void writeSigned(final int value) throws java.io.IOException {");
+      ostr.println ("      writeVarInt((value << 1) ^ (value >> 31));");
+      ostr.println ("    }");
+      ostr.println ();
+      ostr.println ("    void writeString(final String s) throws java.io.IOException {");
+      ostr.println ("      final byte[] bytes = s.getBytes(java.nio.charset.StandardCharsets.UTF_8);");
+      ostr.println ("      writeVarInt(bytes.length);");
+      ostr.println ("      write(bytes);");
+      ostr.println ("    }");
+      if (bTokens && bLazyLineColumn)
+      {
+        ostr.println ();
+        ostr.println ("    void writeDeltas(final int[] values) throws java.io.IOException {");
+        ostr.println ("      writeVarInt(values.length);");
+        ostr.println ("      int prev = 0;");
+        ostr.println ("      for (final int value : values) {");
+        ostr.println ("        writeVarInt(value - prev);");
+        ostr.println ("        prev = value;");
+        ostr.println ("      }");
+        ostr.println ("    }");
+      }
+      ostr.println ("  }");
+      ostr.println ("}");
+    }
+    catch (final IOException e)
+    {
+      throw new UncheckedIOException (e);
+    }
+  }
+
   private static String _mergeVisitorException ()
   {
     String ve = JJTreeOptions.getVisitorException ();
@@ -41,6 +41,7 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -327,6 +328,24 @@ public class OutputFile implements AutoCloseable
     return StringHelper.getHexEncoded (digest);
   }
 
+  /**
+   * Get the checksum of a file in the format that is written to the checksum
+   * line of the generated files.
+   *
+   * @param file
+   *        the file to read
+   * @return the hex encoded MD5 checksum of the file content
+   * @throws IOException
+   *         if the file cannot be read
+   */
+  @Nonnull
+  public static String getChecksum (@Nonnull final File file) throws IOException
+  {
+    final MessageDigest digest = EMessageDigestAlgorithm.MD5.createMessageDigest ();
+    digest.update (Files.readAllBytes (file.toPath ()));
+    return StringHelper.getHexEncoded (digest.digest ());
+  }
+
   private final class TrapClosePrintWriter extends PrintWriter
   {
     public TrapClosePrintWriter (final OutputStream os, @Nonnull final Charset aCS)
@@ -36,6 +36,7 @@ package com.helger.pgcc.output.java;
 import static com.helger.pgcc.parser.JavaCCGlobals.printToken;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_ccol;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_cline;
+import static com.helger.pgcc.parser.JavaCCGlobals.s_cu_name;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_cu_to_insertion_point_1;
 import static com.helger.pgcc.parser.JavaCCParserConstants.PACKAGE;
 import static com.helger.pgcc.parser.JavaCCParserConstants.SEMICOLON;
@@ -127,7 +128,10 @@ public class FilesJava
     final File file = new File (Options.getOutputDirectory (), "CharStream.java");
     try (final OutputFile outputFile = new OutputFile (file,
                                                        charStreamVersion,
-                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__EOF_SENTINEL,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE,
+                                                                       Options.USEROPTION__LAZY_LINE_COLUMN }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -155,7 +159,10 @@ public class FilesJava
     final File file = new File (Options.getOutputDirectory (), "AbstractCharStream.java");
     try (final OutputFile outputFile = new OutputFile (file,
                                                        charStreamVersion,
-                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__EOF_SENTINEL,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE,
+                                                                       Options.USEROPTION__LAZY_LINE_COLUMN }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -184,7 +191,10 @@ public class FilesJava
     final File file = new File (Options.getOutputDirectory (), "JavaCharStream.java");
     try (final OutputFile outputFile = new OutputFile (file,
                                                        charStreamVersion,
-                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__EOF_SENTINEL,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE,
+                                                                       Options.USEROPTION__LAZY_LINE_COLUMN }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -213,7 +223,10 @@ public class FilesJava
     final File file = new File (Options.getOutputDirectory (), "SimpleCharStream.java");
     try (final OutputFile outputFile = new OutputFile (file,
                                                        charStreamVersion,
-                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__EOF_SENTINEL,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE,
+                                                                       Options.USEROPTION__LAZY_LINE_COLUMN }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -242,6 +255,70 @@ public class FilesJava
     _genMiscFile ("Provider.java", "/templates/stream/java/modern/Provider.template");
     _genMiscFile ("StringProvider.java", "/templates/stream/java/modern/StringProvider.template");
     _genMiscFile ("StreamProvider.java", "/templates/stream/java/modern/StreamProvider.template");
+    _genMiscFile ("ChannelProvider.java", "/templates/stream/java/modern/ChannelProvider.template");
+  }
+
+  public static void gen_LineIndex ()
+  {
+    _genMiscFile ("LineIndex.java", "/templates/stream/java/LineIndex.template");
+  }
+
+  public static void gen_Utf8ByteStream ()
+  {
+    final File file = new File (Options.getOutputDirectory (), "Utf8ByteStream.java");
+    try (final OutputFile outputFile = new OutputFile (file,
+                                                       charStreamVersion,
+                                                       new String [] { Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__KEEP_LINE_COLUMN,
+                                                                       Options.USEROPTION__EOF_SENTINEL,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE }))
+    {
+      if (!outputFile.needToWrite ())
+        return;
+
+      try (final PrintWriter ostr = outputFile.getPrintWriter ())
+      {
+        _writePackageName (ostr);
+
+        final Map <String, Object> options = _getDefaultOptions ();
+        final OutputFileGenerator generator = new OutputFileGenerator ("/templates/stream/java/Utf8ByteStream.template",
+                                                                       options);
+
+        generator.generate (ostr);
+      }
+    }
+    catch (final IOException e)
+    {
+      JavaCCErrors.semantic_error ("Could not open file Utf8ByteStream.java for writing.", e);
+      throw new UncheckedIOException (e);
+    }
+  }
+
+  public static void gen_ParserBatch ()
+  {
+    final String fileName = s_cu_name + "Batch.java";
+    final File file = new File (Options.getOutputDirectory (), fileName);
+    try (final OutputFile outputFile = new OutputFile (file, parseExceptionVersion, new String [] { Options.USEROPTION__BATCH_PARSER }))
+    {
+      if (!outputFile.needToWrite ())
+        return;
+
+      try (final PrintWriter ostr = outputFile.getPrintWriter ())
+      {
+        _writePackageName (ostr);
+
+        final Map <String, Object> options = _getDefaultOptions ();
+        options.put ("cu_name", s_cu_name);
+        final OutputFileGenerator generator = new OutputFileGenerator ("/templates/ParserBatch.template", options);
+
+        generator.generate (ostr);
+      }
+    }
+    catch (final IOException e)
+    {
+      JavaCCErrors.semantic_error ("Could not open file " + fileName + " for writing.", e);
+      throw new UncheckedIOException (e);
+    }
   }
 
   private static void _genMiscFile (final String fileName, final String templatePath) throws Error
@@ -276,7 +353,9 @@ public class FilesJava
     final File file = new File (Options.getOutputDirectory (), "ParseException.java");
     try (final OutputFile outputFile = new OutputFile (file,
                                                        parseExceptionVersion,
-                                                       new String [] { Options.USEROPTION__KEEP_LINE_COLUMN }))
+                                                       new String [] { Options.USEROPTION__KEEP_LINE_COLUMN,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE,
+                                                                       Options.USEROPTION__LAZY_LINE_COLUMN }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -334,7 +413,9 @@ public class FilesJava
                                                        tokenVersion,
                                                        new String [] { Options.USEROPTION__TOKEN_EXTENDS,
                                                                        Options.USEROPTION__KEEP_LINE_COLUMN,
-                                                                       Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC }))
+                                                                       Options.USEROPTION__SUPPORT_CLASS_VISIBILITY_PUBLIC,
+                                                                       Options.USEROPTION__LAZY_TOKEN_IMAGE,
+                                                                       Options.USEROPTION__LAZY_LINE_COLUMN }))
     {
       if (!outputFile.needToWrite ())
         return;
@@ -126,6 +126,8 @@ public class OtherFilesGenJava
       FilesJava.gen_TokenMgrError (templateLoc);
       FilesJava.gen_ParseException (templateLoc);
       FilesJava.gen_Token (templateLoc);
+      if (Options.isLazyLineColumn ())
+        FilesJava.gen_LineIndex ();
     }
 
     if (Options.isUserTokenManager ())
@@ -149,6 +151,9 @@ public class OtherFilesGenJava
         }
       }
 
+    if (Options.isBatchParser ())
+      FilesJava.gen_ParserBatch ();
+
     final Writer w = FileHelper.getBufferedWriter (new File (Options.getOutputDirectory (),
                                                              s_cu_name + CONSTANTS_FILENAME_SUFFIX),
                                                    Options.getOutputEncoding ());
@@ -92,6 +92,34 @@ public class CodeGenerator
     }
   }
 
+  /**
+   * Redirect the generated code into a new buffer, e.g. to post-process it
+   * before it is emitted.
+   *
+   * @return The buffer that was active before. Must be passed to
+   *         {@link #endCapture(StringBuilder)}.
+   */
+  public StringBuilder beginCapture ()
+  {
+    final StringBuilder ret = m_outputBuffer;
+    m_outputBuffer = new StringBuilder ();
+    return ret;
+  }
+
+  /**
+   * Stop redirecting the generated code.
+   *
+   * @param aPrevBuffer
+   *        The buffer returned by {@link #beginCapture()}.
+   * @return The code generated since {@link #beginCapture()} was called.
+   */
+  public String endCapture (final StringBuilder aPrevBuffer)
+  {
+    final String ret = m_outputBuffer.toString ();
+    m_outputBuffer = aPrevBuffer;
+    return ret;
+  }
+
   public void genStringLiteralArrayCPP (final String varName, final String [] arr)
   {
     // First generate char array vars
@@ -0,0 +1,244 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.util.Map;
+
+import com.helger.pgcc.output.EOutputLanguage;
+
+/**
+ * Table driven token manager that uses a full DFA instead of simulating the
+ * NFA. The DFA is built by subset construction per lexical state at generation
+ * time and emitted as flat int tables indexed by state and character class. If
+ * the DFA gets too large, the NFA based tables of
+ * {@link TableDrivenJavaCodeGenerator} are used instead.<br>
+ * Use it with
+ * <code>TOKEN_MANAGER_CODE_GENERATOR=com.helger.pgcc.parser.DfaJavaCodeGenerator</code>
+ */
+public class DfaJavaCodeGenerator extends TableDrivenJavaCodeGenerator
+{
+  /** Maximum number of DFA states to create before falling back to the NFA */
+  public static final int MAX_DFA_STATES = 0x4000;
+
+  private TokenizerDfa m_dfa;
+  private long [] m_skipChars;
+
+  /**
+   * Build the DFA to generate the tables for.
+   *
+   * @param tokenizerData
+   *        The tokenizer data. Never <code>null</code>.
+   * @return <code>null</code> if the DFA gets too large.
+   */
+  protected TokenizerDfa buildDfa (final TokenizerData tokenizerData)
+  {
+    return TokenizerDfa.build (tokenizerData, MAX_DFA_STATES);
+  }
+
+  @Override
+  protected void addTemplateOptions (final Map <String, Object> options, final TokenizerData tokenizerData)
+  {
+    m_dfa = buildDfa (tokenizerData);
+    if (m_dfa == null)
+    {
+      JavaCCErrors.warning ("The token manager DFA needs more than " +
+                            MAX_DFA_STATES +
+                            " states. Falling back to the table driven NFA.");
+      return;
+    }
+    options.put ("fullDfa", Boolean.TRUE);
+    options.put ("dfaClassCount", Integer.valueOf (m_dfa.getClassCount ()));
+    options.put ("dfaFirstFinalState", Integer.valueOf (m_dfa.getFirstFinalState ()));
+
+    m_skipChars = _computeSkipChars (m_dfa, tokenizerData);
+    if (_hasSkipChars ())
+      options.put ("dfaSkipChars", Boolean.TRUE);
+  }
+
+  private boolean _hasSkipChars ()
+  {
+    for (final long l : m_skipChars)
+      if (l != 0L)
+        return true;
+    return false;
+  }
+
+  /**
+   * Find the ASCII characters that are skipped on their own in each lexical
+   * state. These are the single characters leading from the start state to a
+   * state without outgoing transitions that matches a SKIP without action and
+   * without lexical state change. Like the default token manager the generated
+   * code skips them without running the DFA.
+   *
+   * @return Two longs per lexical state with the bits of the characters to
+   *         skip.
+   */
+  private static long [] _computeSkipChars (final TokenizerDfa dfa, final TokenizerData tokenizerData)
+  {
+    final int [] startStates = dfa.getStartStates ();
+    final int [] charClass = dfa.getCharClasses ();
+    final int [] next = dfa.getNextStates ();
+    final int [] kinds = dfa.getKinds ();
+    final long [] ret = new long [startStates.length * 2];
+    for (int i = 0; i < startStates.length; i++)
+    {
+      if (startStates[i] >= dfa.getFirstFinalState ())
+        continue;
+
+      final Integer wildcardKind = tokenizerData.m_wildcardKind.get (Integer.valueOf (i));
+      for (int c = 0; c < 128; c++)
+      {
+        final int state = next[startStates[i] * dfa.getClassCount () + charClass[c]];
+        if (state < dfa.getFirstFinalState () || kinds[state] == Integer.MAX_VALUE)
+          continue;
+
+        // A smaller wildcard kind wins over the single character
+        final int kind = kinds[state];
+        if (wildcardKind != null && wildcardKind.intValue () < kind)
+          continue;
+
+        final TokenizerData.MatchInfo matchInfo = tokenizerData.m_allMatches.get (Integer.valueOf (kind));
+        if (matchInfo.m_matchType == TokenizerData.EMatchType.SKIP &&
+            matchInfo.m_action == null &&
+            matchInfo.m_newLexState == -1)
+          ret[i * 2 + (c >> 6)] |= 1L << c;
+      }
+    }
+    return ret;
+  }
+
+  @Override
+  protected void dumpTables (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
+  {
+    if (m_dfa == null)
+    {
+      super.dumpTables (codeGenerator, tokenizerData);
+      return;
+    }
+
+    codeGenerator.genCodeLine ("private static final int[] jjDfaStart = {");
+    final int [] startStates = m_dfa.getStartStates ();
+    for (int i = 0; i < startStates.length; i++)
+    {
+      if (i > 0)
+        codeGenerator.genCode (", ");
+      codeGenerator.genCode (Integer.toString (startStates[i]));
+    }
+    codeGenerator.genCodeLine ("};");
+
+    dumpCharClasses (codeGenerator, m_dfa.getCharClasses ());
+    dumpEncodedTable (codeGenerator, "jjDfaNext", m_dfa.getNextStates ());
+    dumpEncodedTable (codeGenerator, "jjDfaKind", m_dfa.getKinds ());
+
+    if (_hasSkipChars ())
+    {
+      final EOutputLanguage eOutputLanguage = codeGenerator.getOutputLanguage ();
+      codeGenerator.genCodeLine ("private static final " + eOutputLanguage.getTypeLong () + "[] jjDfaSkipChars = {");
+      for (int i = 0; i < m_skipChars.length; i++)
+      {
+        if (i > 0)
+          codeGenerator.genCode (", ");
+        codeGenerator.genCode (eOutputLanguage.getLongHex (m_skipChars[i]));
+      }
+      codeGenerator.genCodeLine ("};");
+    }
+
+    dumpWildcardKinds (codeGenerator, tokenizerData);
+  }
+
+  /**
+   * Dump the tables that map the input characters to the DFA character
+   * classes.
+   *
+   * @param codeGenerator
+   *        The code generator to write to. Never <code>null</code>.
+   * @param charClass
+   *        The class of each character. Never <code>null</code>.
+   */
+  protected void dumpCharClasses (final CodeGenerator codeGenerator, final int [] charClass)
+  {
+    // ASCII is looked up directly, all other characters by range
+    codeGenerator.genCodeLine ("private static final int[] jjDfaAsciiClass = {");
+    for (int i = 0; i < 128; i++)
+    {
+      if (i > 0)
+        codeGenerator.genCode (i % 16 == 0 ? ",\n" : ", ");
+      codeGenerator.genCode (Integer.toString (charClass[i]));
+    }
+    codeGenerator.genCodeLine ("};");
+
+    int rangeCount = 0;
+    for (int c = 128; c < charClass.length; c++)
+      if (c == 128 || charClass[c] != charClass[c - 1])
+        rangeCount++;
+    final int [] rangeStart = new int [rangeCount];
+    final int [] rangeClass = new int [rangeCount];
+    rangeCount = 0;
+    for (int c = 128; c < charClass.length; c++)
+      if (c == 128 || charClass[c] != charClass[c - 1])
+      {
+        rangeStart[rangeCount] = c;
+        rangeClass[rangeCount] = charClass[c];
+        rangeCount++;
+      }
+    dumpEncodedTable (codeGenerator, "jjDfaRangeStart", rangeStart);
+    dumpEncodedTable (codeGenerator, "jjDfaRangeClass", rangeClass);
+  }
+
+  /**
+   * Dump an int array as run length encoded string constants. Each run is
+   * stored as a pair of characters (count, value). The value
+   * <code>Integer.MAX_VALUE</code> is stored as <code>0xffff</code>.
+   */
+  protected static void dumpEncodedTable (final CodeGenerator codeGenerator, final String name, final int [] values)
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    int i = 0;
+    while (i < values.length)
+    {
+      int count = 1;
+      while (i + count < values.length && values[i + count] == values[i] && count < Character.MAX_VALUE)
+        count++;
+      if (values[i] < 0 || (values[i] >= Character.MAX_VALUE && values[i] != Integer.MAX_VALUE))
+        throw new IllegalStateException ("Cannot encode value " + values[i] + " of table " + name);
+      final int value = values[i] == Integer.MAX_VALUE ? Character.MAX_VALUE : values[i];
+      aSB.append ((char) count).append ((char) value);
+      i += count;
+    }
+
+    codeGenerator.genCode ("private static final int[] " + name + " = jjDecodeDfaTable(" + values.length + ", ");
+    JavaTableEncoder.dumpStringArray (codeGenerator, aSB);
+    codeGenerator.genCodeLine (");");
+  }
+}
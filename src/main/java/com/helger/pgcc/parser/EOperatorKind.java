@@ -0,0 +1,73 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import javax.annotation.Nullable;
+
+/**
+ * The kinds of operators within an OPERATORS expansion.
+ */
+public enum EOperatorKind
+{
+  /** Left associative binary operator */
+  LEFT,
+  /** Right associative binary operator */
+  RIGHT,
+  /** Unary operator in front of the operand */
+  PREFIX,
+  /** Unary operator after the operand */
+  POSTFIX;
+
+  public boolean isBinary ()
+  {
+    return this == LEFT || this == RIGHT;
+  }
+
+  /**
+   * @return the number of operands of the operator
+   */
+  public int getOperandCount ()
+  {
+    return isBinary () ? 2 : 1;
+  }
+
+  @Nullable
+  public static EOperatorKind getFromNameOrNull (@Nullable final String sName)
+  {
+    for (final EOperatorKind e : values ())
+      if (e.name ().equals (sName))
+        return e;
+    return null;
+  }
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Describes expansions of the form "OPERATORS (Operand()) { LEFT "+" "-" |
+ * LEFT "*" "/" | PREFIX "-" }". The levels are listed from the lowest to the
+ * highest precedence. The generated Java parser parses such an expansion with a
+ * single precedence climbing loop instead of one production per level.
+ * <p>
+ * The units of this sequence are the equivalent plain expansion
+ * <code>(prefix)* Operand() ( postfix | binary (prefix)* Operand() )*</code>,
+ * so all semantic checks, the lookahead calculation and the lookahead routines
+ * treat it like any other sequence. Only the code of the production itself is
+ * generated differently.
+ */
+public class ExpOperators extends ExpSequence
+{
+  /**
+   * A single operator.
+   */
+  public static final class Operator
+  {
+    private final Token m_aToken;
+    private final EOperatorKind m_eKind;
+    private final int m_nLevel;
+    private final AbstractExpRegularExpression m_aRegex;
+    private final ExpAction m_aAction;
+
+    Operator (@Nonnull final Token aToken,
+              @Nonnull final EOperatorKind eKind,
+              final int nLevel,
+              @Nonnull final AbstractExpRegularExpression aRegex,
+              @Nullable final ExpAction aAction)
+    {
+      m_aToken = aToken;
+      m_eKind = eKind;
+      m_nLevel = nLevel;
+      m_aRegex = aRegex;
+      m_aAction = aAction;
+    }
+
+    @Nonnull
+    public EOperatorKind getKind ()
+    {
+      return m_eKind;
+    }
+
+    /**
+     * @return the precedence level, 0 being the lowest
+     */
+    public int getLevel ()
+    {
+      return m_nLevel;
+    }
+
+    /**
+     * @return the binding power of the operator while it waits for its
+     *         operands. Always &gt; 0.
+     */
+    public int getBindingPower ()
+    {
+      return m_nLevel + 1;
+    }
+
+    /**
+     * @return the minimum binding power of the waiting operators that are
+     *         applied before this operator
+     */
+    public int getMinBindingPower ()
+    {
+      return m_eKind == EOperatorKind.RIGHT ? getBindingPower () + 1 : getBindingPower ();
+    }
+
+    @Nonnull
+    public AbstractExpRegularExpression getRegex ()
+    {
+      return m_aRegex;
+    }
+
+    /**
+     * @return the action that is executed when the operator is applied to its
+     *         operands. May be <code>null</code>.
+     */
+    @Nullable
+    public ExpAction getAction ()
+    {
+      return m_aAction;
+    }
+  }
+
+  private final ExpNonTerminal m_aOperand;
+  private final List <Operator> m_aOperators = new ArrayList <> ();
+
+  public ExpOperators (@Nonnull final Token t, @Nonnull final ExpNonTerminal aOperand)
+  {
+    setLine (t.beginLine);
+    setColumn (t.beginColumn);
+    m_aOperand = aOperand;
+  }
+
+  @Nonnull
+  public ExpNonTerminal getOperand ()
+  {
+    return m_aOperand;
+  }
+
+  @Nonnull
+  public List <Operator> getOperators ()
+  {
+    return m_aOperators;
+  }
+
+  public void addOperator (@Nonnull final Token t,
+                           @Nonnull final EOperatorKind eKind,
+                           final int nLevel,
+                           @Nonnull final AbstractExpRegularExpression aRegex,
+                           @Nullable final ExpAction aAction)
+  {
+    m_aOperators.add (new Operator (t, eKind, nLevel, aRegex, aAction));
+  }
+
+  @Nonnull
+  private static ExpSequence _sequence (@Nonnull final Token t, @Nonnull final Expansion... aUnits)
+  {
+    final ExpLookahead la = new ExpLookahead ();
+    la.setLine (t.beginLine);
+    la.setColumn (t.beginColumn);
+    la.setAmount (Options.getLookahead ());
+    la.setExplicit (false);
+    final ExpSequence seq = new ExpSequence (t, la);
+    la.setLaExpansion (seq);
+    _addUnits (seq, aUnits);
+    return seq;
+  }
+
+  private static void _addUnits (@Nonnull final ExpSequence seq, @Nonnull final Expansion... aUnits)
+  {
+    for (final Expansion aUnit : aUnits)
+    {
+      seq.addUnit (aUnit);
+      aUnit.m_parent = seq;
+      aUnit.m_ordinalBase = seq.getUnitCount () - 1;
+    }
+  }
+
+  @Nonnull
+  private static Expansion _choice (@Nonnull final List <Expansion> aChoices)
+  {
+    if (aChoices.size () == 1)
+      return aChoices.get (0);
+    final ExpChoice ch = new ExpChoice (aChoices.get (0));
+    for (final Expansion aChoice : aChoices)
+    {
+      if (aChoice != aChoices.get (0))
+        ch.getChoices ().add (aChoice);
+      aChoice.m_parent = ch;
+    }
+    return ch;
+  }
+
+  @Nonnull
+  private static AbstractExpRegularExpression _copy (@Nonnull final Operator aOp)
+  {
+    final AbstractExpRegularExpression ret;
+    if (aOp.m_aRegex instanceof ExpRStringLiteral)
+      ret = new ExpRStringLiteral (aOp.m_aToken, ((ExpRStringLiteral) aOp.m_aRegex).m_image);
+    else
+      ret = new ExpRJustName (aOp.m_aToken, aOp.m_aRegex.m_label);
+    JavaCCParserInternals.add_inline_regexpr (ret);
+    return ret;
+  }
+
+  @Nullable
+  private ExpZeroOrMore _prefixes (@Nonnull final Token t, final boolean bCopy)
+  {
+    final List <Expansion> aChoices = new ArrayList <> ();
+    for (final Operator aOp : m_aOperators)
+      if (aOp.m_eKind == EOperatorKind.PREFIX)
+        aChoices.add (_sequence (aOp.m_aToken, bCopy ? _copy (aOp) : aOp.m_aRegex));
+    if (aChoices.isEmpty ())
+      return null;
+    return new ExpZeroOrMore (t, _choice (aChoices));
+  }
+
+  /**
+   * Create the units of the equivalent plain expansion. Must be called after
+   * all operators were added.
+   *
+   * @param t
+   *        the OPERATORS token
+   */
+  public void createUnits (@Nonnull final Token t)
+  {
+    final ExpLookahead la = new ExpLookahead ();
+    la.setLine (t.beginLine);
+    la.setColumn (t.beginColumn);
+    la.setAmount (Options.getLookahead ());
+    la.setExplicit (false);
+    la.setLaExpansion (this);
+    addUnit (la);
+
+    final ExpZeroOrMore aPrefixes = _prefixes (t, false);
+    if (aPrefixes != null)
+      _addUnits (this, aPrefixes);
+    _addUnits (this, m_aOperand);
+
+    // The operand is repeated after a binary operator
+    final ExpNonTerminal aOperand = new ExpNonTerminal ();
+    aOperand.setLine (m_aOperand.getLine ());
+    aOperand.setColumn (m_aOperand.getColumn ());
+    aOperand.setName (m_aOperand.getName ());
+    aOperand.getArgumentTokens ().addAll (m_aOperand.getArgumentTokens ());
+    aOperand.getParametrizedTypeTokens ().addAll (m_aOperand.getParametrizedTypeTokens ());
+
+    final List <Expansion> aChoices = new ArrayList <> ();
+    final List <Expansion> aBinary = new ArrayList <> ();
+    for (final Operator aOp : m_aOperators)
+      if (aOp.m_eKind == EOperatorKind.POSTFIX)
+        aChoices.add (_sequence (aOp.m_aToken, aOp.m_aRegex));
+      else
+        if (aOp.m_eKind.isBinary ())
+          aBinary.add (_sequence (aOp.m_aToken, aOp.m_aRegex));
+    if (!aBinary.isEmpty ())
+    {
+      final ExpSequence aSeq = _sequence (t, _choice (aBinary));
+      final ExpZeroOrMore aNestedPrefixes = _prefixes (t, true);
+      if (aNestedPrefixes != null)
+        _addUnits (aSeq, aNestedPrefixes);
+      _addUnits (aSeq, aOperand);
+      aChoices.add (aSeq);
+    }
+    if (!aChoices.isEmpty ())
+      _addUnits (this, new ExpZeroOrMore (t, _choice (aChoices)));
+  }
+}
@@ -260,11 +260,17 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
 
     codeGenerator.genCodeNewLine ();
     codeGenerator.genCodeLine ("/** Token literal values. */");
-    codeGenerator.genCodeLine ("public static final String[] jjstrLiteralImages = {");
+    // With encoded tables the images are collected and dumped at the end
+    final List <String> aEncodedImages = Options.isEncodedTables () ? new ArrayList <> () : null;
+    if (aEncodedImages == null)
+      codeGenerator.genCodeLine ("public static final String[] jjstrLiteralImages = {");
 
     if (s_allImages == null || s_allImages.length == 0)
     {
-      codeGenerator.genCodeLine ("};");
+      if (aEncodedImages != null)
+        _dumpEncodedStrLiteralImages (codeGenerator, aEncodedImages);
+      else
+        codeGenerator.genCodeLine ("};");
       return;
     }
 
@@ -282,6 +288,11 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
            (!image.equals (image.toLowerCase (Locale.US)) || !image.equals (image.toUpperCase (Locale.US)))))
       {
         s_allImages[i] = null;
+        if (aEncodedImages != null)
+        {
+          aEncodedImages.add (null);
+          continue;
+        }
         if ((s_charCnt += 6) > 80)
         {
           codeGenerator.genCodeNewLine ();
@@ -292,6 +303,12 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
         continue;
       }
 
+      if (aEncodedImages != null)
+      {
+        aEncodedImages.add (image);
+        continue;
+      }
+
       final StringBuilder toPrint = new StringBuilder ("\"");
       for (int j = 0; j < image.length (); j++)
       {
@@ -335,6 +352,11 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
 
     while (++i < LexGenJava.s_maxOrdinal)
     {
+      if (aEncodedImages != null)
+      {
+        aEncodedImages.add (null);
+        continue;
+      }
       s_charCnt += 6;
       if (s_charCnt > 80)
       {
@@ -346,7 +368,17 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
       codeGenerator.genCode ("null, ");
     }
 
-    codeGenerator.genCodeLine ("};");
+    if (aEncodedImages != null)
+      _dumpEncodedStrLiteralImages (codeGenerator, aEncodedImages);
+    else
+      codeGenerator.genCodeLine ("};");
+  }
+
+  private static void _dumpEncodedStrLiteralImages (final CodeGenerator codeGenerator, final List <String> aImages)
+  {
+    codeGenerator.genCode ("public static final String[] jjstrLiteralImages = jjDecodeStrings(" + aImages.size () + ", ");
+    JavaTableEncoder.dumpStringArray (codeGenerator, JavaTableEncoder.encodeStrings (aImages));
+    codeGenerator.genCodeLine (");");
   }
 
   /**
@@ -657,8 +689,13 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
     switch (eOutputLanguage)
     {
       case JAVA:
-        codeGenerator.genCodeLine ("   try { curChar = input_stream.readChar(); }");
-        codeGenerator.genCodeLine ("   catch(java.io.IOException e) { return pos + 1; }");
+        if (Options.isEofSentinel ())
+          codeGenerator.genCodeLine ("   if (!jjReadChar()) { return pos + 1; }");
+        else
+        {
+          codeGenerator.genCodeLine ("   try { curChar = input_stream.readChar(); }");
+          codeGenerator.genCodeLine ("   catch(java.io.IOException e) { return pos + 1; }");
+        }
         break;
       case CPP:
         codeGenerator.genCodeLine ("   if (input_stream->endOfInput()) { return pos + 1; }");
@@ -880,6 +917,9 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
       }
       params.append (")");
 
+      // Java methods must stay small enough for the JIT compiler
+      final StringBuilder aPrevBuffer = eOutputLanguage.isJava () ? codeGenerator.beginCapture () : null;
+
       switch (eOutputLanguage)
       {
         case JAVA:
@@ -1017,8 +1057,13 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
         switch (eOutputLanguage)
         {
           case JAVA:
-            codeGenerator.genCodeLine ("   try { curChar = input_stream.readChar(); }");
-            codeGenerator.genCodeLine ("   catch(java.io.IOException e) {");
+            if (Options.isEofSentinel ())
+              codeGenerator.genCodeLine ("   if (!jjReadChar()) {");
+            else
+            {
+              codeGenerator.genCodeLine ("   try { curChar = input_stream.readChar(); }");
+              codeGenerator.genCodeLine ("   catch(java.io.IOException e) {");
+            }
             break;
           case CPP:
             codeGenerator.genCodeLine ("   if (input_stream->endOfInput()) {");
@@ -1487,12 +1532,104 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
       }
 
       codeGenerator.genCodeLine ("}");
+
+      if (aPrevBuffer != null)
+        _dumpSplitDfaMethod (codeGenerator,
+                             codeGenerator.endCapture (aPrevBuffer),
+                             "jjMoveStringLiteralDfa" + i + LexGenJava.s_lexStateSuffix,
+                             params.toString ());
     }
 
     if (!LexGenJava.s_mixed[LexGenJava.s_lexStateIndex] && NfaState.s_generatedStates != 0 && createStartNfa)
       dumpStartWithStates (codeGenerator);
   }
 
+  /**
+   * Emit a jjMoveStringLiteralDfa method. If it is too big for a method that
+   * the JIT compiler still compiles, the arms of its switch statement that do
+   * not fit are moved into helper methods with the same parameters. The code
+   * after the switch statement is copied into every method with an arm that
+   * leaves the switch.
+   *
+   * @param codeGenerator
+   *        The code generator to use
+   * @param sMethod
+   *        The complete code of the method
+   * @param sMethodName
+   *        The name of the method
+   * @param sParams
+   *        The parameter list of the method including the parenthesis
+   */
+  private static void _dumpSplitDfaMethod (final CodeGenerator codeGenerator,
+                                           final String sMethod,
+                                           final String sMethodName,
+                                           final String sParams)
+  {
+    final int nSize = JavaMethodSplitter.estimateSize (sMethod);
+    if (nSize <= JavaMethodSplitter.MAX_METHOD_SIZE || !Options.isSplitHugeMethods ())
+    {
+      codeGenerator.genCode (sMethod);
+      return;
+    }
+
+    final List <String> aLines = JavaMethodSplitter.getLines (sMethod);
+    final int nSwitch = aLines.indexOf ("   switch(curChar)");
+    final int nDefault = aLines.indexOf ("      default :");
+    final int nSwitchEnd = aLines.subList (nDefault, aLines.size ()).indexOf ("   }") + nDefault;
+    final List <String> aPrologue = aLines.subList (0, nSwitch + 2);
+    final List <String> aCases = aLines.subList (nSwitch + 2, nDefault);
+    final List <String> aDefault = aLines.subList (nDefault, nSwitchEnd);
+    // Without the closing brace of the method
+    final List <String> aTail = aLines.subList (nSwitchEnd + 1, aLines.size () - 1);
+
+    final int nMaxSize = JavaMethodSplitter.MAX_METHOD_SIZE -
+                         JavaMethodSplitter.estimateSize (String.join ("\n", aPrologue)) -
+                         JavaMethodSplitter.estimateSize (String.join ("\n", aTail));
+    final List <List <String>> aChunks = JavaMethodSplitter.splitCases (aCases,
+                                                                        "      case ",
+                                                                        x -> x.startsWith ("         return ") ||
+                                                                             x.equals ("         break;"),
+                                                                        nMaxSize,
+                                                                        nMaxSize);
+    final String sArgs = sParams.replace (codeGenerator.getOutputLanguage ().getTypeLong () + " ", "");
+    for (int nChunk = 0; nChunk < aChunks.size (); nChunk++)
+    {
+      final List <String> aBody = new ArrayList <> (aChunks.get (nChunk));
+      if (nChunk < aChunks.size () - 1)
+      {
+        aBody.add ("      default :");
+        aBody.add ("         return " + sMethodName + "_" + (nChunk + 1) + sArgs + ";");
+      }
+      else
+        aBody.addAll (aDefault);
+
+      if (nChunk == 0)
+      {
+        for (final String sLine : aPrologue)
+          codeGenerator.genCodeLine (sLine);
+      }
+      else
+      {
+        codeGenerator.genCodeNewLine ();
+        codeGenerator.genCodeLine ("private int " + sMethodName + "_" + nChunk + sParams);
+        codeGenerator.genCodeLine ("{");
+        codeGenerator.genCodeLine ("   switch(curChar)");
+        codeGenerator.genCodeLine ("   {");
+      }
+      for (final String sLine : aBody)
+        codeGenerator.genCodeLine (sLine);
+      codeGenerator.genCodeLine ("   }");
+      // The code after the switch is only reachable via break
+      if (aBody.contains ("         break;"))
+        for (final String sLine : aTail)
+          codeGenerator.genCodeLine (sLine);
+      codeGenerator.genCodeLine ("}");
+    }
+
+    if (aChunks.size () > 1)
+      JavaMethodSplitter.report (LexGenJava.s_tokMgrClassName + "." + sMethodName, aChunks.size (), nSize);
+  }
+
   static final int getStrKind (final String str)
   {
     for (int i = 0; i < s_maxStrKind; i++)
@@ -1862,6 +1999,10 @@ public class ExpRStringLiteral extends AbstractExpRegularExpression
     s_charCnt = 0;
     s_allImages = null;
     boilerPlateDumped = false;
+    literalsByLength.clear ();
+    literalKinds.clear ();
+    kindToLexicalState.clear ();
+    nfaStateMap.clear ();
   }
 
   @Override
@@ -159,6 +159,11 @@ public final class JavaCCErrors
     fatal ("Internal error in JavaCC: Please file an issue at https://github.com/phax/ParserGeneratorCC/issues . Thank you.");
   }
 
+  public static void note (final Object node, final String mess)
+  {
+    PGPrinter.info ("Note: " + _getLocationInfo (node) + mess);
+  }
+
   public static void note (final String mess)
   {
     PGPrinter.info ("Note: " + mess);
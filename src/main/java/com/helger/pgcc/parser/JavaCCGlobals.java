@@ -212,6 +212,12 @@ public final class JavaCCGlobals
    */
   protected static int s_maskindex = 0;
   protected static int s_jj2index = 0;
+  /** Number of jj_2 routines that use a static prediction */
+  protected static int s_staticLookaheadCount = 0;
+  /** Number of jj_2 routines that use the lookahead DFA */
+  protected static int s_adaptiveLookaheadCount = 0;
+  /** Number of OPERATORS expansions */
+  protected static int s_operatorsCount = 0;
   public static boolean s_lookaheadNeeded;
   protected static final List <int []> s_maskVals = new ArrayList <> ();
 
@@ -649,6 +655,9 @@ public final class JavaCCGlobals
     s_simple_tokens_table.clear ();
     s_maskindex = 0;
     s_jj2index = 0;
+    s_staticLookaheadCount = 0;
+    s_adaptiveLookaheadCount = 0;
+    s_operatorsCount = 0;
     s_maskVals.clear ();
     s_cline = 0;
     s_ccol = 0;
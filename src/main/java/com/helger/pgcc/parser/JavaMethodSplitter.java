@@ -0,0 +1,392 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Helper to keep the methods of the generated Java token managers
+ * JIT-compilable. HotSpot never compiles methods with more than
+ * {@link #HUGE_METHOD_LIMIT} bytes of bytecode, so these methods would always
+ * be interpreted. The bytecode size is estimated from the generated source code
+ * and the arms of big switch statements are moved into helper methods.
+ */
+public final class JavaMethodSplitter
+{
+  /** Methods with more bytes of bytecode are not compiled by HotSpot */
+  public static final int HUGE_METHOD_LIMIT = 8000;
+  /** Maximum estimated size of a generated method - leaves room for errors */
+  public static final int MAX_METHOD_SIZE = 7000;
+
+  /**
+   * The estimated bytecode size of a piece of code. The case labels are
+   * collected separately, because the size of a switch instruction depends on
+   * the range of its labels.
+   */
+  private static final class SizeEstimate
+  {
+    private int m_nSize;
+    private int m_nLabels;
+    private long m_nMinLabel = Long.MAX_VALUE;
+    private long m_nMaxLabel = Long.MIN_VALUE;
+
+    void addLabel (final long nLabel)
+    {
+      m_nLabels++;
+      m_nMinLabel = Math.min (m_nMinLabel, nLabel);
+      m_nMaxLabel = Math.max (m_nMaxLabel, nLabel);
+    }
+
+    void add (final SizeEstimate aOther)
+    {
+      m_nSize += aOther.m_nSize;
+      m_nLabels += aOther.m_nLabels;
+      m_nMinLabel = Math.min (m_nMinLabel, aOther.m_nMinLabel);
+      m_nMaxLabel = Math.max (m_nMaxLabel, aOther.m_nMaxLabel);
+    }
+
+    int getSize ()
+    {
+      if (m_nLabels == 0)
+        return m_nSize;
+      // Same choice as javac between tableswitch and lookupswitch
+      final long nRange = m_nMaxLabel - m_nMinLabel + 1;
+      final long nTableCost = 4 + nRange + 3 * 3;
+      final long nLookupCost = 3 + 2 * m_nLabels + 3 * m_nLabels;
+      if (nTableCost <= nLookupCost)
+        return (int) (m_nSize + 16 + 4 * nRange);
+      return m_nSize + 12 + 8 * m_nLabels;
+    }
+
+    int getSizeWith (final SizeEstimate aOther)
+    {
+      final SizeEstimate aSum = new SizeEstimate ();
+      aSum.add (this);
+      aSum.add (aOther);
+      return aSum.getSize ();
+    }
+  }
+
+  private JavaMethodSplitter ()
+  {}
+
+  private static int _getWordSize (final String sWord, final boolean bCall)
+  {
+    switch (sWord)
+    {
+      case "if":
+      case "else":
+      case "break":
+      case "while":
+      case "for":
+      case "catch":
+        return 3;
+      case "return":
+      case "true":
+      case "false":
+      case "null":
+      case "throw":
+        return 1;
+      case "new":
+        return 6;
+      case "switch":
+      case "default":
+      case "do":
+      case "try":
+      case "final":
+      case "int":
+      case "long":
+      case "char":
+      case "boolean":
+      case "private":
+      case "protected":
+      case "public":
+      case "static":
+        return 0;
+      default:
+        // aload_0 + invokevirtual
+        if (bCall)
+          return 4;
+        // Fields of the token manager need aload_0 + getfield
+        if (sWord.startsWith ("jj") || sWord.equals ("curChar") || sWord.equals ("input_stream"))
+          return 4;
+        // Local variable
+        return 2;
+    }
+  }
+
+  private static long _parseNumber (final String sNumber) throws NumberFormatException
+  {
+    String s = sNumber;
+    if (s.endsWith ("L") || s.endsWith ("l"))
+      s = s.substring (0, s.length () - 1);
+    if (s.startsWith ("0x") || s.startsWith ("0X"))
+      return Long.parseUnsignedLong (s.substring (2), 16);
+    if (s.length () > 1 && s.startsWith ("0"))
+      return Long.parseLong (s, 8);
+    return Long.parseLong (s);
+  }
+
+  private static int _getNumberSize (final String sNumber)
+  {
+    final long nValue;
+    try
+    {
+      nValue = _parseNumber (sNumber);
+    }
+    catch (final NumberFormatException ex)
+    {
+      return 3;
+    }
+    if (sNumber.endsWith ("L") || sNumber.endsWith ("l"))
+      return nValue == 0 || nValue == 1 ? 1 : 3;
+    if (nValue >= -1 && nValue <= 5)
+      return 1;
+    if (nValue >= Byte.MIN_VALUE && nValue <= Byte.MAX_VALUE)
+      return 2;
+    return 3;
+  }
+
+  private static void _addLabel (final SizeEstimate aEstimate, final String sLabel)
+  {
+    try
+    {
+      if (sLabel.length () >= 3 && sLabel.charAt (0) == '\'')
+        aEstimate.addLabel (sLabel.charAt (sLabel.length () - 2));
+      else
+        aEstimate.addLabel (_parseNumber (sLabel));
+    }
+    catch (final NumberFormatException ex)
+    {
+      // Constant - assume one lookupswitch entry
+      aEstimate.m_nSize += 8;
+    }
+  }
+
+  private static SizeEstimate _estimate (final CharSequence aCode)
+  {
+    final SizeEstimate ret = new SizeEstimate ();
+    final int nLen = aCode.length ();
+    int i = 0;
+    while (i < nLen)
+    {
+      final char c = aCode.charAt (i);
+      if (Character.isJavaIdentifierStart (c))
+      {
+        int j = i + 1;
+        while (j < nLen && Character.isJavaIdentifierPart (aCode.charAt (j)))
+          j++;
+        final String sWord = aCode.subSequence (i, j).toString ();
+        i = j;
+        if (sWord.equals ("case"))
+        {
+          // The label is part of the switch instruction
+          while (j < nLen && aCode.charAt (j) != ':')
+          {
+            if (aCode.charAt (j) == '\'')
+            {
+              // Character literal - may be ':'
+              j++;
+              if (aCode.charAt (j) == '\\')
+                j++;
+              j++;
+            }
+            j++;
+          }
+          _addLabel (ret, aCode.subSequence (i, j).toString ().trim ());
+          i = j + 1;
+        }
+        else
+        {
+          while (j < nLen && aCode.charAt (j) == ' ')
+            j++;
+          ret.m_nSize += _getWordSize (sWord, j < nLen && aCode.charAt (j) == '(');
+        }
+      }
+      else
+        if (c >= '0' && c <= '9')
+        {
+          int j = i + 1;
+          while (j < nLen && Character.isLetterOrDigit (aCode.charAt (j)))
+            j++;
+          ret.m_nSize += _getNumberSize (aCode.subSequence (i, j).toString ());
+          i = j;
+        }
+        else
+          if (c == '"' || c == '\'')
+          {
+            // String or character literal
+            int j = i + 1;
+            while (j < nLen && aCode.charAt (j) != c)
+            {
+              if (aCode.charAt (j) == '\\')
+                j++;
+              j++;
+            }
+            ret.m_nSize += c == '"' ? 3 : 2;
+            i = j + 1;
+          }
+          else
+            if (c == '/' && i + 1 < nLen && aCode.charAt (i + 1) == '/')
+            {
+              // Line comment
+              while (i < nLen && aCode.charAt (i) != '\n')
+                i++;
+            }
+            else
+            {
+              final char cNext = i + 1 < nLen ? aCode.charAt (i + 1) : 0;
+              if ((c == '&' || c == '|' || c == '+' || c == '-') && cNext == c)
+              {
+                // Conditional branch or increment of a field
+                ret.m_nSize += c == '&' || c == '|' ? 3 : 5;
+                i += 2;
+              }
+              else
+              {
+                if ("=&|<>!+-*/%^~?[".indexOf (c) >= 0)
+                  ret.m_nSize++;
+                i++;
+              }
+            }
+    }
+    return ret;
+  }
+
+  /**
+   * Estimate the number of bytes of bytecode that the passed Java statements
+   * compile to. This is only a rough approximation based on the tokens of the
+   * code, but it is good enough for the code of the generated token managers.
+   * All case labels are assumed to belong to the same switch statement.
+   *
+   * @param aCode
+   *        The code to estimate. May not be <code>null</code>.
+   * @return The estimated size in bytes.
+   */
+  public static int estimateSize (final CharSequence aCode)
+  {
+    return _estimate (aCode).getSize ();
+  }
+
+  /**
+   * @param sCode
+   *        Generated code
+   * @return The lines of the code without the line breaks.
+   */
+  public static List <String> getLines (final String sCode)
+  {
+    final List <String> ret = new ArrayList <> (Arrays.asList (sCode.split ("\n", -1)));
+    // Remove the empty string after the last line break
+    if (!ret.isEmpty () && ret.get (ret.size () - 1).isEmpty ())
+      ret.remove (ret.size () - 1);
+    return ret;
+  }
+
+  /**
+   * Split the arms of a switch statement into chunks. A chunk only ends before
+   * a case label that cannot be reached by falling through from the previous
+   * arm. A single arm that is bigger than the maximum size is not split.
+   *
+   * @param aLines
+   *        The lines of all arms of the switch statement
+   * @param sCasePrefix
+   *        The start of the lines containing the case labels
+   * @param aIsArmEnd
+   *        Checks whether a line ends an arm, e.g. with <code>break</code> or
+   *        <code>return</code>
+   * @param nFirstSize
+   *        The maximum estimated size of the first chunk, which may be empty
+   * @param nSize
+   *        The maximum estimated size of all other chunks
+   * @return The chunks of lines. Never empty.
+   */
+  public static List <List <String>> splitCases (final List <String> aLines,
+                                                 final String sCasePrefix,
+                                                 final Predicate <String> aIsArmEnd,
+                                                 final int nFirstSize,
+                                                 final int nSize)
+  {
+    final List <List <String>> ret = new ArrayList <> ();
+    List <String> aChunk = new ArrayList <> ();
+    SizeEstimate aChunkSize = new SizeEstimate ();
+    int nMaxSize = nFirstSize;
+    int nGroupStart = 0;
+    for (int i = 0; i <= aLines.size (); i++)
+    {
+      if (i == aLines.size () ||
+          (i > nGroupStart && aLines.get (i).startsWith (sCasePrefix) && aIsArmEnd.test (aLines.get (i - 1))))
+      {
+        // Lines nGroupStart to i can only be entered via their case labels
+        final List <String> aGroup = aLines.subList (nGroupStart, i);
+        final SizeEstimate aGroupSize = _estimate (String.join ("\n", aGroup));
+        if (aChunkSize.getSizeWith (aGroupSize) > nMaxSize && (!aChunk.isEmpty () || ret.isEmpty ()))
+        {
+          ret.add (aChunk);
+          aChunk = new ArrayList <> ();
+          aChunkSize = new SizeEstimate ();
+          nMaxSize = nSize;
+        }
+        aChunk.addAll (aGroup);
+        aChunkSize.add (aGroupSize);
+        nGroupStart = i;
+      }
+    }
+    ret.add (aChunk);
+    return ret;
+  }
+
+  /**
+   * Report a split method.
+   *
+   * @param sMethodName
+   *        The name of the split method
+   * @param nMethods
+   *        The number of methods it was split into
+   * @param nSize
+   *        The estimated size of the method before splitting
+   */
+  public static void report (final String sMethodName, final int nMethods, final int nSize)
+  {
+    JavaCCErrors.note ("Method " +
+                       sMethodName +
+                       " (estimated " +
+                       nSize +
+                       " bytes of bytecode) was split into " +
+                       nMethods +
+                       " methods to stay below the HugeMethodLimit of the JIT compiler.");
+  }
+}
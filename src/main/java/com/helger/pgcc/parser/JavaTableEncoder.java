@@ -0,0 +1,309 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.util.List;
+
+/**
+ * Helper to emit the tables of the generated Java token managers and parsers
+ * as encoded string constants (option <code>ENCODED_TABLES</code>). Array
+ * initializers are compiled into code that stores each element on its own, so
+ * big tables result in huge static initializers that are slow to load and run
+ * only once. String constants are loaded from the constant pool and decoded
+ * with a single loop at runtime.<br>
+ * All numbers are stored as chars: an int below <code>0xffff</code> uses a
+ * single char, all other ints use the marker char <code>0xffff</code> followed
+ * by the high and the low 16 bits. A long always uses 4 chars.
+ */
+public final class JavaTableEncoder
+{
+  /**
+   * Number of characters per encoded string constant - keeps each constant well
+   * below the 64K limit of the class file format
+   */
+  public static final int CHUNK_SIZE = 8192;
+
+  private static final char INT_MARKER = 0xffff;
+
+  private JavaTableEncoder ()
+  {}
+
+  public static void encodeInt (final StringBuilder aSB, final int nValue)
+  {
+    if (nValue >= 0 && nValue < INT_MARKER)
+      aSB.append ((char) nValue);
+    else
+      aSB.append (INT_MARKER).append ((char) (nValue >>> 16)).append ((char) nValue);
+  }
+
+  public static void encodeLong (final StringBuilder aSB, final long nValue)
+  {
+    aSB.append ((char) (nValue >>> 48))
+       .append ((char) (nValue >>> 32))
+       .append ((char) (nValue >>> 16))
+       .append ((char) nValue);
+  }
+
+  private static void _encodeLength (final StringBuilder aSB, final int nLength)
+  {
+    // Lengths are always decoded from a single char
+    if (nLength >= INT_MARKER)
+      throw new IllegalStateException ("Cannot encode length " + nLength);
+    aSB.append ((char) nLength);
+  }
+
+  /**
+   * @param aValues
+   *        The values to encode. May not be <code>null</code>.
+   * @return The encoded values for <code>jjDecodeInts</code>.
+   */
+  public static String encodeInts (final int [] aValues)
+  {
+    final StringBuilder aSB = new StringBuilder (aValues.length);
+    for (final int n : aValues)
+      encodeInt (aSB, n);
+    return aSB.toString ();
+  }
+
+  /**
+   * @param aValues
+   *        The values to encode. May not be <code>null</code>.
+   * @return The encoded values for <code>jjDecodeLongs</code>.
+   */
+  public static String encodeLongs (final long [] aValues)
+  {
+    final StringBuilder aSB = new StringBuilder (aValues.length * 4);
+    for (final long n : aValues)
+      encodeLong (aSB, n);
+    return aSB.toString ();
+  }
+
+  /**
+   * @param aRows
+   *        The rows to encode. May not be <code>null</code>.
+   * @return The encoded rows for <code>jjDecodeIntArrays</code>. Each row is
+   *         stored as its length followed by its values.
+   */
+  public static String encodeIntArrays (final List <int []> aRows)
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (final int [] aRow : aRows)
+    {
+      _encodeLength (aSB, aRow.length);
+      for (final int n : aRow)
+        encodeInt (aSB, n);
+    }
+    return aSB.toString ();
+  }
+
+  /**
+   * @param aValues
+   *        The strings to encode. May not be <code>null</code> but may contain
+   *        <code>null</code> elements.
+   * @return The encoded strings for <code>jjDecodeStrings</code>. Each string
+   *         is stored as its length + 1 (0 for <code>null</code>) followed by
+   *         its chars.
+   */
+  public static String encodeStrings (final List <String> aValues)
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (final String s : aValues)
+      if (s == null)
+        _encodeLength (aSB, 0);
+      else
+      {
+        _encodeLength (aSB, s.length () + 1);
+        aSB.append (s);
+      }
+    return aSB.toString ();
+  }
+
+  /**
+   * Emit the passed encoded data as a single string constant with all chars
+   * escaped.
+   *
+   * @param codeGenerator
+   *        The code generator to write to. Never <code>null</code>.
+   * @param aData
+   *        The encoded data. Never <code>null</code>. Must not be longer than
+   *        {@link #CHUNK_SIZE} chars.
+   * @param nStart
+   *        The index of the first char to emit.
+   * @param nEnd
+   *        The index after the last char to emit.
+   */
+  public static void dumpString (final CodeGenerator codeGenerator,
+                                 final CharSequence aData,
+                                 final int nStart,
+                                 final int nEnd)
+  {
+    if (nEnd - nStart > CHUNK_SIZE)
+      throw new IllegalArgumentException ("The string constant is too long: " + (nEnd - nStart));
+    codeGenerator.genCode ("\"");
+    for (int j = nStart; j < nEnd; j++)
+    {
+      final char c = aData.charAt (j);
+      if (c <= 0xff)
+        codeGenerator.genCode ("\\" + Integer.toOctalString (c));
+      else
+      {
+        String hexVal = Integer.toHexString (c);
+        while (hexVal.length () < 4)
+          hexVal = "0" + hexVal;
+        codeGenerator.genCode ("\\u" + hexVal);
+      }
+      if ((j - nStart) % 32 == 31)
+        codeGenerator.genCode ("\" +\n\"");
+    }
+    codeGenerator.genCode ("\"");
+  }
+
+  /**
+   * Emit the passed encoded data as <code>new String[] {...}</code>. The data
+   * is split into constants of at most {@link #CHUNK_SIZE} chars.
+   *
+   * @param codeGenerator
+   *        The code generator to write to. Never <code>null</code>.
+   * @param aData
+   *        The encoded data. Never <code>null</code>.
+   */
+  public static void dumpStringArray (final CodeGenerator codeGenerator, final CharSequence aData)
+  {
+    codeGenerator.genCodeLine ("new String[] {");
+    if (aData.length () == 0)
+      codeGenerator.genCode ("\"\"");
+    for (int nStart = 0; nStart < aData.length (); nStart += CHUNK_SIZE)
+    {
+      if (nStart > 0)
+        codeGenerator.genCodeLine (",");
+      dumpString (codeGenerator, aData, nStart, Math.min (aData.length (), nStart + CHUNK_SIZE));
+    }
+    codeGenerator.genCode ("}");
+  }
+
+  /**
+   * Emit the static methods that decode the tables created by this class.
+   *
+   * @param codeGenerator
+   *        The code generator to write to. Never <code>null</code>.
+   */
+  public static void dumpDecodeMethods (final CodeGenerator codeGenerator)
+  {
+    codeGenerator.genCodeLine ("private static String jjJoinTable(final String[] data)");
+    codeGenerator.genCodeLine ("{");
+    codeGenerator.genCodeLine ("   if (data.length == 1)");
+    codeGenerator.genCodeLine ("      return data[0];");
+    codeGenerator.genCodeLine ("   final StringBuilder sb = new StringBuilder();");
+    codeGenerator.genCodeLine ("   for (final String s : data)");
+    codeGenerator.genCodeLine ("      sb.append(s);");
+    codeGenerator.genCodeLine ("   return sb.toString();");
+    codeGenerator.genCodeLine ("}");
+    codeGenerator.genCodeLine ("private static int jjDecodeInt(final String s, final int i)");
+    codeGenerator.genCodeLine ("{");
+    codeGenerator.genCodeLine ("   return (s.charAt(i + 1) << 16) | s.charAt(i + 2);");
+    codeGenerator.genCodeLine ("}");
+    codeGenerator.genCodeLine ("private static int[] jjDecodeInts(final int size, final String[] data)");
+    codeGenerator.genCodeLine ("{");
+    codeGenerator.genCodeLine ("   final String s = jjJoinTable(data);");
+    codeGenerator.genCodeLine ("   final int[] ret = new int[size];");
+    codeGenerator.genCodeLine ("   int i = 0;");
+    codeGenerator.genCodeLine ("   for (int k = 0; k < size; k++)");
+    codeGenerator.genCodeLine ("   {");
+    codeGenerator.genCodeLine ("      final int c = s.charAt(i);");
+    codeGenerator.genCodeLine ("      if (c != 0xffff)");
+    codeGenerator.genCodeLine ("      {");
+    codeGenerator.genCodeLine ("         ret[k] = c;");
+    codeGenerator.genCodeLine ("         i++;");
+    codeGenerator.genCodeLine ("      }");
+    codeGenerator.genCodeLine ("      else");
+    codeGenerator.genCodeLine ("      {");
+    codeGenerator.genCodeLine ("         ret[k] = jjDecodeInt(s, i);");
+    codeGenerator.genCodeLine ("         i += 3;");
+    codeGenerator.genCodeLine ("      }");
+    codeGenerator.genCodeLine ("   }");
+    codeGenerator.genCodeLine ("   return ret;");
+    codeGenerator.genCodeLine ("}");
+    codeGenerator.genCodeLine ("private static int[][] jjDecodeIntArrays(final int size, final String[] data)");
+    codeGenerator.genCodeLine ("{");
+    codeGenerator.genCodeLine ("   final String s = jjJoinTable(data);");
+    codeGenerator.genCodeLine ("   final int[][] ret = new int[size][];");
+    codeGenerator.genCodeLine ("   int i = 0;");
+    codeGenerator.genCodeLine ("   for (int k = 0; k < size; k++)");
+    codeGenerator.genCodeLine ("   {");
+    codeGenerator.genCodeLine ("      final int[] row = new int[s.charAt(i++)];");
+    codeGenerator.genCodeLine ("      for (int j = 0; j < row.length; j++)");
+    codeGenerator.genCodeLine ("      {");
+    codeGenerator.genCodeLine ("         final int c = s.charAt(i);");
+    codeGenerator.genCodeLine ("         if (c != 0xffff)");
+    codeGenerator.genCodeLine ("         {");
+    codeGenerator.genCodeLine ("            row[j] = c;");
+    codeGenerator.genCodeLine ("            i++;");
+    codeGenerator.genCodeLine ("         }");
+    codeGenerator.genCodeLine ("         else");
+    codeGenerator.genCodeLine ("         {");
+    codeGenerator.genCodeLine ("            row[j] = jjDecodeInt(s, i);");
+    codeGenerator.genCodeLine ("            i += 3;");
+    codeGenerator.genCodeLine ("         }");
+    codeGenerator.genCodeLine ("      }");
+    codeGenerator.genCodeLine ("      ret[k] = row;");
+    codeGenerator.genCodeLine ("   }");
+    codeGenerator.genCodeLine ("   return ret;");
+    codeGenerator.genCodeLine ("}");
+    codeGenerator.genCodeLine ("private static long[] jjDecodeLongs(final String[] data)");
+    codeGenerator.genCodeLine ("{");
+    codeGenerator.genCodeLine ("   final String s = jjJoinTable(data);");
+    codeGenerator.genCodeLine ("   final long[] ret = new long[s.length() / 4];");
+    codeGenerator.genCodeLine ("   for (int k = 0, i = 0; k < ret.length; k++, i += 4)");
+    codeGenerator.genCodeLine ("      ret[k] = ((long) s.charAt(i) << 48) | ((long) s.charAt(i + 1) << 32) |");
+    codeGenerator.genCodeLine ("               ((long) s.charAt(i + 2) << 16) | s.charAt(i + 3);");
+    codeGenerator.genCodeLine ("   return ret;");
+    codeGenerator.genCodeLine ("}");
+    codeGenerator.genCodeLine ("private static String[] jjDecodeStrings(final int size, final String[] data)");
+    codeGenerator.genCodeLine ("{");
+    codeGenerator.genCodeLine ("   final String s = jjJoinTable(data);");
+    codeGenerator.genCodeLine ("   final String[] ret = new String[size];");
+    codeGenerator.genCodeLine ("   int i = 0;");
+    codeGenerator.genCodeLine ("   for (int k = 0; k < size; k++)");
+    codeGenerator.genCodeLine ("   {");
+    codeGenerator.genCodeLine ("      final int len = s.charAt(i++);");
+    codeGenerator.genCodeLine ("      if (len > 0)");
+    codeGenerator.genCodeLine ("      {");
+    codeGenerator.genCodeLine ("         ret[k] = s.substring(i, i + len - 1);");
+    codeGenerator.genCodeLine ("         i += len - 1;");
+    codeGenerator.genCodeLine ("      }");
+    codeGenerator.genCodeLine ("   }");
+    codeGenerator.genCodeLine ("   return ret;");
+    codeGenerator.genCodeLine ("}");
+  }
+}
@@ -694,6 +694,8 @@ public class LexGenJava extends CodeGenerator
 
     final EOutputLanguage eOutputLanguage = getOutputLanguage ();
 
+    if (Options.isEncodedTables ())
+      JavaTableEncoder.dumpDecodeMethods (this);
     ExpRStringLiteral.dumpStrLiteralImages (this);
     _dumpFillToken ();
     NfaState.dumpStateSets (this);
@@ -932,15 +934,26 @@ public class LexGenJava extends CodeGenerator
 
     genCodeLine ("protected Token jjFillToken()");
     genCodeLine ("{");
+    final boolean bLazyImage = Options.isLazyTokenImage ();
     genCodeLine ("   final Token t;");
     genCodeLine ("   final String curTokenImage;");
-    if (s_keepLineCol)
+    // Line and column are computed from the offsets on demand
+    final boolean bLazyLineCol = s_keepLineCol && Options.isLazyLineColumn ();
+    if (bLazyImage)
+      genCodeLine ("   CharSequence input = null;");
+    if (bLazyLineCol)
     {
-      genCodeLine ("   final int beginLine;");
-      genCodeLine ("   final int endLine;");
-      genCodeLine ("   final int beginColumn;");
-      genCodeLine ("   final int endColumn;");
+      genCodeLine ("   final int beginOffset;");
+      genCodeLine ("   final int endOffset;");
     }
+    else
+      if (s_keepLineCol)
+      {
+        genCodeLine ("   final int beginLine;");
+        genCodeLine ("   final int endLine;");
+        genCodeLine ("   final int beginColumn;");
+        genCodeLine ("   final int endColumn;");
+      }
 
     if (s_hasEmptyMatch)
     {
@@ -951,39 +964,71 @@ public class LexGenJava extends CodeGenerator
       genCodeLine ("      else");
       genCodeLine ("         curTokenImage = image.toString();");
 
-      if (s_keepLineCol)
+      if (bLazyLineCol)
       {
-        genCodeLine ("      beginLine = endLine = input_stream.getEndLine();");
-        genCodeLine ("      beginColumn = endColumn = input_stream.getEndColumn();");
+        genCodeLine ("      endOffset = input_stream.getEndOffset();");
+        genCodeLine ("      beginOffset = endOffset - 1;");
       }
+      else
+        if (s_keepLineCol)
+        {
+          genCodeLine ("      beginLine = endLine = input_stream.getEndLine();");
+          genCodeLine ("      beginColumn = endColumn = input_stream.getEndColumn();");
+        }
 
       genCodeLine ("   }");
       genCodeLine ("   else");
       genCodeLine ("   {");
       genCodeLine ("      String im = jjstrLiteralImages[jjmatchedKind];");
-      genCodeLine ("      curTokenImage = im == null ? input_stream.getImage() : im;");
+      if (bLazyImage)
+      {
+        genCodeLine ("      if (im == null)");
+        genCodeLine ("         input = input_stream.getInput();");
+        genCodeLine ("      curTokenImage = im == null && input == null ? input_stream.getImage() : im;");
+      }
+      else
+        genCodeLine ("      curTokenImage = im == null ? input_stream.getImage() : im;");
 
-      if (s_keepLineCol)
+      if (bLazyLineCol)
       {
-        genCodeLine ("      beginLine = input_stream.getBeginLine();");
-        genCodeLine ("      beginColumn = input_stream.getBeginColumn();");
-        genCodeLine ("      endLine = input_stream.getEndLine();");
-        genCodeLine ("      endColumn = input_stream.getEndColumn();");
+        genCodeLine ("      beginOffset = input_stream.getBeginOffset();");
+        genCodeLine ("      endOffset = input_stream.getEndOffset();");
       }
+      else
+        if (s_keepLineCol)
+        {
+          genCodeLine ("      beginLine = input_stream.getBeginLine();");
+          genCodeLine ("      beginColumn = input_stream.getBeginColumn();");
+          genCodeLine ("      endLine = input_stream.getEndLine();");
+          genCodeLine ("      endColumn = input_stream.getEndColumn();");
+        }
 
       genCodeLine ("   }");
     }
     else
     {
       genCodeLine ("   String im = jjstrLiteralImages[jjmatchedKind];");
-      genCodeLine ("   curTokenImage = im == null ? input_stream.getImage() : im;");
-      if (s_keepLineCol)
+      if (bLazyImage)
       {
-        genCodeLine ("   beginLine = input_stream.getBeginLine();");
-        genCodeLine ("   beginColumn = input_stream.getBeginColumn();");
-        genCodeLine ("   endLine = input_stream.getEndLine();");
-        genCodeLine ("   endColumn = input_stream.getEndColumn();");
+        genCodeLine ("   if (im == null)");
+        genCodeLine ("      input = input_stream.getInput();");
+        genCodeLine ("   curTokenImage = im == null && input == null ? input_stream.getImage() : im;");
       }
+      else
+        genCodeLine ("   curTokenImage = im == null ? input_stream.getImage() : im;");
+      if (bLazyLineCol)
+      {
+        genCodeLine ("   beginOffset = input_stream.getBeginOffset();");
+        genCodeLine ("   endOffset = input_stream.getEndOffset();");
+      }
+      else
+        if (s_keepLineCol)
+        {
+          genCodeLine ("   beginLine = input_stream.getBeginLine();");
+          genCodeLine ("   beginColumn = input_stream.getBeginColumn();");
+          genCodeLine ("   endLine = input_stream.getEndLine();");
+          genCodeLine ("   endColumn = input_stream.getEndColumn();");
+        }
     }
 
     if (Options.getTokenFactory ().length () > 0)
@@ -1002,14 +1047,40 @@ public class LexGenJava extends CodeGenerator
         genCodeLine ("   t.image = curTokenImage;");
       }
 
-    if (s_keepLineCol)
+    if (bLazyLineCol)
     {
       genCodeNewLine ();
-      genCodeLine ("   t.beginLine = beginLine;");
-      genCodeLine ("   t.endLine = endLine;");
-      genCodeLine ("   t.beginColumn = beginColumn;");
-      genCodeLine ("   t.endColumn = endColumn;");
+      genCodeLine ("   t.lineIndex = input_stream.getLineIndex();");
+      genCodeLine ("   t.beginOffset = beginOffset;");
+      genCodeLine ("   t.endOffset = endOffset;");
     }
+    else
+      if (s_keepLineCol)
+      {
+        genCodeNewLine ();
+        genCodeLine ("   t.beginLine = beginLine;");
+        genCodeLine ("   t.endLine = endLine;");
+        genCodeLine ("   t.beginColumn = beginColumn;");
+        genCodeLine ("   t.endColumn = endColumn;");
+      }
+
+    if (bLazyImage && bLazyLineCol)
+    {
+      // The offsets are already set
+      genCodeLine ("   if (input != null)");
+      genCodeLine ("      t.input = input;");
+    }
+    else
+      if (bLazyImage)
+      {
+        // The image is created from the input on demand
+        genCodeLine ("   if (input != null)");
+        genCodeLine ("   {");
+        genCodeLine ("      t.input = input;");
+        genCodeLine ("      t.beginOffset = input_stream.getBeginOffset();");
+        genCodeLine ("      t.endOffset = input_stream.getEndOffset();");
+        genCodeLine ("   }");
+      }
 
     genCodeNewLine ();
     genCodeLine ("   return t;");
@@ -1041,12 +1112,20 @@ public class LexGenJava extends CodeGenerator
     genCodeLine ("  EOFLoop:");
     genCodeLine ("  for (;;)");
     genCodeLine ("  {");
-    genCodeLine ("   try");
-    genCodeLine ("   {");
-    genCodeLine ("      curChar = input_stream.beginToken();");
-    genCodeLine ("   }");
-    genCodeLine ("   catch(final Exception e)");
-    genCodeLine ("   {");
+    if (Options.isEofSentinel ())
+    {
+      genCodeLine ("   if ((curChar = input_stream.beginToken()) < 0)");
+      genCodeLine ("   {");
+    }
+    else
+    {
+      genCodeLine ("   try");
+      genCodeLine ("   {");
+      genCodeLine ("      curChar = input_stream.beginToken();");
+      genCodeLine ("   }");
+      genCodeLine ("   catch(final Exception e)");
+      genCodeLine ("   {");
+    }
 
     if (Options.isDebugTokenManager ())
       genCodeLine ("      debugStream.println(\"Returning the <EOF> token.\\n\");");
@@ -1105,7 +1184,8 @@ public class LexGenJava extends CodeGenerator
       if (s_singlesToSkip[i].hasTransitions ())
       {
         // added the backup(0) to make JIT happy
-        genCodeLine (prefix + "try {");
+        if (!Options.isEofSentinel ())
+          genCodeLine (prefix + "try {");
         genCodeLine (prefix + "  input_stream.backup(0);");
         if (s_singlesToSkip[i].m_asciiMoves[0] != 0L && s_singlesToSkip[i].m_asciiMoves[1] != 0L)
         {
@@ -1156,15 +1236,24 @@ public class LexGenJava extends CodeGenerator
                        s_errorHandlingClass +
                        ".addEscapes(String.valueOf(curChar)) + \" (\" + (int)curChar + \")\");");
         }
-        genCodeLine (prefix + "      curChar = input_stream.beginToken();");
+        if (Options.isEofSentinel ())
+        {
+          genCodeLine (prefix + "      if ((curChar = input_stream.beginToken()) < 0)");
+          genCodeLine (prefix + "        continue EOFLoop;");
+        }
+        else
+          genCodeLine (prefix + "      curChar = input_stream.beginToken();");
 
         if (Options.isDebugTokenManager ())
           genCodeLine (prefix + "}");
 
-        genCodeLine (prefix + "}");
-        genCodeLine (prefix + "catch (final java.io.IOException e1) {");
-        genCodeLine (prefix + "  continue EOFLoop;");
-        genCodeLine (prefix + "}");
+        if (!Options.isEofSentinel ())
+        {
+          genCodeLine (prefix + "}");
+          genCodeLine (prefix + "catch (final java.io.IOException e1) {");
+          genCodeLine (prefix + "  continue EOFLoop;");
+          genCodeLine (prefix + "}");
+        }
       }
 
       if (s_initMatch[i] != Integer.MAX_VALUE && s_initMatch[i] != 0)
@@ -1378,8 +1467,13 @@ public class LexGenJava extends CodeGenerator
           genCodeLine (prefix + "      curPos = 0;");
           genCodeLine (prefix + "      jjmatchedKind = 0x" + Integer.toHexString (Integer.MAX_VALUE) + ";");
 
-          genCodeLine (prefix + "      try {");
-          genCodeLine (prefix + "         curChar = input_stream.readChar();");
+          if (Options.isEofSentinel ())
+            genCodeLine (prefix + "      if (jjReadChar()) {");
+          else
+          {
+            genCodeLine (prefix + "      try {");
+            genCodeLine (prefix + "         curChar = input_stream.readChar();");
+          }
 
           if (Options.isDebugTokenManager ())
             genCodeLine ("   debugStream.println(" +
@@ -1390,7 +1484,8 @@ public class LexGenJava extends CodeGenerator
                          "at line \" + input_stream.getEndLine() + \" column \" + input_stream.getEndColumn());");
           genCodeLine (prefix + "         continue;");
           genCodeLine (prefix + "      }");
-          genCodeLine (prefix + "      catch (final java.io.IOException e1) { }");
+          if (!Options.isEofSentinel ())
+            genCodeLine (prefix + "      catch (final java.io.IOException e1) { }");
         }
       }
 
@@ -1399,11 +1494,20 @@ public class LexGenJava extends CodeGenerator
       genCodeLine (prefix + "   int error_column = input_stream.getEndColumn();");
       genCodeLine (prefix + "   String error_after = null;");
       genCodeLine (prefix + "   " + eOutputLanguage.getTypeBoolean () + " EOFSeen = false;");
-      genCodeLine (prefix + "   try {");
-      genCodeLine (prefix + "     input_stream.readChar();");
-      genCodeLine (prefix + "     input_stream.backup(1);");
-      genCodeLine (prefix + "   }");
-      genCodeLine (prefix + "   catch (final java.io.IOException e1) {");
+      if (Options.isEofSentinel ())
+      {
+        genCodeLine (prefix + "   if (input_stream.readChar() >= 0)");
+        genCodeLine (prefix + "     input_stream.backup(1);");
+        genCodeLine (prefix + "   else {");
+      }
+      else
+      {
+        genCodeLine (prefix + "   try {");
+        genCodeLine (prefix + "     input_stream.readChar();");
+        genCodeLine (prefix + "     input_stream.backup(1);");
+        genCodeLine (prefix + "   }");
+        genCodeLine (prefix + "   catch (final java.io.IOException e1) {");
+      }
       genCodeLine (prefix + "      EOFSeen = true;");
       genCodeLine (prefix + "      error_after = curPos <= 1 ? \"\" : input_stream.getImage();");
       genCodeLine (prefix + "      if (curChar == '\\n' || curChar == '\\r') {");
@@ -1712,6 +1816,7 @@ public class LexGenJava extends CodeGenerator
     s_singlesToSkip = null;
     s_stateHasActions = null;
     s_stateSetSize = 0;
+    s_totalNumStates = 0;
     s_toMore = null;
     s_toSkip = null;
     s_toSpecial = null;
@@ -0,0 +1,445 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static com.helger.pgcc.parser.JavaCCGlobals.s_production_table;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Computes a static prediction for a syntactic lookahead with a small fixed
+ * amount. The scan of the phase 3 routines is executed on symbolic input: each
+ * time a token is compared that was not yet compared with the same kind, the
+ * scan is repeated once with the token being of that kind and once with the
+ * token being of any other kind. This results in a tree of switch statements
+ * over the kinds of the next tokens that gives exactly the same result as the
+ * scan, including the ordered choices and greedy loops that a FIRST set based
+ * prediction can't express.
+ */
+public final class LookaheadPrediction
+{
+  /** The maximum lookahead amount that is predicted statically */
+  public static final int MAX_AMOUNT = 3;
+  /** The maximum number of symbolic scans for a single prediction */
+  private static final int MAX_SCANS = 256;
+  /** The maximum number of steps of a single symbolic scan */
+  private static final int MAX_STEPS = 100000;
+  /** The maximum nesting of non-terminals of a single symbolic scan */
+  private static final int MAX_DEPTH = 1000;
+
+  private static enum EScan
+  {
+    MATCH,
+    FAIL,
+    /** The lookahead limit was reached */
+    DONE,
+    /** The kind of a token that is not yet known is needed */
+    NEED,
+    /** The result can't be determined statically */
+    ABORT
+  }
+
+  /**
+   * A node of the prediction. Either a result or a switch over the kind of the
+   * token at a position.
+   */
+  public static final class Node
+  {
+    private final boolean m_bResult;
+    private final int m_nPos;
+    private final Map <Integer, Node> m_aCases;
+    private Node m_aDefault;
+
+    private Node (final boolean bResult)
+    {
+      m_bResult = bResult;
+      m_nPos = 0;
+      m_aCases = null;
+    }
+
+    private Node (final int nPos)
+    {
+      m_bResult = false;
+      m_nPos = nPos;
+      m_aCases = new TreeMap <> ();
+    }
+
+    public boolean isLeaf ()
+    {
+      return m_aCases == null;
+    }
+
+    /**
+     * @return The result of the lookahead. Only for leafs.
+     */
+    public boolean getResult ()
+    {
+      return m_bResult;
+    }
+
+    /**
+     * @return The 1-based position of the token that is switched on. Only for
+     *         switches.
+     */
+    public int getPos ()
+    {
+      return m_nPos;
+    }
+
+    /**
+     * @return The nodes for the token kinds. Only for switches.
+     */
+    @Nonnull
+    public Map <Integer, Node> getCases ()
+    {
+      return m_aCases;
+    }
+
+    /**
+     * @return The node for all other token kinds. Only for switches.
+     */
+    @Nonnull
+    public Node getDefault ()
+    {
+      return m_aDefault;
+    }
+  }
+
+  /**
+   * What is known about the kind of the token at a position.
+   */
+  private static final class Input
+  {
+    /** The kind or -1 if only the excluded kinds are known */
+    private final int m_nKind;
+    private final Set <Integer> m_aExcluded;
+
+    private Input (final int nKind, final Set <Integer> aExcluded)
+    {
+      m_nKind = nKind;
+      m_aExcluded = aExcluded;
+    }
+  }
+
+  private final Expansion m_aExpansion;
+  private final int m_nAmount;
+  private int m_nScans;
+
+  // State of a single symbolic scan
+  private List <Input> m_aInput;
+  private int m_nScanPos;
+  private int m_nSteps;
+  private int m_nNeedPos;
+  private int m_nNeedKind;
+
+  private LookaheadPrediction (final Expansion aExpansion, final int nAmount)
+  {
+    m_aExpansion = aExpansion;
+    m_nAmount = nAmount;
+  }
+
+  private EScan _scanToken (final int nKind)
+  {
+    final int nPos = m_nScanPos + 1;
+    if (nPos > m_aInput.size ())
+    {
+      m_nNeedPos = nPos;
+      m_nNeedKind = nKind;
+      return EScan.NEED;
+    }
+
+    final Input aInput = m_aInput.get (nPos - 1);
+    if (aInput.m_nKind >= 0)
+    {
+      if (aInput.m_nKind != nKind)
+        return EScan.FAIL;
+    }
+    else
+    {
+      if (aInput.m_aExcluded.contains (Integer.valueOf (nKind)))
+        return EScan.FAIL;
+      m_nNeedPos = nPos;
+      m_nNeedKind = nKind;
+      return EScan.NEED;
+    }
+
+    // Same as "jj_la == 0 && jj_scanpos == jj_lastpos"
+    if (nPos == m_nAmount)
+      return EScan.DONE;
+    m_nScanPos = nPos;
+    return EScan.MATCH;
+  }
+
+  private EScan _scanLoop (final Expansion aNested, final int nDepth)
+  {
+    while (true)
+    {
+      final int nSavedPos = m_nScanPos;
+      final EScan eScan = _scan (aNested, nDepth);
+      if (eScan == EScan.FAIL)
+      {
+        m_nScanPos = nSavedPos;
+        return EScan.MATCH;
+      }
+      if (eScan != EScan.MATCH)
+        return eScan;
+      if (m_nScanPos == nSavedPos)
+      {
+        // Would loop forever
+        return EScan.ABORT;
+      }
+    }
+  }
+
+  /**
+   * Scan like the phase 3 routine created by
+   * {@link ParseEngine#buildPhase3Routine(Phase3Data, boolean)}.
+   */
+  private EScan _scan (final Expansion e, final int nDepth)
+  {
+    if (++m_nSteps > MAX_STEPS || nDepth > MAX_DEPTH)
+      return EScan.ABORT;
+
+    if (e instanceof AbstractExpRegularExpression)
+      return _scanToken (((AbstractExpRegularExpression) e).m_ordinal);
+
+    if (e instanceof ExpNonTerminal)
+    {
+      final NormalProduction ntprod = s_production_table.get (((ExpNonTerminal) e).getName ());
+      if (ntprod instanceof AbstractCodeProduction)
+        return EScan.ABORT;
+      return _scan (ntprod.getExpansion (), nDepth + 1);
+    }
+
+    if (e instanceof ExpChoice)
+    {
+      final int nSavedPos = m_nScanPos;
+      for (final Expansion aChoice : ((ExpChoice) e).getChoices ())
+      {
+        final ExpLookahead la = (ExpLookahead) ((ExpSequence) aChoice).m_units.get (0);
+        if (la.getActionTokens ().size () != 0)
+        {
+          // Semantic lookahead is evaluated at runtime
+          return EScan.ABORT;
+        }
+        final EScan eScan = _scan (aChoice, nDepth);
+        if (eScan != EScan.FAIL)
+          return eScan;
+        m_nScanPos = nSavedPos;
+      }
+      return EScan.FAIL;
+    }
+
+    if (e instanceof ExpSequence)
+    {
+      // The first unit is the lookahead
+      final List <Expansion> aUnits = ((ExpSequence) e).m_units;
+      for (int i = 1; i < aUnits.size (); i++)
+      {
+        final EScan eScan = _scan (aUnits.get (i), nDepth);
+        if (eScan != EScan.MATCH)
+          return eScan;
+      }
+      return EScan.MATCH;
+    }
+
+    if (e instanceof ExpTryBlock)
+      return _scan (((ExpTryBlock) e).m_exp, nDepth);
+
+    if (e instanceof ExpOneOrMore)
+    {
+      final Expansion aNested = ((ExpOneOrMore) e).m_expansion;
+      final EScan eScan = _scan (aNested, nDepth);
+      if (eScan != EScan.MATCH)
+        return eScan;
+      return _scanLoop (aNested, nDepth);
+    }
+
+    if (e instanceof ExpZeroOrMore)
+      return _scanLoop (((ExpZeroOrMore) e).m_expansion, nDepth);
+
+    if (e instanceof ExpZeroOrOne)
+    {
+      final int nSavedPos = m_nScanPos;
+      final EScan eScan = _scan (((ExpZeroOrOne) e).m_expansion, nDepth);
+      if (eScan == EScan.FAIL)
+      {
+        m_nScanPos = nSavedPos;
+        return EScan.MATCH;
+      }
+      return eScan;
+    }
+
+    if (e instanceof ExpLookahead || e instanceof ExpAction)
+    {
+      // Ignored by the phase 3 routines
+      return EScan.MATCH;
+    }
+    return EScan.ABORT;
+  }
+
+  @Nullable
+  private Node _build (final List <Input> aInput)
+  {
+    if (++m_nScans > MAX_SCANS)
+      return null;
+
+    m_aInput = aInput;
+    m_nScanPos = 0;
+    m_nSteps = 0;
+    final EScan eScan = _scan (m_aExpansion, 0);
+    if (eScan == EScan.ABORT)
+      return null;
+    if (eScan != EScan.NEED)
+      return new Node (eScan != EScan.FAIL);
+
+    final int nPos = m_nNeedPos;
+    final Integer aKind = Integer.valueOf (m_nNeedKind);
+    final Set <Integer> aExcluded = new HashSet <> ();
+    if (nPos <= aInput.size ())
+      aExcluded.addAll (aInput.get (nPos - 1).m_aExcluded);
+    aExcluded.add (aKind);
+
+    final List <Input> aMatch = new ArrayList <> (aInput.subList (0, nPos - 1));
+    aMatch.add (new Input (m_nNeedKind, null));
+    final Node aMatchNode = _build (aMatch);
+    if (aMatchNode == null)
+      return null;
+
+    // Only the same position can be compared again after a mismatch
+    final List <Input> aOther = new ArrayList <> (aInput.subList (0, nPos - 1));
+    aOther.add (new Input (-1, aExcluded));
+    final Node aOtherNode = _build (aOther);
+    if (aOtherNode == null)
+      return null;
+
+    Node ret;
+    if (!aOtherNode.isLeaf ())
+    {
+      if (aOtherNode.m_nPos != nPos)
+        return null;
+      ret = aOtherNode;
+    }
+    else
+    {
+      ret = new Node (nPos);
+      ret.m_aDefault = aOtherNode;
+    }
+    ret.m_aCases.put (aKind, aMatchNode);
+    return ret;
+  }
+
+  private static boolean _dependsOnTokenKindsOnly (final Expansion e, final Set <NormalProduction> aVisited)
+  {
+    if (e instanceof ExpNonTerminal)
+    {
+      final NormalProduction ntprod = s_production_table.get (((ExpNonTerminal) e).getName ());
+      if (ntprod instanceof AbstractCodeProduction)
+        return false;
+      return !aVisited.add (ntprod) || _dependsOnTokenKindsOnly (ntprod.getExpansion (), aVisited);
+    }
+
+    if (e instanceof ExpChoice)
+    {
+      for (final Expansion aChoice : ((ExpChoice) e).getChoices ())
+      {
+        final ExpLookahead la = (ExpLookahead) ((ExpSequence) aChoice).m_units.get (0);
+        if (la.getActionTokens ().size () != 0 || !_dependsOnTokenKindsOnly (aChoice, aVisited))
+          return false;
+      }
+      return true;
+    }
+
+    if (e instanceof ExpSequence)
+    {
+      final List <Expansion> aUnits = ((ExpSequence) e).m_units;
+      for (int i = 1; i < aUnits.size (); i++)
+        if (!_dependsOnTokenKindsOnly (aUnits.get (i), aVisited))
+          return false;
+      return true;
+    }
+
+    if (e instanceof ExpTryBlock)
+      return _dependsOnTokenKindsOnly (((ExpTryBlock) e).m_exp, aVisited);
+    if (e instanceof ExpOneOrMore)
+      return _dependsOnTokenKindsOnly (((ExpOneOrMore) e).m_expansion, aVisited);
+    if (e instanceof ExpZeroOrMore)
+      return _dependsOnTokenKindsOnly (((ExpZeroOrMore) e).m_expansion, aVisited);
+    if (e instanceof ExpZeroOrOne)
+      return _dependsOnTokenKindsOnly (((ExpZeroOrOne) e).m_expansion, aVisited);
+    return true;
+  }
+
+  /**
+   * Check if the result of the scan of a syntactic lookahead only depends on
+   * the kinds of the scanned tokens, so that it can be cached per token kind
+   * sequence. This is the case if it contains no semantic lookahead and no
+   * JAVACODE productions.
+   *
+   * @param aExpansion
+   *        The lookahead expansion.
+   * @return <code>true</code> if the result only depends on the token kinds.
+   */
+  public static boolean dependsOnTokenKindsOnly (@Nonnull final Expansion aExpansion)
+  {
+    return _dependsOnTokenKindsOnly (aExpansion, new HashSet <> ());
+  }
+
+  /**
+   * Compute the static prediction of a syntactic lookahead.
+   *
+   * @param aExpansion
+   *        The lookahead expansion.
+   * @param nAmount
+   *        The lookahead amount. Must be at most {@link #MAX_AMOUNT}.
+   * @return <code>null</code> if the lookahead can't be predicted statically,
+   *         e.g. because it contains semantic lookahead or JAVACODE
+   *         productions.
+   */
+  @Nullable
+  public static Node createPrediction (@Nonnull final Expansion aExpansion, final int nAmount)
+  {
+    if (nAmount < 1 || nAmount > MAX_AMOUNT)
+      return null;
+    return new LookaheadPrediction (aExpansion, nAmount)._build (new ArrayList <> ());
+  }
+}
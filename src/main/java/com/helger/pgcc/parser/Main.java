@@ -296,7 +296,9 @@ public class Main
       JavaCCGlobals.s_origFileName = JavaCCGlobals.s_fileName;
       JavaCCGlobals.s_jjtreeGenerated = JavaCCGlobals.isGeneratedBy ("JJTree", args[args.length - 1]);
       JavaCCGlobals.s_toolNames = JavaCCGlobals.getToolNames (args[args.length - 1]);
+      final Token aFirstToken = parser.token;
       parser.javacc_input ();
+      Options.normalizeTokenFieldAccess (aFirstToken, t -> t.next, t -> t.image);
 
       // 2012/05/02 - Moved this here as cannot evaluate output language
       // until the cc file has been processed. Was previously setting the 'lg'
@@ -412,5 +414,6 @@ public class Main
     com.helger.pgcc.parser.Semanticize.reInit ();
     com.helger.pgcc.output.java.OtherFilesGenJava.reInit ();
     com.helger.pgcc.parser.LexGenJava.reInit ();
+    com.helger.pgcc.parser.ParseGenJava.reInit ();
   }
 }
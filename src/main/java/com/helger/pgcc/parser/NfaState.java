@@ -1002,12 +1002,7 @@ public class NfaState
             switch (eOutputLanguage)
             {
               case JAVA:
-                codeGenerator.genCodeLine ("static final " +
-                                           eOutputLanguage.getTypeLong () +
-                                           "[] jjbitVec" +
-                                           s_lohiByteCnt +
-                                           " = " +
-                                           tmp);
+                _dumpJavaBitVector (codeGenerator, s_lohiByteCnt, common, tmp);
                 break;
               case CPP:
                 codeGenerator.switchToStaticsFile ();
@@ -1046,12 +1041,7 @@ public class NfaState
             switch (eOutputLanguage)
             {
               case JAVA:
-                codeGenerator.genCodeLine ("static final " +
-                                           eOutputLanguage.getTypeLong () +
-                                           "[] jjbitVec" +
-                                           s_lohiByteCnt +
-                                           " = " +
-                                           tmp);
+                _dumpJavaBitVector (codeGenerator, s_lohiByteCnt, loBytes[i], tmp);
                 break;
               case CPP:
                 codeGenerator.switchToStaticsFile ();
@@ -1111,12 +1101,7 @@ public class NfaState
             switch (eOutputLanguage)
             {
               case JAVA:
-                codeGenerator.genCodeLine ("static final " +
-                                           eOutputLanguage.getTypeLong () +
-                                           "[] jjbitVec" +
-                                           s_lohiByteCnt +
-                                           " = " +
-                                           tmp);
+                _dumpJavaBitVector (codeGenerator, s_lohiByteCnt, loBytes[i], tmp);
                 break;
               case CPP:
                 codeGenerator.switchToStaticsFile ();
@@ -1340,10 +1325,41 @@ public class NfaState
     return ret;
   }
 
+  private static void _dumpJavaBitVector (final CodeGenerator codeGenerator,
+                                          final int nIndex,
+                                          final long [] aBits,
+                                          final String sInitializer)
+  {
+    if (Options.isEncodedTables ())
+    {
+      codeGenerator.genCode ("static final long[] jjbitVec" + nIndex + " = jjDecodeLongs(");
+      JavaTableEncoder.dumpStringArray (codeGenerator, JavaTableEncoder.encodeLongs (aBits));
+      codeGenerator.genCodeLine (");");
+    }
+    else
+      codeGenerator.genCodeLine ("static final long[] jjbitVec" + nIndex + " = " + sInitializer);
+  }
+
   public static void dumpStateSets (final CodeGenerator codeGenerator)
   {
     final EOutputLanguage eOutputLanguage = codeGenerator.getOutputLanguage ();
 
+    if (eOutputLanguage == EOutputLanguage.JAVA && Options.isEncodedTables ())
+    {
+      int nSize = 0;
+      for (final int [] set : s_orderedStateSet)
+        nSize += set.length;
+      final int [] aStates = new int [Math.max (nSize, 1)];
+      int cnt = 0;
+      for (final int [] set : s_orderedStateSet)
+        for (final int aElement : set)
+          aStates[cnt++] = aElement;
+      codeGenerator.genCode ("static final int[] jjnextStates = jjDecodeInts(" + aStates.length + ", ");
+      JavaTableEncoder.dumpStringArray (codeGenerator, JavaTableEncoder.encodeInts (aStates));
+      codeGenerator.genCodeLine (");");
+      return;
+    }
+
     switch (eOutputLanguage)
     {
       case JAVA:
@@ -3138,9 +3154,14 @@ public class NfaState
       {
         case JAVA:
           codeGenerator.genCodeLine ("   input_stream.backup(seenUpto = curPos + 1);");
-          codeGenerator.genCodeLine ("   try { curChar = input_stream.readChar(); }");
-          // TODO do not throw error
-          codeGenerator.genCodeLine ("   catch(java.io.IOException e) { throw new Error(\"Internal Error\"); }");
+          if (Options.isEofSentinel ())
+            codeGenerator.genCodeLine ("   curChar = input_stream.readChar();");
+          else
+          {
+            codeGenerator.genCodeLine ("   try { curChar = input_stream.readChar(); }");
+            // TODO do not throw error
+            codeGenerator.genCodeLine ("   catch(java.io.IOException e) { throw new Error(\"Internal Error\"); }");
+          }
           break;
         case CPP:
           codeGenerator.genCodeLine ("   input_stream->backup(seenUpto = curPos + 1);");
@@ -3203,6 +3224,10 @@ public class NfaState
     codeGenerator.genCodeLine ("   {");
     codeGenerator.genCodeLine ("      if (++jjround == 0x" + Integer.toHexString (Integer.MAX_VALUE) + ")");
     codeGenerator.genCodeLine ("         ReInitRounds();");
+    // Java methods must stay small enough for the JIT compiler
+    final boolean bSplit = eOutputLanguage.isJava ();
+    final StringBuilder aPrevBuffer = bSplit ? codeGenerator.beginCapture () : null;
+
     codeGenerator.genCodeLine ("      if (curChar < 64)");
     codeGenerator.genCodeLine ("      {");
 
@@ -3225,6 +3250,10 @@ public class NfaState
 
     codeGenerator.genCodeLine ("      }");
 
+    final List <String> aHelpers = new ArrayList <> ();
+    if (bSplit)
+      _dumpSplitMoves (codeGenerator, codeGenerator.endCapture (aPrevBuffer), aHelpers);
+
     codeGenerator.genCodeLine ("      if (kind != 0x" + Integer.toHexString (Integer.MAX_VALUE) + ")");
     codeGenerator.genCodeLine ("      {");
     codeGenerator.genCodeLine ("         jjmatchedKind = kind;");
@@ -3307,6 +3336,14 @@ public class NfaState
     switch (eOutputLanguage)
     {
       case JAVA:
+        if (Options.isEofSentinel ())
+        {
+          if (LexGenJava.s_mixed[LexGenJava.s_lexStateIndex])
+            codeGenerator.genCodeLine ("      if (!jjReadChar()) { break; }");
+          else
+            codeGenerator.genCodeLine ("      if (!jjReadChar()) { return curPos; }");
+          break;
+        }
         codeGenerator.genCodeLine ("      try { curChar = input_stream.readChar(); }");
         if (LexGenJava.s_mixed[LexGenJava.s_lexStateIndex])
           codeGenerator.genCodeLine ("      catch(java.io.IOException e) { break; }");
@@ -3372,8 +3409,13 @@ public class NfaState
       {
         case JAVA:
           codeGenerator.genCodeLine ("      for (i = toRet - Math.min(curPos, seenUpto); i-- > 0; )");
-          codeGenerator.genCodeLine ("         try { curChar = input_stream.readChar(); }");
-          codeGenerator.genCodeLine ("         catch(java.io.IOException e) { throw new Error(\"Internal Error : Please send a bug report.\"); }");
+          if (Options.isEofSentinel ())
+            codeGenerator.genCodeLine ("         curChar = input_stream.readChar();");
+          else
+          {
+            codeGenerator.genCodeLine ("         try { curChar = input_stream.readChar(); }");
+            codeGenerator.genCodeLine ("         catch(java.io.IOException e) { throw new Error(\"Internal Error : Please send a bug report.\"); }");
+          }
           break;
         case CPP:
           codeGenerator.genCodeLine ("      for (i = toRet - MIN(curPos, seenUpto); i-- > 0; )");
@@ -3396,9 +3438,133 @@ public class NfaState
     }
 
     codeGenerator.genCodeLine ("}");
+
+    for (final String sHelper : aHelpers)
+    {
+      codeGenerator.genCodeNewLine ();
+      codeGenerator.genCode (sHelper);
+    }
     s_allStates.clear ();
   }
 
+  /**
+   * Emit the switch statements of jjMoveNfa. If they are too big for a method
+   * that the JIT compiler still compiles, the arms that do not fit are moved
+   * into helper methods. They get the current state, the current kind and the
+   * locals declared before the switch and return the new kind.
+   *
+   * @param codeGenerator
+   *        The code generator to use
+   * @param sMoves
+   *        The code of the switch statements
+   * @param aHelpers
+   *        The list to add the code of the helper methods to. They must be
+   *        emitted after jjMoveNfa.
+   */
+  private static void _dumpSplitMoves (final CodeGenerator codeGenerator,
+                                       final String sMoves,
+                                       final List <String> aHelpers)
+  {
+    // Leave room for the rest of jjMoveNfa
+    final int nMaxSize = JavaMethodSplitter.MAX_METHOD_SIZE - 1000;
+    final int nSize = JavaMethodSplitter.estimateSize (sMoves);
+    if (nSize <= nMaxSize || !Options.isSplitHugeMethods ())
+    {
+      codeGenerator.genCode (sMoves);
+      return;
+    }
+
+    final String sMethodName = "jjMoveNfa" + LexGenJava.s_lexStateSuffix;
+    final List <String> aLines = JavaMethodSplitter.getLines (sMoves);
+    final StringBuilder aParams = new StringBuilder ();
+    final StringBuilder aArgs = new StringBuilder ();
+    for (int i = 0; i < aLines.size (); i++)
+    {
+      final String sLine = aLines.get (i);
+      codeGenerator.genCodeLine (sLine);
+
+      if (sLine.equals ("      {"))
+      {
+        // Start of a new block
+        aParams.setLength (0);
+        aArgs.setLength (0);
+      }
+      else
+        if (sLine.matches ("         (int|long) \\w+ = .*;"))
+        {
+          // Local variable used in the arms
+          final String [] aParts = sLine.trim ().split (" ");
+          aParams.append (", ").append (aParts[0]).append (' ').append (aParts[1]);
+          aArgs.append (", ").append (aParts[1]);
+        }
+        else
+          if (sLine.equals ("            switch(jjstateSet[--i])"))
+          {
+            // Line with the opening brace
+            codeGenerator.genCodeLine (aLines.get (++i));
+
+            int nDefault = i + 1;
+            while (!aLines.get (nDefault).startsWith ("               default :"))
+              nDefault++;
+
+            final List <String> aCases = aLines.subList (i + 1, nDefault);
+            final int nCasesSize = JavaMethodSplitter.estimateSize (String.join ("\n", aCases));
+            final List <List <String>> aChunks = JavaMethodSplitter.splitCases (aCases,
+                                                                                "               case ",
+                                                                                x -> x.equals ("                  break;"),
+                                                                                (int) ((long) nMaxSize *
+                                                                                       nCasesSize /
+                                                                                       nSize),
+                                                                                JavaMethodSplitter.MAX_METHOD_SIZE);
+            final String sDefault = aLines.get (nDefault);
+            for (int nChunk = 0; nChunk < aChunks.size (); nChunk++)
+            {
+              final CodeGenerator aTarget = nChunk == 0 ? codeGenerator : new CodeGenerator ();
+              if (nChunk > 0)
+              {
+                aTarget.genCodeLine ("private int " +
+                                     sMethodName +
+                                     "_" +
+                                     (aHelpers.size () + 1) +
+                                     "(int state, int kind" +
+                                     aParams +
+                                     ")");
+                aTarget.genCodeLine ("{");
+                aTarget.genCodeLine ("            switch(state)");
+                aTarget.genCodeLine ("            {");
+              }
+              for (final String sCase : aChunks.get (nChunk))
+                aTarget.genCodeLine (sCase);
+              if (nChunk < aChunks.size () - 1)
+              {
+                aTarget.genCodeLine ("               default : kind = " +
+                                     sMethodName +
+                                     "_" +
+                                     (aHelpers.size () + (nChunk == 0 ? 1 : 2)) +
+                                     "(" +
+                                     (nChunk == 0 ? "jjstateSet[i]" : "state") +
+                                     ", kind" +
+                                     aArgs +
+                                     "); break;");
+              }
+              else
+                aTarget.genCodeLine (sDefault);
+              if (nChunk > 0)
+              {
+                aTarget.genCodeLine ("            }");
+                aTarget.genCodeLine ("            return kind;");
+                aTarget.genCodeLine ("}");
+                aHelpers.add (aTarget.m_outputBuffer.toString ());
+              }
+            }
+            i = nDefault;
+          }
+    }
+
+    if (!aHelpers.isEmpty ())
+      JavaMethodSplitter.report (LexGenJava.s_tokMgrClassName + "." + sMethodName, 1 + aHelpers.size (), nSize);
+  }
+
   public static void dumpStatesForStateCPP (final CodeGenerator codeGenerator)
   {
     if (s_statesForState == null)
@@ -3632,6 +3798,10 @@ public class NfaState
     s_jjCheckNAddStatesDualNeeded = false;
     s_kinds = null;
     s_statesForState = null;
+    s_initialStates.clear ();
+    s_statesForLexicalState.clear ();
+    s_nfaStateOffset.clear ();
+    s_matchAnyChar.clear ();
   }
 
   private static final Map <Integer, NfaState> s_initialStates = new HashMap <> ();
@@ -3657,6 +3827,9 @@ public class NfaState
         continue;
       done.add (tmp.m_stateName);
       cleanStates.add (tmp);
+      // The dummy state for composite states is named but not counted
+      if (tmp.m_stateName >= s_generatedStates)
+        s_generatedStates = tmp.m_stateName + 1;
       if (tmp.m_stateName == startStateName)
       {
         startState = tmp;
@@ -3680,6 +3853,8 @@ public class NfaState
   {
     NfaState [] cleanStates;
     final List <NfaState> cleanStateList = new ArrayList <> ();
+    // The composite states still use the names within their lexical state
+    final List <Integer> cleanStateOffsets = new ArrayList <> ();
     for (final int l : s_statesForLexicalState.keySet ())
     {
       final int offset = s_nfaStateOffset.get (l);
@@ -3692,10 +3867,13 @@ public class NfaState
         states.get (i).m_stateName += offset;
       }
       cleanStateList.addAll (states);
+      for (int i = 0; i < states.size (); i++)
+        cleanStateOffsets.add (Integer.valueOf (offset));
     }
     cleanStates = new NfaState [cleanStateList.size ()];
-    for (final NfaState s : cleanStateList)
+    for (int n = 0; n < cleanStateList.size (); n++)
     {
+      final NfaState s = cleanStateList.get (n);
       assert (cleanStates[s.m_stateName] == null);
       cleanStates[s.m_stateName] = s;
       final Set <Character> chars = new TreeSet <> ();
@@ -3718,7 +3896,7 @@ public class NfaState
       if (s.m_isComposite)
       {
         for (final int c : s.m_compositeStates)
-          composite.add (c);
+          composite.add (c + cleanStateOffsets.get (n).intValue ());
       }
       tokenizerData.addNfaState (s.m_stateName, chars, nextStates, composite, s.m_kindToPrint);
     }
@@ -67,6 +67,7 @@ import java.io.File;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -76,6 +77,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -152,6 +155,20 @@ public class Options
   public static final String USEROPTION__TOKEN_FACTORY = "TOKEN_FACTORY";
   public static final String USEROPTION__TOKEN_EXTENDS = "TOKEN_EXTENDS";
   public static final String USEROPTION__DEPTH_LIMIT = "DEPTH_LIMIT";
+  public static final String USEROPTION__EOF_SENTINEL = "EOF_SENTINEL";
+  public static final String USEROPTION__LAZY_TOKEN_IMAGE = "LAZY_TOKEN_IMAGE";
+  public static final String USEROPTION__LAZY_LINE_COLUMN = "LAZY_LINE_COLUMN";
+  public static final String USEROPTION__SPLIT_HUGE_METHODS = "SPLIT_HUGE_METHODS";
+  public static final String USEROPTION__ENCODED_TABLES = "ENCODED_TABLES";
+  public static final String USEROPTION__MEMOIZE_LOOKAHEAD = "MEMOIZE_LOOKAHEAD";
+  public static final String USEROPTION__STATIC_LOOKAHEAD = "STATIC_LOOKAHEAD";
+  public static final String USEROPTION__ADAPTIVE_LOOKAHEAD = "ADAPTIVE_LOOKAHEAD";
+  public static final String USEROPTION__DEFERRED_ERROR_REPORTING = "DEFERRED_ERROR_REPORTING";
+  public static final String USEROPTION__TOKEN_WINDOW = "TOKEN_WINDOW";
+  public static final String USEROPTION__PARSER_POOL = "PARSER_POOL";
+  public static final String USEROPTION__BATCH_PARSER = "BATCH_PARSER";
+  public static final String USEROPTION__TAIL_RECURSION_LOOPS = "TAIL_RECURSION_LOOPS";
+  public static final String USEROPTION__INLINE_PRODUCTIONS = "INLINE_PRODUCTIONS";
 
   public static final String USEROPTION__CPP_NAMESPACE = "NAMESPACE";
   public static final String USEROPTION__CPP_TOKEN_INCLUDES = "TOKEN_INCLUDES";
@@ -216,6 +233,20 @@ public class Options
     temp.add (new OptionInfo (USEROPTION__COMMON_TOKEN_ACTION, EOptionType.BOOLEAN, Boolean.FALSE));
     temp.add (new OptionInfo (USEROPTION__CACHE_TOKENS, EOptionType.BOOLEAN, Boolean.FALSE));
     temp.add (new OptionInfo (USEROPTION__KEEP_LINE_COLUMN, EOptionType.BOOLEAN, Boolean.TRUE));
+    temp.add (new OptionInfo (USEROPTION__EOF_SENTINEL, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__LAZY_TOKEN_IMAGE, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__LAZY_LINE_COLUMN, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__SPLIT_HUGE_METHODS, EOptionType.BOOLEAN, Boolean.TRUE));
+    temp.add (new OptionInfo (USEROPTION__ENCODED_TABLES, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__MEMOIZE_LOOKAHEAD, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__STATIC_LOOKAHEAD, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__ADAPTIVE_LOOKAHEAD, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__DEFERRED_ERROR_REPORTING, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__TOKEN_WINDOW, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__PARSER_POOL, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__BATCH_PARSER, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__TAIL_RECURSION_LOOPS, EOptionType.BOOLEAN, Boolean.FALSE));
+    temp.add (new OptionInfo (USEROPTION__INLINE_PRODUCTIONS, EOptionType.INTEGER, Integer.valueOf (0)));
 
     temp.add (new OptionInfo (USEROPTION__GENERATE_BOILERPLATE, EOptionType.BOOLEAN, Boolean.TRUE));
 
@@ -667,6 +698,103 @@ public class Options
       }
       s_optionValues.put (USEROPTION__DEBUG_PARSER, Boolean.TRUE);
     }
+    if (isLazyTokenImage () && isJavaUnicodeEscape ())
+    {
+      // Offsets in the escaped input don't match the offsets in the input
+      JavaCCErrors.warning ("Option LAZY_TOKEN_IMAGE is not supported together with option JAVA_UNICODE_ESCAPE and will be ignored.");
+      s_optionValues.put (USEROPTION__LAZY_TOKEN_IMAGE, Boolean.FALSE);
+    }
+    if (isLazyLineColumn ())
+    {
+      if (!isKeepLineColumn ())
+      {
+        JavaCCErrors.warning ("Option LAZY_LINE_COLUMN requires option KEEP_LINE_COLUMN and will be ignored.");
+        s_optionValues.put (USEROPTION__LAZY_LINE_COLUMN, Boolean.FALSE);
+      }
+      else
+        if (isJavaUnicodeEscape ())
+        {
+          // JavaCharStream unescapes each character on its own
+          JavaCCErrors.warning ("Option LAZY_LINE_COLUMN is not supported together with option JAVA_UNICODE_ESCAPE and will be ignored.");
+          s_optionValues.put (USEROPTION__LAZY_LINE_COLUMN, Boolean.FALSE);
+        }
+    }
+    if (isBatchParser ())
+    {
+      if (isUserTokenManager () ||
+          isJavaUserCharStream () ||
+          JAVA_TEMPLATE_TYPE_MODERN.equals (getJavaTemplateType ()) ||
+          !isGenerateJavaBoilerplateCode ())
+      {
+        // The batch parser calls the generated ReInit(CharSequence)
+        JavaCCErrors.warning ("Option BATCH_PARSER requires the classic template type with the generated char stream and token manager and will be ignored.");
+        s_optionValues.put (USEROPTION__BATCH_PARSER, Boolean.FALSE);
+      }
+      else
+        if (getJdkVersion ().isOlderThan (EJDKVersion.JDK_1_8))
+        {
+          JavaCCErrors.warning ("Option BATCH_PARSER requires JDK_VERSION 1.8 or later and will be ignored.");
+          s_optionValues.put (USEROPTION__BATCH_PARSER, Boolean.FALSE);
+        }
+    }
+  }
+
+  /** The fields of the Token class that LAZY_LINE_COLUMN removes */
+  private static final Set <String> s_lineColumnFields = new HashSet <> (Arrays.asList ("beginLine",
+                                                                                       "beginColumn",
+                                                                                       "endLine",
+                                                                                       "endColumn"));
+
+  /**
+   * The option LAZY_LINE_COLUMN removes the public line and column fields of
+   * the generated Token class and with LAZY_TOKEN_IMAGE the field image may be
+   * <code>null</code>. Ignore these options, if the Java code of the grammar
+   * file accesses the fields, so that the generated code still compiles and
+   * reading the image is safe. Assigning the image is fine. Both JavaCC and
+   * JJTree call this after the grammar file was read.
+   *
+   * @param aFirstToken
+   *        The first token of the grammar file. May be <code>null</code>.
+   * @param aNext
+   *        Function to get the next token of a token.
+   * @param aImage
+   *        Function to get the image of a token.
+   * @param <T>
+   *        The token class of the grammar file parser
+   */
+  public static <T> void normalizeTokenFieldAccess (@Nullable final T aFirstToken,
+                                                    @Nonnull final UnaryOperator <T> aNext,
+                                                    @Nonnull final Function <T, String> aImage)
+  {
+    T aPrev = null;
+    for (T t = aFirstToken; t != null && (isLazyLineColumn () || isLazyTokenImage ()); t = aNext.apply (t))
+    {
+      if (aPrev != null && ".".equals (aImage.apply (aPrev)))
+      {
+        final String sField = aImage.apply (t);
+        if (isLazyLineColumn () && s_lineColumnFields.contains (sField))
+        {
+          JavaCCErrors.warning (t,
+                                "Option LAZY_LINE_COLUMN is not supported if the grammar accesses the token field " +
+                                   sField +
+                                   " and will be ignored. Use get" +
+                                   Character.toUpperCase (sField.charAt (0)) +
+                                   sField.substring (1) +
+                                   "() instead.");
+          s_optionValues.put (USEROPTION__LAZY_LINE_COLUMN, Boolean.FALSE);
+        }
+        else
+          if (isLazyTokenImage () &&
+              sField.equals ("image") &&
+              (aNext.apply (t) == null || !"=".equals (aImage.apply (aNext.apply (t)))))
+          {
+            JavaCCErrors.warning (t,
+                                  "Option LAZY_TOKEN_IMAGE is not supported if the grammar reads the token field image and will be ignored. Use getImage() or toString() instead.");
+            s_optionValues.put (USEROPTION__LAZY_TOKEN_IMAGE, Boolean.FALSE);
+          }
+      }
+      aPrev = t;
+    }
   }
 
   /**
@@ -889,6 +1017,181 @@ public class Options
     return booleanValue (USEROPTION__KEEP_LINE_COLUMN);
   }
 
+  /**
+   * Find the EOF sentinel value. If <code>true</code> the char streams return
+   * -1 at the end of input instead of throwing an IOException.
+   *
+   * @return The requested EOF sentinel value.
+   */
+  public static boolean isEofSentinel ()
+  {
+    return booleanValue (USEROPTION__EOF_SENTINEL);
+  }
+
+  /**
+   * Find the lazy token image value. If <code>true</code> the tokens only
+   * reference the input and create the image on demand.
+   *
+   * @return The requested lazy token image value.
+   */
+  public static boolean isLazyTokenImage ()
+  {
+    return booleanValue (USEROPTION__LAZY_TOKEN_IMAGE);
+  }
+
+  /**
+   * Find the lazy line column value. If <code>true</code> the tokens only
+   * store offsets and resolve line and column numbers on demand.
+   *
+   * @return The requested lazy line column value.
+   */
+  public static boolean isLazyLineColumn ()
+  {
+    return booleanValue (USEROPTION__LAZY_LINE_COLUMN);
+  }
+
+  /**
+   * Find the split huge methods value. If <code>true</code> the generated Java
+   * token managers move the switch arms of methods that are too big for the
+   * JIT compiler into helper methods.
+   *
+   * @return The requested split huge methods value.
+   */
+  public static boolean isSplitHugeMethods ()
+  {
+    return booleanValue (USEROPTION__SPLIT_HUGE_METHODS);
+  }
+
+  /**
+   * Find the encoded tables value. If <code>true</code> the lexer and parser
+   * tables are emitted as encoded strings that are decoded at runtime instead
+   * of array initializers.
+   *
+   * @return The requested encoded tables value.
+   */
+  public static boolean isEncodedTables ()
+  {
+    return booleanValue (USEROPTION__ENCODED_TABLES);
+  }
+
+  /**
+   * Find the memoize lookahead value. If <code>true</code> the results of the
+   * syntactic lookahead of the productions are cached per token, so that
+   * nested unlimited lookaheads don't scan the same input again. Semantic
+   * lookahead within the lookahead must not depend on the parser state.
+   *
+   * @return The requested memoize lookahead value.
+   */
+  public static boolean isMemoizeLookahead ()
+  {
+    return booleanValue (USEROPTION__MEMOIZE_LOOKAHEAD);
+  }
+
+  /**
+   * Find the static lookahead value. If <code>true</code> syntactic lookaheads
+   * with a fixed amount of at most 3 tokens are predicted with switch
+   * statements over the kinds of the next tokens instead of scanning the
+   * lookahead expansion.
+   *
+   * @return The requested static lookahead value.
+   */
+  public static boolean isStaticLookahead ()
+  {
+    return booleanValue (USEROPTION__STATIC_LOOKAHEAD);
+  }
+
+  /**
+   * Find the adaptive lookahead value. If <code>true</code> the results of
+   * syntactic lookaheads are recorded per sequence of scanned token kinds in a
+   * DFA that is shared by all instances of the parser, so that later lookaheads
+   * starting with a known token kind sequence don't need to scan.
+   *
+   * @return The requested adaptive lookahead value.
+   */
+  public static boolean isAdaptiveLookahead ()
+  {
+    return booleanValue (USEROPTION__ADAPTIVE_LOOKAHEAD);
+  }
+
+  /**
+   * Find the deferred error reporting value. If <code>true</code> (and error
+   * reporting is enabled) the syntactic lookaheads are only logged while
+   * parsing and the log is evaluated when a parse error is reported. The
+   * messages are the same, but there are no per lookahead lists that need to
+   * be swept while tokens are consumed.
+   *
+   * @return The requested deferred error reporting value.
+   */
+  public static boolean isDeferredErrorReporting ()
+  {
+    return isErrorReporting () && booleanValue (USEROPTION__DEFERRED_ERROR_REPORTING);
+  }
+
+  /**
+   * Find the token window value. If <code>true</code> (and tokens are not
+   * cached) the generated Java parser keeps the tokens after the current token
+   * and their kinds in a ring buffer, so that getToken(i) and the next token
+   * kind don't need to follow the links of the tokens. The kinds of tokens in
+   * the window must not be changed by user code.
+   *
+   * @return The requested token window value.
+   */
+  public static boolean isTokenWindow ()
+  {
+    return !isCacheTokens () && booleanValue (USEROPTION__TOKEN_WINDOW);
+  }
+
+  /**
+   * Find the parser pool value. If <code>true</code> the generated Java parser
+   * has a static method forThread that reinitialises and returns a parser that
+   * is kept per thread. Only used for the classic template type with the
+   * generated char stream and token manager.
+   *
+   * @return The requested parser pool value.
+   */
+  public static boolean isParserPool ()
+  {
+    return booleanValue (USEROPTION__PARSER_POOL);
+  }
+
+  /**
+   * Find the batch parser value. If set, a class ParserBatch is generated that
+   * parses many inputs concurrently and reuses the parser instances with
+   * ReInit.
+   *
+   * @return The requested batch parser value.
+   */
+  public static boolean isBatchParser ()
+  {
+    return booleanValue (USEROPTION__BATCH_PARSER);
+  }
+
+  /**
+   * Find the tail recursion loops value. If <code>true</code> the generated
+   * Java parser calls a production recursively in tail position by jumping back
+   * to the start of the production instead, so lists written as right
+   * recursion need no stack frame per element.
+   *
+   * @return The requested tail recursion loops value.
+   */
+  public static boolean isTailRecursionLoops ()
+  {
+    return booleanValue (USEROPTION__TAIL_RECURSION_LOOPS);
+  }
+
+  /**
+   * Find the inline productions value. Productions without actions, parameters
+   * and return value whose expansion has at most this size (counting tokens,
+   * choices and loops) are inlined into the generated Java code of their
+   * callers. 0 disables inlining.
+   *
+   * @return The requested maximum size of inlined productions.
+   */
+  public static int getInlineProductions ()
+  {
+    return intValue (USEROPTION__INLINE_PRODUCTIONS);
+  }
+
   /**
    * Find the JDK version.
    *
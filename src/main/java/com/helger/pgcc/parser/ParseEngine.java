@@ -63,6 +63,7 @@
  */
 package com.helger.pgcc.parser;
 
+import static com.helger.pgcc.parser.JavaCCGlobals.s_adaptiveLookaheadCount;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_bnfproductions;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_ccol;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_cline;
@@ -72,18 +73,23 @@ import static com.helger.pgcc.parser.JavaCCGlobals.s_lookaheadNeeded;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_maskVals;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_maskindex;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_names_of_tokens;
+import static com.helger.pgcc.parser.JavaCCGlobals.s_operatorsCount;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_production_table;
+import static com.helger.pgcc.parser.JavaCCGlobals.s_staticLookaheadCount;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_tokenCount;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.Nonnull;
 
 import com.helger.commons.collection.impl.CommonsArrayList;
 import com.helger.commons.collection.impl.CommonsHashMap;
+import com.helger.commons.collection.impl.CommonsHashSet;
 import com.helger.commons.collection.impl.ICommonsList;
 import com.helger.commons.collection.impl.ICommonsMap;
+import com.helger.commons.collection.impl.ICommonsSet;
 import com.helger.commons.string.StringHelper;
 import com.helger.pgcc.PGPrinter;
 import com.helger.pgcc.output.EOutputLanguage;
@@ -116,6 +122,14 @@ public class ParseEngine
   private final ICommonsList <ExpLookahead> m_phase2list = new CommonsArrayList <> ();
   private final ICommonsList <Phase3Data> m_phase3list = new CommonsArrayList <> ();
   private final ICommonsMap <Expansion, Phase3Data> m_phase3table = new CommonsHashMap <> ();
+  /** The binding power tables of the OPERATORS expansions of a production. */
+  private final ICommonsList <String> m_operatorTables = new CommonsArrayList <> ();
+  /** The recursive calls in tail position of the current production. */
+  private final ICommonsList <ExpNonTerminal> m_tailCalls = new CommonsArrayList <> ();
+  /** The label of the loop of the current production that replaces them. */
+  private String m_sTailLabel;
+  /** The productions whose code is inlined into their callers. */
+  private final ICommonsSet <NormalProduction> m_inlineProductions = new CommonsHashSet <> ();
 
   public ParseEngine ()
   {}
@@ -860,6 +874,144 @@ public class ParseEngine
     }
   }
 
+  /**
+   * Collect the calls of the production itself that are the last thing done by
+   * the production. Calls inside loops and try blocks and calls that are
+   * followed by actions are not in tail position.
+   */
+  private static void _collectTailCalls (final Expansion e,
+                                         final BNFProduction p,
+                                         final ICommonsList <ExpNonTerminal> aTarget)
+  {
+    if (e instanceof ExpNonTerminal)
+    {
+      final ExpNonTerminal nt = (ExpNonTerminal) e;
+      if (nt.getName ().equals (p.getLhs ()) && nt.getLhsTokens ().isEmpty () && nt.getArgumentTokens ().isEmpty ())
+        aTarget.add (nt);
+    }
+    else
+      if (e instanceof ExpChoice)
+      {
+        for (final Expansion aChoice : ((ExpChoice) e).getChoices ())
+          _collectTailCalls (aChoice, p, aTarget);
+      }
+      else
+        if (e instanceof ExpZeroOrOne)
+        {
+          _collectTailCalls (((ExpZeroOrOne) e).m_expansion, p, aTarget);
+        }
+        else
+          if (e instanceof ExpSequence && !(e instanceof ExpOperators))
+          {
+            final List <Expansion> aUnits = ((ExpSequence) e).m_units;
+            if (!aUnits.isEmpty ())
+              _collectTailCalls (aUnits.get (aUnits.size () - 1), p, aTarget);
+          }
+  }
+
+  /**
+   * Returns the size of the expansion (the number of tokens, choices and loops)
+   * if it can be inlined into the callers of its production or -1 if not. The
+   * code of an inlined expansion must not depend on the place it is generated
+   * at, so it may not contain actions, assignments, calls of other productions
+   * and lookaheads that need phase 2 routines.
+   */
+  private static int _getInlineSize (final Expansion e)
+  {
+    if (e instanceof AbstractExpRegularExpression)
+    {
+      final AbstractExpRegularExpression e_nrw = (AbstractExpRegularExpression) e;
+      return e_nrw.m_lhsTokens.isEmpty () && e_nrw.m_rhsToken == null ? 1 : -1;
+    }
+    if (e instanceof ExpLookahead)
+    {
+      final ExpLookahead la = (ExpLookahead) e;
+      return !la.isExplicit () && la.getActionTokens ().isEmpty () && la.getAmount () == 1 ? 0 : -1;
+    }
+    if (e instanceof ExpAction)
+      return ((ExpAction) e).getActionTokens ().isEmpty () ? 0 : -1;
+
+    final List <Expansion> aNested;
+    int ret;
+    if (e instanceof ExpChoice)
+    {
+      aNested = ((ExpChoice) e).getChoices ();
+      ret = 1;
+    }
+    else
+      if (e instanceof ExpSequence && !(e instanceof ExpOperators))
+      {
+        aNested = ((ExpSequence) e).m_units;
+        ret = 0;
+      }
+      else
+        if (e instanceof ExpOneOrMore)
+        {
+          aNested = new CommonsArrayList <> (((ExpOneOrMore) e).m_expansion);
+          ret = 1;
+        }
+        else
+          if (e instanceof ExpZeroOrMore)
+          {
+            aNested = new CommonsArrayList <> (((ExpZeroOrMore) e).m_expansion);
+            ret = 1;
+          }
+          else
+            if (e instanceof ExpZeroOrOne)
+            {
+              aNested = new CommonsArrayList <> (((ExpZeroOrOne) e).m_expansion);
+              ret = 1;
+            }
+            else
+              return -1;
+
+    for (final Expansion aNestedExp : aNested)
+    {
+      final int nSize = _getInlineSize (aNestedExp);
+      if (nSize < 0)
+        return -1;
+      ret += nSize;
+    }
+    return ret;
+  }
+
+  /**
+   * Determine the productions that are inlined into their callers. These are
+   * the BNF productions without parameters, return value and declarations
+   * whose expansion is small enough.
+   */
+  private void _collectInlineProductions ()
+  {
+    m_inlineProductions.clear ();
+    final int nMaxSize = Options.getInlineProductions ();
+    if (nMaxSize <= 0 ||
+        !m_codeGenerator.getOutputLanguage ().isJava () ||
+        Options.getLookahead () != 1 ||
+        Options.isDebugParser () ||
+        Options.isDebugLookahead ())
+      return;
+
+    for (final NormalProduction p : s_bnfproductions)
+      if (p instanceof BNFProduction &&
+          p.getReturnTypeTokens ().size () == 1 &&
+          p.getReturnTypeTokens ().get (0).kind == JavaCCParserConstants.VOID &&
+          p.getParameterListTokens ().isEmpty () &&
+          ((BNFProduction) p).getDeclarationTokens ().isEmpty ())
+      {
+        final int nSize = _getInlineSize (p.getExpansion ());
+        if (nSize > 0 && nSize <= nMaxSize)
+        {
+          m_inlineProductions.add (p);
+          JavaCCErrors.note (p, "Production " + p.getLhs () + " is inlined into its callers.");
+        }
+      }
+  }
+
+  private boolean _isInlined (final ExpNonTerminal e)
+  {
+    return e.getLhsTokens ().isEmpty () && m_inlineProductions.contains (e.getProd ());
+  }
+
   void buildPhase1Routine (final BNFProduction p)
   {
     final EOutputLanguage eOutputLanguage = m_codeGenerator.getOutputLanguage ();
@@ -961,6 +1113,30 @@ public class ParseEngine
       m_indentamt = 6;
     }
 
+    m_tailCalls.clear ();
+    m_sTailLabel = null;
+    if (Options.isTailRecursionLoops () &&
+        eOutputLanguage.isJava () &&
+        voidReturn &&
+        p.getParameterListTokens ().isEmpty ())
+    {
+      _collectTailCalls (p.getExpansion (), p, m_tailCalls);
+      if (m_tailCalls.isNotEmpty ())
+      {
+        // The declarations are part of the loop, so every iteration gets fresh
+        // local variables like a recursive call
+        m_sTailLabel = "label_" + (++m_nGenSymbolIndex);
+        m_codeGenerator.genCodeLine ("    " + m_sTailLabel + ":");
+        m_codeGenerator.genCodeLine ("    while (true) {");
+        JavaCCErrors.note (p,
+                           "Tail recursion of production " +
+                              p.getLhs () +
+                              " is converted to a loop (" +
+                              m_tailCalls.size () +
+                              " call(s)).");
+      }
+    }
+
     if (!Options.booleanValue (Options.USEROPTION__CPP_IGNORE_ACTIONS) && p.getDeclarationTokens ().size () != 0)
     {
       m_codeGenerator.printTokenSetup (p.getDeclarationTokens ().get (0));
@@ -976,6 +1152,13 @@ public class ParseEngine
     final String code = _phase1ExpansionGen (p.getExpansion ());
     dumpFormattedString (code);
     m_codeGenerator.genCodeNewLine ();
+    if (m_sTailLabel != null)
+    {
+      m_codeGenerator.genCodeLine ("    break;");
+      m_codeGenerator.genCodeLine ("    }");
+      m_sTailLabel = null;
+      m_tailCalls.clear ();
+    }
 
     if (p.isJumpPatched () && !voidReturn)
     {
@@ -1032,6 +1215,14 @@ public class ParseEngine
     genStackCheckEnd ();
     m_codeGenerator.genCodeLine ("}");
     m_codeGenerator.genCodeNewLine ();
+
+    if (m_operatorTables.isNotEmpty ())
+    {
+      for (final String sTable : m_operatorTables)
+        m_codeGenerator.genCodeLine (sTable);
+      m_codeGenerator.genCodeNewLine ();
+      m_operatorTables.clear ();
+    }
   }
 
   void phase1NewLine ()
@@ -1047,6 +1238,18 @@ public class ParseEngine
     ExpLookahead [] conds;
     String [] actions;
     final EOutputLanguage eOutputLanguage = m_codeGenerator.getOutputLanguage ();
+    if (m_sTailLabel != null && m_tailCalls.containsAny (x -> x == e))
+    {
+      // Tail recursion - start the production again. "if (true)" avoids errors
+      // about unreachable statements after the jump
+      return "\nif (true) continue " + m_sTailLabel + ";";
+    }
+    if (e instanceof ExpNonTerminal && _isInlined ((ExpNonTerminal) e))
+    {
+      // The production is small and has no actions - generate its code here
+      // instead of the call
+      return _phase1ExpansionGen (((ExpNonTerminal) e).getProd ().getExpansion ());
+    }
     if (e instanceof AbstractExpRegularExpression)
     {
       final AbstractExpRegularExpression e_nrw = (AbstractExpRegularExpression) e;
@@ -1208,6 +1411,11 @@ public class ParseEngine
             retval = buildLookaheadChecker (conds, actions);
           }
           else
+            if (e instanceof ExpOperators)
+            {
+              retval += _phase1OperatorsGen ((ExpOperators) e);
+            }
+            else
             if (e instanceof ExpSequence)
             {
               final ExpSequence e_nrw = (ExpSequence) e;
@@ -1480,9 +1688,288 @@ public class ParseEngine
     return retval;
   }
 
+  private static String _getTokenName (final AbstractExpRegularExpression aRegex)
+  {
+    if (aRegex.m_label.length () != 0)
+      return aRegex.m_label;
+    final String s = s_names_of_tokens.get (Integer.valueOf (aRegex.m_ordinal));
+    return s == null ? Integer.toString (aRegex.m_ordinal) : s;
+  }
+
+  @Nonnull
+  private static ExpLookahead _getOperatorLookahead (final ExpOperators.Operator aOp)
+  {
+    // Operators are always selected by the next token only
+    final ExpLookahead la = new ExpLookahead ();
+    la.setAmount (1);
+    la.setLaExpansion (aOp.getRegex ());
+    return la;
+  }
+
+  /**
+   * Generate the precedence climbing loop of an OPERATORS expansion. The
+   * operators that wait for their right operand are kept on the stack
+   * jj_op_stack. Before the next operator is consumed, all waiting operators
+   * that bind at least as strong are applied. The binding powers are looked up
+   * in tables per expansion, so there is only one call of the operand
+   * production and one switch over the next token per operand instead of one
+   * production per precedence level.
+   */
+  private String _phase1OperatorsGen (final ExpOperators e)
+  {
+    final int nIndex = s_operatorsCount++;
+    final String sBase = "jj_op_base" + nIndex;
+    final String sOp = "jj_op" + nIndex;
+    final String sMin = "jj_op_min" + nIndex;
+    final List <ExpOperators.Operator> aOps = e.getOperators ();
+
+    final ICommonsList <ExpLookahead> aPrefixConds = new CommonsArrayList <> ();
+    final ICommonsList <String> aPrefixActions = new CommonsArrayList <> ();
+    final ICommonsList <ExpLookahead> aInfixConds = new CommonsArrayList <> ();
+    final ICommonsList <String> aInfixActions = new CommonsArrayList <> ();
+    final StringBuilder aBP = new StringBuilder ();
+    final StringBuilder aMinBP = new StringBuilder ();
+    final StringBuilder aKinds = new StringBuilder ();
+    for (int i = 0; i < aOps.size (); i++)
+    {
+      final ExpOperators.Operator aOp = aOps.get (i);
+      if (aOp.getKind () == EOperatorKind.PREFIX)
+      {
+        aPrefixConds.add (_getOperatorLookahead (aOp));
+        aPrefixActions.add ("\njj_consume_token(" + _getTokenName (aOp.getRegex ()) + ");\njj_op_push(" + i + ");");
+      }
+      else
+      {
+        aInfixConds.add (_getOperatorLookahead (aOp));
+        aInfixActions.add ("\n" + sOp + " = " + i + ";");
+      }
+      if (i > 0)
+      {
+        aBP.append (", ");
+        aMinBP.append (", ");
+        aKinds.append (", ");
+      }
+      aBP.append (aOp.getBindingPower ());
+      aMinBP.append (aOp.getMinBindingPower ());
+      aKinds.append (_getTokenName (aOp.getRegex ()));
+    }
+    m_operatorTables.add ("  private static final int[] jj_op_bp" + nIndex + " = {" + aBP + "};");
+    m_operatorTables.add ("  private static final int[] jj_op_min_bp" + nIndex + " = {" + aMinBP + "};");
+    m_operatorTables.add ("  private static final int[] jj_op_kind" + nIndex + " = {" + aKinds + "};");
+
+    final int nOuterLabel = ++m_nGenSymbolIndex;
+    String retval = "\nfinal int " + sBase + " = jj_op_sp;";
+    retval += "\nint " + sOp + ";";
+    retval += "\nint " + sMin + ";";
+    retval += "\nlabel_" + nOuterLabel + ":\n";
+    retval += "while (true) {" + INDENT_INC;
+    if (!aPrefixConds.isEmpty ())
+    {
+      final int nLabel = ++m_nGenSymbolIndex;
+      aPrefixActions.add ("\nbreak label_" + nLabel + ";");
+      retval += "\nlabel_" + nLabel + ":\n";
+      retval += "while (true) {" + INDENT_INC;
+      retval += buildLookaheadChecker (aPrefixConds.toArray (new ExpLookahead [aPrefixConds.size ()]), aPrefixActions.toArray (new String [aPrefixActions.size ()]));
+      retval += INDENT_DEC + "\n" + "}";
+    }
+    retval += _phase1ExpansionGen (e.getOperand ());
+
+    final int nLabel = ++m_nGenSymbolIndex;
+    aInfixActions.add ("\n" + sOp + " = -1;");
+    retval += "\nlabel_" + nLabel + ":\n";
+    retval += "while (true) {" + INDENT_INC;
+    retval += buildLookaheadChecker (aInfixConds.toArray (new ExpLookahead [aInfixConds.size ()]), aInfixActions.toArray (new String [aInfixActions.size ()]));
+
+    // Apply the waiting operators that bind at least as strong
+    retval += "\n" + sMin + " = " + sOp + " < 0 ? 0 : jj_op_min_bp" + nIndex + "[" + sOp + "];";
+    retval += "\nwhile (jj_op_sp > " + sBase + " && jj_op_bp" + nIndex + "[jj_op_stack[jj_op_sp - 1]] >= " + sMin + ") {" + INDENT_INC;
+    String sCases = "";
+    for (int i = 0; i < aOps.size (); i++)
+    {
+      final ExpOperators.Operator aOp = aOps.get (i);
+      if (aOp.getKind () != EOperatorKind.POSTFIX && aOp.getAction () != null)
+        sCases += "\ncase " + i + ":" + INDENT_INC + "{" + _phase1ExpansionGen (aOp.getAction ()) + "\nbreak;\n}" + INDENT_DEC;
+    }
+    if (sCases.isEmpty ())
+      retval += "\njj_op_sp--;";
+    else
+      retval += "\nswitch (jj_op_stack[--jj_op_sp]) {" + INDENT_INC + sCases + INDENT_DEC + "\n}";
+    retval += INDENT_DEC + "\n}";
+    retval += "\nif (" + sOp + " < 0)\n  break label_" + nOuterLabel + ";";
+    retval += "\njj_consume_token(jj_op_kind" + nIndex + "[" + sOp + "]);";
+
+    // Postfix operators are applied immediately
+    sCases = "";
+    for (int i = 0; i < aOps.size (); i++)
+    {
+      final ExpOperators.Operator aOp = aOps.get (i);
+      if (aOp.getKind () == EOperatorKind.POSTFIX)
+      {
+        sCases += "\ncase " + i + ":" + INDENT_INC + "{";
+        if (aOp.getAction () != null)
+          sCases += _phase1ExpansionGen (aOp.getAction ());
+        sCases += "\ncontinue label_" + nLabel + ";\n}" + INDENT_DEC;
+      }
+    }
+    if (!sCases.isEmpty ())
+      retval += "\nswitch (" + sOp + ") {" + INDENT_INC + sCases + INDENT_DEC + "\n}";
+    retval += "\njj_op_push(" + sOp + ");";
+    retval += "\nbreak label_" + nLabel + ";";
+    retval += INDENT_DEC + "\n}";
+    retval += INDENT_DEC + "\n}";
+    return retval;
+  }
+
+  private String _getTokenName (final int nKind)
+  {
+    final String s = s_names_of_tokens.get (Integer.valueOf (nKind));
+    return s == null ? Integer.toString (nKind) : s;
+  }
+
+  private void _genStaticCases (final LookaheadPrediction.Node aNode, final boolean bResult, final String sIndent)
+  {
+    boolean bAny = false;
+    for (final Map.Entry <Integer, LookaheadPrediction.Node> aEntry : aNode.getCases ().entrySet ())
+    {
+      final LookaheadPrediction.Node aCase = aEntry.getValue ();
+      if (aCase.isLeaf () && aCase.getResult () == bResult)
+      {
+        m_codeGenerator.genCodeLine (sIndent + "  case " + _getTokenName (aEntry.getKey ().intValue ()) + ":");
+        bAny = true;
+      }
+    }
+    if (bAny)
+      m_codeGenerator.genCodeLine (sIndent + "    return " + bResult + ";");
+  }
+
+  private void _genStaticPrediction (final LookaheadPrediction.Node aNode, final String sIndent)
+  {
+    if (aNode.isLeaf ())
+    {
+      m_codeGenerator.genCodeLine (sIndent + "return " + aNode.getResult () + ";");
+      return;
+    }
+
+    // Each switch reads the next token like jj_scan_token
+    final LookaheadPrediction.Node aDefault = aNode.getDefault ();
+    m_codeGenerator.genCodeLine (sIndent + "switch (jj_next_kind()) {");
+    if (!aDefault.isLeaf () || !aDefault.getResult ())
+      _genStaticCases (aNode, true, sIndent);
+    if (!aDefault.isLeaf () || aDefault.getResult ())
+      _genStaticCases (aNode, false, sIndent);
+    for (final Map.Entry <Integer, LookaheadPrediction.Node> aEntry : aNode.getCases ().entrySet ())
+    {
+      final LookaheadPrediction.Node aCase = aEntry.getValue ();
+      if (!aCase.isLeaf ())
+      {
+        m_codeGenerator.genCodeLine (sIndent + "  case " + _getTokenName (aEntry.getKey ().intValue ()) + ":");
+        _genStaticPrediction (aCase, sIndent + "    ");
+      }
+    }
+    m_codeGenerator.genCodeLine (sIndent + "  default:");
+    _genStaticPrediction (aDefault, sIndent + "    ");
+    m_codeGenerator.genCodeLine (sIndent + "}");
+  }
+
+  /**
+   * Build the phase 2 routine of a syntactic lookahead with a small fixed
+   * amount as a switch over the kinds of the next tokens, if the result of the
+   * scan can be determined statically.
+   *
+   * @return <code>true</code> if the routine was built
+   */
+  private boolean _buildStaticPhase2Routine (final ExpLookahead la)
+  {
+    if (!Options.isStaticLookahead () || Options.isDebugLookahead () || Options.hasDepthLimit ())
+      return false;
+
+    final Expansion e = la.getLaExpansion ();
+    final LookaheadPrediction.Node aPrediction = LookaheadPrediction.createPrediction (e, la.getAmount ());
+    if (aPrediction == null)
+      return false;
+
+    m_codeGenerator.genCodeLine ("  private boolean jj_2" + e.getInternalName () + "(int xla)");
+    m_codeGenerator.genCodeLine (" {");
+    m_codeGenerator.genCodeLine ("    jj_la = xla;");
+    m_codeGenerator.genCodeLine ("    jj_lastpos = token;");
+    if (Options.isErrorReporting ())
+    {
+      m_codeGenerator.genCodeLine ("    try {");
+      _genStaticPrediction (aPrediction, "      ");
+      m_codeGenerator.genCodeLine ("    }");
+      m_codeGenerator.genCodeLine ("    finally { jj_save(" + (e.getInternalIndex () - 1) + ", xla); }");
+
+      // The phase 3 routine is still needed to rescan the lookahead for the
+      // error message
+      final Phase3Data p3d = new Phase3Data (e, la.getAmount ());
+      m_phase3list.add (p3d);
+      m_phase3table.put (e, p3d);
+    }
+    else
+      _genStaticPrediction (aPrediction, "    ");
+    m_codeGenerator.genCodeLine ("  }");
+    m_codeGenerator.genCodeNewLine ();
+
+    s_staticLookaheadCount++;
+    JavaCCErrors.note (e, "LOOKAHEAD(" + la.getAmount () + ") is predicted statically.");
+    return true;
+  }
+
+  /**
+   * Build the phase 2 routine of a syntactic lookahead that first walks the
+   * lookahead DFA and only scans if the DFA doesn't know the kinds of the next
+   * tokens yet. The result of the scan is added to the DFA.
+   *
+   * @return <code>true</code> if the routine was built
+   */
+  private boolean _buildAdaptivePhase2Routine (final ExpLookahead la)
+  {
+    if (!Options.isAdaptiveLookahead () || Options.isDebugLookahead () || Options.hasDepthLimit ())
+      return false;
+
+    final Expansion e = la.getLaExpansion ();
+    if (!LookaheadPrediction.dependsOnTokenKindsOnly (e))
+      return false;
+
+    final int nIndex = e.getInternalIndex () - 1;
+    m_codeGenerator.genCodeLine ("  private boolean jj_2" + e.getInternalName () + "(int xla)");
+    m_codeGenerator.genCodeLine (" {");
+    m_codeGenerator.genCodeLine ("    jj_la = xla;");
+    m_codeGenerator.genCodeLine ("    jj_lastpos = token;");
+    String sIndent = "    ";
+    if (Options.isErrorReporting ())
+    {
+      m_codeGenerator.genCodeLine ("    try {");
+      sIndent = "      ";
+    }
+    m_codeGenerator.genCodeLine (sIndent + "final int cached = jj_dfa_predict(" + nIndex + ");");
+    m_codeGenerator.genCodeLine (sIndent + "if (cached != JJ_DFA_UNKNOWN) return cached == JJ_DFA_SUCCESS;");
+    m_codeGenerator.genCodeLine (sIndent + "jj_la = xla;");
+    m_codeGenerator.genCodeLine (sIndent + "jj_scanpos = token;");
+    m_codeGenerator.genCodeLine (sIndent + "jj_lastpos = token;");
+    m_codeGenerator.genCodeLine (sIndent + "jj_done = false;");
+    m_codeGenerator.genCodeLine (sIndent + "return jj_dfa_add(" + nIndex + ", (!jj_3" + e.getInternalName () + "()) || jj_done);");
+    if (Options.isErrorReporting ())
+    {
+      m_codeGenerator.genCodeLine ("    }");
+      m_codeGenerator.genCodeLine ("    finally { jj_save(" + nIndex + ", xla); }");
+    }
+    m_codeGenerator.genCodeLine ("  }");
+    m_codeGenerator.genCodeNewLine ();
+
+    s_adaptiveLookaheadCount++;
+    final Phase3Data p3d = new Phase3Data (e, la.getAmount ());
+    m_phase3list.add (p3d);
+    m_phase3table.put (e, p3d);
+    return true;
+  }
+
   private void _buildPhase2Routine (final ExpLookahead la)
   {
     final EOutputLanguage eOutputLanguage = m_codeGenerator.getOutputLanguage ();
+    if (eOutputLanguage.isJava () && (_buildStaticPhase2Routine (la) || _buildAdaptivePhase2Routine (la)))
+      return;
+
     final Expansion e = la.getLaExpansion ();
     switch (eOutputLanguage)
     {
@@ -1501,16 +1988,21 @@ public class ParseEngine
     m_codeGenerator.genCodeLine ("    jj_lastpos = token;");
 
     String ret_suffix = "";
-    if (Options.hasDepthLimit ())
+    if (Options.hasDepthLimit () && eOutputLanguage == EOutputLanguage.CPP)
     {
+      // Java throws a ParseException if the depth limit is exceeded
       ret_suffix = " && !jj_depth_error";
     }
 
     switch (eOutputLanguage)
     {
       case JAVA:
-        m_codeGenerator.genCodeLine ("    try { return (!jj_3" + e.getInternalName () + "()" + ret_suffix + "); }");
-        m_codeGenerator.genCodeLine ("    catch(LookaheadSuccess ls) { return true; }");
+        // jj_done is set if the lookahead limit was reached
+        m_codeGenerator.genCodeLine ("    jj_done = false;");
+        if (Options.isErrorReporting ())
+          m_codeGenerator.genCodeLine ("    try { return (!jj_3" + e.getInternalName () + "()" + ret_suffix + ") || jj_done; }");
+        else
+          m_codeGenerator.genCodeLine ("    return (!jj_3" + e.getInternalName () + "()" + ret_suffix + ") || jj_done;");
         break;
       case CPP:
         m_codeGenerator.genCodeLine ("    jj_done = false;");
@@ -1628,9 +2120,14 @@ public class ParseEngine
           // nothing to do here
         }
         else
-        {
-          _generate3R (ntprod.getExpansion (), inf);
-        }
+          if (_isInlined (e_nrw))
+          {
+            setupPhase3Builds (new Phase3Data (ntprod.getExpansion (), inf.m_count));
+          }
+          else
+          {
+            _generate3R (ntprod.getExpansion (), inf);
+          }
       }
       else
         if (e instanceof ExpChoice)
@@ -1706,6 +2203,23 @@ public class ParseEngine
     return "jj_3" + sInternalName + "()";
   }
 
+  private void _genMemoizedPhase3Routine (final Expansion e)
+  {
+    final int nIndex = e.getInternalIndex ();
+    m_codeGenerator.genCodeLine ("  private " +
+                                 m_codeGenerator.getOutputLanguage ().getTypeBoolean () +
+                                 " jj_3" +
+                                 e.getInternalName () +
+                                 "()");
+    m_codeGenerator.genCodeLine (" {");
+    m_codeGenerator.genCodeLine ("    if (jj_done) return true;");
+    m_codeGenerator.genCodeLine ("    final int memo = jj_memo_get(" + nIndex + ");");
+    m_codeGenerator.genCodeLine ("    if (memo != JJ_MEMO_NONE) return memo == JJ_MEMO_FAIL;");
+    m_codeGenerator.genCodeLine ("    return jj_memo_put(" + nIndex + ", jj_scanpos, jj_3" + e.getInternalName () + "_scan());");
+    m_codeGenerator.genCodeLine ("  }");
+    m_codeGenerator.genCodeNewLine ();
+  }
+
   void buildPhase3Routine (final Phase3Data inf, final boolean recursive_call)
   {
     final Expansion e = inf.m_exp;
@@ -1719,11 +2233,23 @@ public class ParseEngine
       switch (eOutputLanguage)
       {
         case JAVA:
-          m_codeGenerator.genCodeLine ("  private " +
-                                       eOutputLanguage.getTypeBoolean () +
-                                       " jj_3" +
-                                       e.getInternalName () +
-                                       "()");
+          if (Options.isMemoizeLookahead () && e.m_parent instanceof NormalProduction)
+          {
+            // The routine of a production - the scanning is done in a
+            // separate method
+            _genMemoizedPhase3Routine (e);
+            m_codeGenerator.genCodeLine ("  private " +
+                                         eOutputLanguage.getTypeBoolean () +
+                                         " jj_3" +
+                                         e.getInternalName () +
+                                         "_scan()");
+          }
+          else
+            m_codeGenerator.genCodeLine ("  private " +
+                                         eOutputLanguage.getTypeBoolean () +
+                                         " jj_3" +
+                                         e.getInternalName () +
+                                         "()");
           break;
         case CPP:
           m_codeGenerator.genCodeLine (" inline bool jj_3" + e.getInternalName () + "()");
@@ -1736,6 +2262,7 @@ public class ParseEngine
       switch (eOutputLanguage)
       {
         case JAVA:
+          m_codeGenerator.genCodeLine ("    if (jj_done) return true;");
           break;
         case CPP:
           m_codeGenerator.genCodeLine ("    if (jj_done) return true;");
@@ -1745,7 +2272,18 @@ public class ParseEngine
         default:
           throw new UnsupportedOutputLanguageException (eOutputLanguage);
       }
-      _genStackCheck (false);
+      if (Options.hasDepthLimit () && eOutputLanguage == EOutputLanguage.JAVA)
+      {
+        // The lookahead routines cannot throw a ParseException - if the depth
+        // limit is exceeded the lookahead fails
+        m_codeGenerator.genCodeLine ("if(++jj_depth > " + Options.getDepthLimit () + ") {");
+        m_codeGenerator.genCodeLine ("  --jj_depth;");
+        m_codeGenerator.genCodeLine ("  return true;");
+        m_codeGenerator.genCodeLine ("}");
+        m_codeGenerator.genCodeLine ("try {");
+      }
+      else
+        _genStackCheck (false);
       m_xsp_declared = false;
       if (Options.isDebugLookahead () && e.m_parent instanceof NormalProduction)
       {
@@ -1802,14 +2340,19 @@ public class ParseEngine
                                        "}");
         }
         else
-        {
-          final Expansion ntexp = ntprod.getExpansion ();
-          // codeGenerator.genCodeLine(" if (jj_3" + ntexp.internal_name + "())
-          // " + genReturn(true));
-          m_codeGenerator.genCodeLine ("    if (" + _genjj_3Call (ntexp) + ") " + _genReturn (true));
-          // codeGenerator.genCodeLine(" if (jj_la == 0 && jj_scanpos ==
-          // jj_lastpos) " + genReturn(false));
-        }
+          if (_isInlined (e_nrw))
+          {
+            buildPhase3Routine (new Phase3Data (ntprod.getExpansion (), inf.m_count), true);
+          }
+          else
+          {
+            final Expansion ntexp = ntprod.getExpansion ();
+            // codeGenerator.genCodeLine(" if (jj_3" + ntexp.internal_name +
+            // "()) " + genReturn(true));
+            m_codeGenerator.genCodeLine ("    if (" + _genjj_3Call (ntexp) + ") " + _genReturn (true));
+            // codeGenerator.genCodeLine(" if (jj_la == 0 && jj_scanpos ==
+            // jj_lastpos) " + genReturn(false));
+          }
       }
       else
         if (e instanceof ExpChoice)
@@ -2111,6 +2654,7 @@ public class ParseEngine
   {
     m_codeGenerator = codeGenerator;
     final EOutputLanguage eOutputLanguage = m_codeGenerator.getOutputLanguage ();
+    _collectInlineProductions ();
     for (final NormalProduction p : s_bnfproductions)
     {
       if (p instanceof CodeProductionCpp)
@@ -2330,6 +2874,8 @@ public class ParseEngine
     m_phase2list.clear ();
     m_phase3list.clear ();
     m_phase3table.clear ();
+    m_operatorTables.clear ();
+    m_inlineProductions.clear ();
     m_firstSet = null;
     m_xsp_declared = false;
     m_jj3_expansion = null;
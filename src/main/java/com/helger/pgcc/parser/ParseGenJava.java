@@ -65,6 +65,7 @@ package com.helger.pgcc.parser;
 
 import static com.helger.pgcc.parser.JavaCCGlobals.getFileExtension;
 import static com.helger.pgcc.parser.JavaCCGlobals.getIdString;
+import static com.helger.pgcc.parser.JavaCCGlobals.s_adaptiveLookaheadCount;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_cu_from_insertion_point_2;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_cu_name;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_cu_to_insertion_point_1;
@@ -74,6 +75,8 @@ import static com.helger.pgcc.parser.JavaCCGlobals.s_jjtreeGenerated;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_lookaheadNeeded;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_maskVals;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_maskindex;
+import static com.helger.pgcc.parser.JavaCCGlobals.s_operatorsCount;
+import static com.helger.pgcc.parser.JavaCCGlobals.s_staticLookaheadCount;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_tokenCount;
 import static com.helger.pgcc.parser.JavaCCGlobals.s_toolNames;
 
@@ -90,6 +93,21 @@ import com.helger.pgcc.output.EOutputLanguage;
  */
 public class ParseGenJava extends CodeGenerator
 {
+  /** Number of entries of the table for option MEMOIZE_LOOKAHEAD */
+  public static final int MEMO_SIZE = 4096;
+  // Lookahead amounts of at least this size are unlimited
+  private static final int MEMO_MIN_LA = Integer.MAX_VALUE / 2;
+  /** Maximum number of tokens of a path of the DFA for option ADAPTIVE_LOOKAHEAD */
+  public static final int DFA_MAX_DEPTH = 64;
+  /** Maximum number of states per DFA for option ADAPTIVE_LOOKAHEAD */
+  public static final int DFA_MAX_STATES = 4096;
+  /** Initial size of the lookahead log for option DEFERRED_ERROR_REPORTING */
+  public static final int CALLS_SIZE = 64;
+  /** Initial size of the token window for option TOKEN_WINDOW. Must be a power of 2. */
+  public static final int WINDOW_SIZE = 16;
+  /** Initial size of the operator stack of OPERATORS expansions */
+  public static final int OPERATORS_SIZE = 16;
+
   public void start (final boolean bIsJavaModernMode) throws MetaParseException
   {
     if (JavaCCErrors.getErrorCount () != 0)
@@ -187,6 +205,25 @@ public class ParseGenJava extends CodeGenerator
     {
       genCodeLine ("  private int jj_ntk;");
     }
+    if (Options.isTokenWindow ())
+    {
+      genCodeLine ("  /** Ring buffer of the tokens after the current token. */");
+      genCodeLine ("  private Token[] jj_window = new Token[" + WINDOW_SIZE + "];");
+      genCodeLine ("  private int jj_window_mask = " + (WINDOW_SIZE - 1) + ";");
+      genCodeLine ("  /** The current token when the window was last updated */");
+      genCodeLine ("  private Token jj_window_token;");
+      genCodeLine ("  /** Index of the token after the current token */");
+      genCodeLine ("  private int jj_window_pos = 0;");
+      genCodeLine ("  private int jj_window_count = 0;");
+    }
+    if (s_operatorsCount != 0)
+    {
+      genCodeLine ("  /** Operator stack of the OPERATORS expansions */");
+      genCodeLine ("  private int[] jj_op_stack = new int[" + OPERATORS_SIZE + "];");
+      genCodeLine ("  /** The consumed operator tokens, parallel to jj_op_stack */");
+      genCodeLine ("  private Token[] jj_op_tokens = new Token[" + OPERATORS_SIZE + "];");
+      genCodeLine ("  private int jj_op_sp = 0;");
+    }
     if (Options.hasDepthLimit ())
     {
       genCodeLine ("  /** current depth */");
@@ -196,6 +233,23 @@ public class ParseGenJava extends CodeGenerator
     {
       genCodeLine ("  private Token jj_scanpos, jj_lastpos;");
       genCodeLine ("  private int jj_la;");
+      genCodeLine ("  /** Whether the lookahead limit was reached - ends the lookahead with success. */");
+      genCodeLine ("  private " + eOutputLanguage.getTypeBoolean () + " jj_done;");
+      if (s_adaptiveLookaheadCount != 0)
+      {
+        genCodeLine ("  private static final int JJ_DFA_UNKNOWN = 0;");
+        genCodeLine ("  private static final int JJ_DFA_SUCCESS = 1;");
+        genCodeLine ("  private static final int JJ_DFA_FAILURE = 2;");
+        genCodeLine ("  private static final int JJ_DFA_MAX_DEPTH = " + DFA_MAX_DEPTH + ";");
+        genCodeLine ("  private static final int JJ_DFA_MAX_STATES = " + DFA_MAX_STATES + ";");
+        genCodeLine ("  /** The start states of the lookahead DFAs of the jj_2 routines, shared by all parsers. */");
+        genCodeLine ("  private static final JJDfaState[] jj_dfa = new JJDfaState[" + s_jj2index + "];");
+        genCodeLine ("  /** The number of states of the lookahead DFAs. Guarded by the start state. */");
+        genCodeLine ("  private static final int[] jj_dfa_states = new int[" + s_jj2index + "];");
+        genCodeLine ("  static {");
+        genCodeLine ("	 for (int i = 0; i < jj_dfa.length; i++) jj_dfa[i] = new JJDfaState(-1, JJ_DFA_UNKNOWN);");
+        genCodeLine ("  }");
+      }
       if (s_lookaheadNeeded)
       {
         genCodeLine ("  /** Whether we are looking ahead. */");
@@ -221,18 +275,47 @@ public class ParseGenJava extends CodeGenerator
       for (int i = 0; i < tokenMaskSize; i++)
       {
         genCodeLine ("	private static void jj_la1_init_" + i + "() {");
-        genCode ("	   jj_la1_" + i + " = new int[] {");
-        for (final int [] tokenMask : s_maskVals)
-          genCode ("0x" + Integer.toHexString (tokenMask[i]) + ",");
-        genCodeLine ("};");
+        if (Options.isEncodedTables ())
+        {
+          final int [] aMasks = new int [s_maskVals.size ()];
+          for (int j = 0; j < aMasks.length; j++)
+            aMasks[j] = s_maskVals.get (j)[i];
+          genCode ("	   jj_la1_" + i + " = jjDecodeInts(" + aMasks.length + ", ");
+          JavaTableEncoder.dumpStringArray (this, JavaTableEncoder.encodeInts (aMasks));
+          genCodeLine (");");
+        }
+        else
+        {
+          genCode ("	   jj_la1_" + i + " = new int[] {");
+          for (final int [] tokenMask : s_maskVals)
+            genCode ("0x" + Integer.toHexString (tokenMask[i]) + ",");
+          genCodeLine ("};");
+        }
         genCodeLine ("	}");
       }
+      if (Options.isEncodedTables ())
+        JavaTableEncoder.dumpDecodeMethods (this);
     }
     if (s_jj2index != 0 && Options.isErrorReporting ())
     {
-      genCodeLine ("  private final JJCalls[] jj_2_rtns = new JJCalls[" + s_jj2index + "];");
+      if (Options.isDeferredErrorReporting ())
+      {
+        genCodeLine ("  /** Log of the syntactic lookaheads, only evaluated for error messages */");
+        genCodeLine ("  private int[] jj_calls_index = new int[" + CALLS_SIZE + "];");
+        genCodeLine ("  private int[] jj_calls_gen = new int[" + CALLS_SIZE + "];");
+        genCodeLine ("  private int[] jj_calls_arg = new int[" + CALLS_SIZE + "];");
+        genCodeLine ("  private Token[] jj_calls_first = new Token[" + CALLS_SIZE + "];");
+        genCodeLine ("  private int jj_calls_count = 0;");
+        genCodeLine ("  private final int[] jj_2_gen = new int[" + s_jj2index + "];");
+        genCodeLine ("  private final int[] jj_2_arg = new int[" + s_jj2index + "];");
+      }
+      else
+      {
+        genCodeLine ("  private final JJCalls[] jj_2_rtns = new JJCalls[" + s_jj2index + "];");
+      }
       genCodeLine ("  private " + eOutputLanguage.getTypeBoolean () + " jj_rescan = false;");
-      genCodeLine ("  private int jj_gc = 0;");
+      if (!Options.isDeferredErrorReporting ())
+        genCodeLine ("  private int jj_gc = 0;");
     }
     genCodeNewLine ();
 
@@ -258,11 +341,17 @@ public class ParseGenJava extends CodeGenerator
         else
         {
           genCodeLine ("	 jj_ntk = -1;");
+          if (Options.isTokenWindow ())
+            genCodeLine ("	 jj_window_clear();");
         }
         if (Options.hasDepthLimit ())
         {
           genCodeLine ("    jj_depth = -1;");
         }
+        if (s_operatorsCount != 0)
+        {
+          genCodeLine ("    jj_op_sp = 0;");
+        }
         if (Options.isErrorReporting ())
         {
           genCodeLine ("	 jj_gen = 0;");
@@ -272,7 +361,7 @@ public class ParseGenJava extends CodeGenerator
           }
           if (s_jj2index != 0)
           {
-            genCodeLine ("	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
+            genCodeLine ("	 jj_calls_clear();");
           }
         }
         genCodeLine ("  }");
@@ -301,11 +390,17 @@ public class ParseGenJava extends CodeGenerator
         else
         {
           genCodeLine ("	 jj_ntk = -1;");
+          if (Options.isTokenWindow ())
+            genCodeLine ("	 jj_window_clear();");
         }
         if (Options.hasDepthLimit ())
         {
           genCodeLine ("    jj_depth = -1;");
         }
+        if (s_operatorsCount != 0)
+        {
+          genCodeLine ("    jj_op_sp = 0;");
+        }
         if (s_lookaheadNeeded)
         {
           genCodeLine ("	 jj_lookingAhead = false;");
@@ -314,6 +409,10 @@ public class ParseGenJava extends CodeGenerator
         {
           genCodeLine ("	 jjtree.reset();");
         }
+        if (s_jj2index != 0 && Options.isMemoizeLookahead ())
+        {
+          genCodeLine ("	 jj_memo_clear();");
+        }
         if (Options.isErrorReporting ())
         {
           genCodeLine ("	 jj_gen = 0;");
@@ -324,8 +423,7 @@ public class ParseGenJava extends CodeGenerator
           }
           if (s_jj2index != 0)
           {
-            genCodeLine ("   for (int i = 0; i < jj_2_rtns.length; i++)");
-            genCodeLine ("     jj_2_rtns[i] = new JJCalls();");
+            genCodeLine ("   jj_calls_clear();");
           }
         }
         genCodeLine ("  }");
@@ -381,11 +479,17 @@ public class ParseGenJava extends CodeGenerator
           else
           {
             genCodeLine ("	 jj_ntk = -1;");
+            if (Options.isTokenWindow ())
+              genCodeLine ("	 jj_window_clear();");
           }
           if (Options.hasDepthLimit ())
           {
             genCodeLine ("    jj_depth = -1;");
           }
+          if (s_operatorsCount != 0)
+          {
+            genCodeLine ("    jj_op_sp = 0;");
+          }
           if (Options.isErrorReporting ())
           {
             genCodeLine ("	 jj_gen = 0;");
@@ -395,7 +499,7 @@ public class ParseGenJava extends CodeGenerator
             }
             if (s_jj2index != 0)
             {
-              genCodeLine ("	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
+              genCodeLine ("	 jj_calls_clear();");
             }
           }
           genCodeLine ("  }");
@@ -447,22 +551,32 @@ public class ParseGenJava extends CodeGenerator
           else
           {
             genCodeLine ("	 jj_ntk = -1;");
+            if (Options.isTokenWindow ())
+              genCodeLine ("	 jj_window_clear();");
           }
           if (Options.hasDepthLimit ())
           {
             genCodeLine ("    jj_depth = -1;");
           }
+          if (s_operatorsCount != 0)
+          {
+            genCodeLine ("    jj_op_sp = 0;");
+          }
           if (s_jjtreeGenerated)
           {
             genCodeLine ("	 jjtree.reset();");
           }
+          if (s_jj2index != 0 && Options.isMemoizeLookahead ())
+          {
+            genCodeLine ("	 jj_memo_clear();");
+          }
           if (Options.isErrorReporting ())
           {
             genCodeLine ("	 jj_gen = 0;");
             genCodeLine ("	 for (int i = 0; i < " + s_maskindex + "; i++) jj_la1[i] = -1;");
             if (s_jj2index != 0)
             {
-              genCodeLine ("	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
+              genCodeLine ("	 jj_calls_clear();");
             }
           }
           genCodeLine ("  }");
@@ -502,11 +616,17 @@ public class ParseGenJava extends CodeGenerator
         else
         {
           genCodeLine ("	 jj_ntk = -1;");
+          if (Options.isTokenWindow ())
+            genCodeLine ("	 jj_window_clear();");
         }
         if (Options.hasDepthLimit ())
         {
           genCodeLine ("    jj_depth = -1;");
         }
+        if (s_operatorsCount != 0)
+        {
+          genCodeLine ("    jj_op_sp = 0;");
+        }
         if (Options.isErrorReporting ())
         {
           genCodeLine ("	 jj_gen = 0;");
@@ -517,8 +637,7 @@ public class ParseGenJava extends CodeGenerator
           }
           if (s_jj2index != 0)
           {
-            genCodeLine ("   for (int i = 0; i < jj_2_rtns.length; i++)");
-            genCodeLine ("     jj_2_rtns[i] = new JJCalls();");
+            genCodeLine ("   jj_calls_clear();");
           }
         }
         genCodeLine ("  }");
@@ -594,15 +713,25 @@ public class ParseGenJava extends CodeGenerator
         else
         {
           genCodeLine ("	 jj_ntk = -1;");
+          if (Options.isTokenWindow ())
+            genCodeLine ("	 jj_window_clear();");
         }
         if (Options.hasDepthLimit ())
         {
           genCodeLine ("    jj_depth = -1;");
         }
+        if (s_operatorsCount != 0)
+        {
+          genCodeLine ("    jj_op_sp = 0;");
+        }
         if (s_jjtreeGenerated)
         {
           genCodeLine ("	 jjtree.reset();");
         }
+        if (s_jj2index != 0 && Options.isMemoizeLookahead ())
+        {
+          genCodeLine ("	 jj_memo_clear();");
+        }
         if (Options.isErrorReporting ())
         {
           genCodeLine ("	 jj_gen = 0;");
@@ -613,12 +742,13 @@ public class ParseGenJava extends CodeGenerator
           }
           if (s_jj2index != 0)
           {
-            genCodeLine ("   for (int i = 0; i < jj_2_rtns.length; i++)");
-            genCodeLine ("     jj_2_rtns[i] = new JJCalls();");
+            genCodeLine ("   jj_calls_clear();");
           }
         }
         genCodeLine ("  }");
 
+        if (!bIsJavaModernMode && (Options.isParserPool () || Options.isBatchParser ()))
+          _genCharSequenceReInit ();
       }
     }
     genCodeNewLine ();
@@ -647,11 +777,17 @@ public class ParseGenJava extends CodeGenerator
     else
     {
       genCodeLine ("	 jj_ntk = -1;");
+      if (Options.isTokenWindow ())
+        genCodeLine ("	 jj_window_clear();");
     }
     if (Options.hasDepthLimit ())
     {
       genCodeLine ("    jj_depth = -1;");
     }
+    if (s_operatorsCount != 0)
+    {
+      genCodeLine ("    jj_op_sp = 0;");
+    }
     if (Options.isErrorReporting ())
     {
       genCodeLine ("	 jj_gen = 0;");
@@ -661,7 +797,7 @@ public class ParseGenJava extends CodeGenerator
       }
       if (s_jj2index != 0)
       {
-        genCodeLine ("	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
+        genCodeLine ("	 jj_calls_clear();");
       }
     }
     genCodeLine ("  }");
@@ -691,15 +827,25 @@ public class ParseGenJava extends CodeGenerator
     else
     {
       genCodeLine ("	 jj_ntk = -1;");
+      if (Options.isTokenWindow ())
+        genCodeLine ("	 jj_window_clear();");
     }
     if (Options.hasDepthLimit ())
     {
       genCodeLine ("    jj_depth = -1;");
     }
+    if (s_operatorsCount != 0)
+    {
+      genCodeLine ("    jj_op_sp = 0;");
+    }
     if (s_jjtreeGenerated)
     {
       genCodeLine ("	 jjtree.reset();");
     }
+    if (s_jj2index != 0 && Options.isMemoizeLookahead ())
+    {
+      genCodeLine ("	 jj_memo_clear();");
+    }
     if (Options.isErrorReporting ())
     {
       genCodeLine ("	 jj_gen = 0;");
@@ -709,7 +855,7 @@ public class ParseGenJava extends CodeGenerator
       }
       if (s_jj2index != 0)
       {
-        genCodeLine ("	 for (int i = 0; i < jj_2_rtns.length; i++) jj_2_rtns[i] = new JJCalls();");
+        genCodeLine ("	 jj_calls_clear();");
       }
     }
     genCodeLine ("  }");
@@ -727,20 +873,34 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("    }");
     }
     else
+      if (Options.isTokenWindow ())
+      {
+        genCodeLine ("    if (token != jj_window_token || jj_window_count == 0)");
+        genCodeLine ("      jj_window_sync();");
+        genCodeLine ("    token = jj_window[jj_window_pos];");
+        genCodeLine ("    jj_ntk = -1;");
+      }
+      else
+      {
+        genCodeLine ("    if (token.next != null)");
+        genCodeLine ("      token = token.next;");
+        genCodeLine ("    else {");
+        genCodeLine ("      token.next = token_source.getNextToken();");
+        genCodeLine ("      token = token.next;");
+        genCodeLine ("    }");
+        genCodeLine ("    jj_ntk = -1;");
+      }
+    genCodeLine ("    if (token.kind == kind) {");
+    if (Options.isTokenWindow ())
     {
-      genCodeLine ("    if (token.next != null)");
-      genCodeLine ("      token = token.next;");
-      genCodeLine ("    else {");
-      genCodeLine ("      token.next = token_source.getNextToken();");
-      genCodeLine ("      token = token.next;");
-      genCodeLine ("    }");
-      genCodeLine ("    jj_ntk = -1;");
+      genCodeLine ("      jj_window_token = token;");
+      genCodeLine ("      jj_window_pos = (jj_window_pos + 1) & jj_window_mask;");
+      genCodeLine ("      jj_window_count--;");
     }
-    genCodeLine ("    if (token.kind == kind) {");
     if (Options.isErrorReporting ())
     {
       genCodeLine ("      jj_gen++;");
-      if (s_jj2index != 0)
+      if (s_jj2index != 0 && !Options.isDeferredErrorReporting ())
       {
         genCodeLine ("      if (++jj_gc > 100) {");
         genCodeLine ("        jj_gc = 0;");
@@ -755,6 +915,11 @@ public class ParseGenJava extends CodeGenerator
         genCodeLine ("      }");
       }
     }
+    if (s_jj2index != 0 && Options.isMemoizeLookahead ())
+    {
+      genCodeLine ("      if ((++jj_memo_pos & (JJ_MEMO_SIZE - 1)) == 0)");
+      genCodeLine ("        jj_memo_drop();");
+    }
     if (Options.isDebugParser ())
     {
       genCodeLine ("      trace_token(token, \"\");");
@@ -775,14 +940,41 @@ public class ParseGenJava extends CodeGenerator
     genCodeNewLine ();
     if (s_jj2index != 0)
     {
-      genCodeLine ("  @SuppressWarnings(\"serial\")");
-      genCodeLine ("  private static final class LookaheadSuccess extends IllegalStateException { }");
-      genCodeLine ("  private final LookaheadSuccess jj_ls = new LookaheadSuccess();");
+      if (Options.isMemoizeLookahead ())
+        _genMemoizeLookahead ();
+      if (s_staticLookaheadCount != 0 || s_adaptiveLookaheadCount != 0)
+      {
+        // Used by the static predictions and the lookahead DFAs
+        genCodeLine ("  private int jj_next_kind() {");
+        genCodeLine ("	 jj_la--;");
+        if (Options.isTokenWindow ())
+        {
+          genCodeLine ("	 jj_lastpos = jj_lastpos.next != null ? jj_lastpos.next : jj_window_next(jj_lastpos);");
+        }
+        else
+        {
+          genCodeLine ("	 if (jj_lastpos.next == null) {");
+          genCodeLine ("	   jj_lastpos = jj_lastpos.next = token_source.getNextToken();");
+          genCodeLine ("	 } else {");
+          genCodeLine ("	   jj_lastpos = jj_lastpos.next;");
+          genCodeLine ("	 }");
+        }
+        genCodeLine ("	 return jj_lastpos.kind;");
+        genCodeLine ("  }");
+        genCodeNewLine ();
+      }
+      if (s_adaptiveLookaheadCount != 0)
+        _genLookaheadDfa ();
       genCodeLine ("  private " + eOutputLanguage.getTypeBoolean () + " jj_scan_token(int kind) {");
+      // Don't scan beyond the lookahead limit
+      genCodeLine ("	 if (jj_done) return true;");
       genCodeLine ("	 if (jj_scanpos == jj_lastpos) {");
       genCodeLine ("	   jj_la--;");
       genCodeLine ("	   if (jj_scanpos.next == null) {");
-      genCodeLine ("		   jj_lastpos = jj_scanpos = jj_scanpos.next = token_source.getNextToken();");
+      if (Options.isTokenWindow ())
+        genCodeLine ("		   jj_lastpos = jj_scanpos = jj_window_next(jj_scanpos);");
+      else
+        genCodeLine ("		   jj_lastpos = jj_scanpos = jj_scanpos.next = token_source.getNextToken();");
       genCodeLine ("	   } else {");
       genCodeLine ("		   jj_lastpos = jj_scanpos = jj_scanpos.next;");
       genCodeLine ("	   }");
@@ -808,7 +1000,7 @@ public class ParseGenJava extends CodeGenerator
           genCodeLine ("	 trace_scan(jj_scanpos, kind);");
         }
       genCodeLine ("	 if (jj_scanpos.kind != kind) return true;");
-      genCodeLine ("	 if (jj_la == 0 && jj_scanpos == jj_lastpos) throw jj_ls;");
+      genCodeLine ("	 if (jj_la == 0 && jj_scanpos == jj_lastpos) return jj_done = true;");
       genCodeLine ("	 return false;");
       genCodeLine ("  }");
       genCodeNewLine ();
@@ -827,17 +1019,32 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("     jj_nt = jj_nt.next = token_source.getNextToken();");
     }
     else
-    {
-      genCodeLine ("   if (token.next != null)");
-      genCodeLine ("     token = token.next;");
-      genCodeLine ("   else");
-      genCodeLine ("     token = token.next = token_source.getNextToken();");
-      genCodeLine ("	 jj_ntk = -1;");
-    }
+      if (Options.isTokenWindow ())
+      {
+        genCodeLine ("   if (token != jj_window_token || jj_window_count == 0)");
+        genCodeLine ("     jj_window_sync();");
+        genCodeLine ("   token = jj_window_token = jj_window[jj_window_pos];");
+        genCodeLine ("   jj_window_pos = (jj_window_pos + 1) & jj_window_mask;");
+        genCodeLine ("   jj_window_count--;");
+        genCodeLine ("	 jj_ntk = -1;");
+      }
+      else
+      {
+        genCodeLine ("   if (token.next != null)");
+        genCodeLine ("     token = token.next;");
+        genCodeLine ("   else");
+        genCodeLine ("     token = token.next = token_source.getNextToken();");
+        genCodeLine ("	 jj_ntk = -1;");
+      }
     if (Options.isErrorReporting ())
     {
       genCodeLine ("	 jj_gen++;");
     }
+    if (s_jj2index != 0 && Options.isMemoizeLookahead ())
+    {
+      genCodeLine ("	 if ((++jj_memo_pos & (JJ_MEMO_SIZE - 1)) == 0)");
+      genCodeLine ("	   jj_memo_drop();");
+    }
     if (Options.isDebugParser ())
     {
       genCodeLine ("	   trace_token(token, \" (in getNextToken)\");");
@@ -850,18 +1057,66 @@ public class ParseGenJava extends CodeGenerator
     genCodeLine ("   * @return the specific Token.");
     genCodeLine ("   */");
     genCodeLine ("  public final Token getToken(final int index) {");
-    if (s_lookaheadNeeded)
-      genCodeLine ("    Token t = jj_lookingAhead ? jj_scanpos : token;");
+    if (Options.isTokenWindow ())
+    {
+      if (s_lookaheadNeeded)
+      {
+        genCodeLine ("    if (jj_lookingAhead) {");
+        genCodeLine ("      Token t = jj_scanpos;");
+        genCodeLine ("      for (int i = 0; i < index; i++)");
+        genCodeLine ("        t = t.next != null ? t.next : jj_window_next(t);");
+        genCodeLine ("      return t;");
+        genCodeLine ("    }");
+      }
+      genCodeLine ("    if (index <= 0)");
+      genCodeLine ("      return token;");
+      genCodeLine ("    if (token != jj_window_token || jj_window_count == 0)");
+      genCodeLine ("      jj_window_sync();");
+      genCodeLine ("    while (jj_window_count < index)");
+      genCodeLine ("      jj_window_fill();");
+      genCodeLine ("    return jj_window[(jj_window_pos + index - 1) & jj_window_mask];");
+    }
     else
-      genCodeLine ("    Token t = token;");
-    genCodeLine ("    for (int i = 0; i < index; i++) {");
-    genCodeLine ("      if (t.next == null)");
-    genCodeLine ("        t.next = token_source.getNextToken();");
-    genCodeLine ("      t = t.next;");
-    genCodeLine ("    }");
-    genCodeLine ("    return t;");
+    {
+      if (s_lookaheadNeeded)
+        genCodeLine ("    Token t = jj_lookingAhead ? jj_scanpos : token;");
+      else
+        genCodeLine ("    Token t = token;");
+      genCodeLine ("    for (int i = 0; i < index; i++) {");
+      genCodeLine ("      if (t.next == null)");
+      genCodeLine ("        t.next = token_source.getNextToken();");
+      genCodeLine ("      t = t.next;");
+      genCodeLine ("    }");
+      genCodeLine ("    return t;");
+    }
     genCodeLine ("  }");
     genCodeNewLine ();
+    if (s_operatorsCount != 0)
+    {
+      genCodeLine ("  /** Push an OPERATORS operator right after its token was consumed */");
+      genCodeLine ("  private void jj_op_push(final int op) {");
+      genCodeLine ("    if (jj_op_sp == jj_op_stack.length) {");
+      genCodeLine ("      jj_op_stack = java.util.Arrays.copyOf(jj_op_stack, jj_op_sp * 2);");
+      genCodeLine ("      jj_op_tokens = java.util.Arrays.copyOf(jj_op_tokens, jj_op_sp * 2);");
+      genCodeLine ("    }");
+      genCodeLine ("    jj_op_tokens[jj_op_sp] = token;");
+      genCodeLine ("    jj_op_stack[jj_op_sp++] = op;");
+      genCodeLine ("  }");
+      genCodeNewLine ();
+    }
+    if (Options.isTokenWindow ())
+    {
+      _genTokenWindow ();
+      genCodeLine ("  private int jj_ntk_f() {");
+      genCodeLine ("    if (token != jj_window_token || jj_window_count == 0)");
+      genCodeLine ("      jj_window_sync();");
+      genCodeLine ("    jj_nt = jj_window[jj_window_pos];");
+      genCodeLine ("    // Always the current kind - user code may retype upcoming tokens");
+      genCodeLine ("    return jj_ntk = jj_nt.kind;");
+      genCodeLine ("  }");
+      genCodeNewLine ();
+    }
+    else
     if (!Options.isCacheTokens ())
     {
       genCodeLine ("  private int jj_ntk_f() {");
@@ -997,10 +1252,20 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("  final Token errortok = token.next;");
       if (Options.isKeepLineColumn ())
       {
-        genCodeLine ("  final int line = errortok.beginLine;");
-        genCodeLine ("  final int column = errortok.beginColumn;");
+        if (Options.isLazyLineColumn ())
+        {
+          genCodeLine ("  final int line = errortok.getBeginLine();");
+          genCodeLine ("  final int column = errortok.getBeginColumn();");
+        }
+        else
+        {
+          genCodeLine ("  final int line = errortok.beginLine;");
+          genCodeLine ("  final int column = errortok.beginColumn;");
+        }
       }
-      genCodeLine ("  final String mess = errortok.kind == 0 ? tokenImage[0] : errortok.image;");
+      genCodeLine ("  final String mess = errortok.kind == 0 ? tokenImage[0] : errortok." +
+                   (Options.isLazyTokenImage () ? "getImage()" : "image") +
+                   ";");
       if (Options.isKeepLineColumn ())
       {
         genCodeLine ("  return new ParseException(" +
@@ -1065,20 +1330,26 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("    }");
       genCodeLine ("  }");
       genCodeNewLine ();
+      final String sImage = Options.isLazyTokenImage () ? "getImage()" : "image";
+      final String sBeginLine = Options.isLazyLineColumn () ? "getBeginLine()" : "beginLine";
+      final String sBeginColumn = Options.isLazyLineColumn () ? "getBeginColumn()" : "beginColumn";
       genCodeLine ("  protected void trace_token(Token t, String where) {");
       genCodeLine ("    if (trace_enabled) {");
       genCodeLine ("      for (int i = 0; i < trace_indent; i++) {");
       genCodeLine ("        tracePS.print(\" \");");
       genCodeLine ("      }");
       genCodeLine ("      tracePS.print(\"Consumed token: <\" + tokenImage[t.kind]);");
-      genCodeLine ("      if (t.kind != 0 && !tokenImage[t.kind].equals(\"\\\"\" + t.image + \"\\\"\")) {");
+      genCodeLine ("      if (t.kind != 0 && !tokenImage[t.kind].equals(\"\\\"\" + t." + sImage + " + \"\\\"\")) {");
       genCodeLine ("        tracePS.print(\": \\\"\" + " +
                    Options.getTokenMgrErrorClass () +
                    ".addEscapes(" +
-                   "t.image) + \"\\\"\");");
+                   "t." + sImage + ") + \"\\\"\");");
       genCodeLine ("      }");
-      genCodeLine ("      tracePS.println(\" at line \" + t.beginLine + " +
-                   "\" column \" + t.beginColumn + \">\" + where);");
+      genCodeLine ("      tracePS.println(\" at line \" + t." +
+                   sBeginLine +
+                   " + \" column \" + t." +
+                   sBeginColumn +
+                   " + \">\" + where);");
       genCodeLine ("    }");
       genCodeLine ("  }");
       genCodeNewLine ();
@@ -1086,14 +1357,17 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("    if (trace_enabled) {");
       genCodeLine ("      for (int i = 0; i < trace_indent; i++) { tracePS.print(\" \"); }");
       genCodeLine ("      tracePS.print(\"Visited token: <\" + tokenImage[t1.kind]);");
-      genCodeLine ("      if (t1.kind != 0 && !tokenImage[t1.kind].equals(\"\\\"\" + t1.image + \"\\\"\")) {");
+      genCodeLine ("      if (t1.kind != 0 && !tokenImage[t1.kind].equals(\"\\\"\" + t1." + sImage + " + \"\\\"\")) {");
       genCodeLine ("        tracePS.print(\": \\\"\" + " +
                    Options.getTokenMgrErrorClass () +
                    ".addEscapes(" +
-                   "t1.image) + \"\\\"\");");
+                   "t1." + sImage + ") + \"\\\"\");");
       genCodeLine ("      }");
-      genCodeLine ("      tracePS.println(\" at line \" + t1.beginLine + \"" +
-                   " column \" + t1.beginColumn + \">; Expected token: <\" + tokenImage[t2] + \">\");");
+      genCodeLine ("      tracePS.println(\" at line \" + t1." +
+                   sBeginLine +
+                   " + \" column \" + t1." +
+                   sBeginColumn +
+                   " + \">; Expected token: <\" + tokenImage[t2] + \">\");");
       genCodeLine ("    }");
       genCodeLine ("  }");
       genCodeNewLine ();
@@ -1115,29 +1389,34 @@ public class ParseGenJava extends CodeGenerator
       genCodeNewLine ();
     }
 
+    if (s_jj2index != 0 && Options.isDeferredErrorReporting ())
+    {
+      _genDeferredLookaheadCalls ();
+    }
+    else
     if (s_jj2index != 0 && Options.isErrorReporting ())
     {
       genCodeLine ("  private void jj_rescan_token() {");
       genCodeLine ("    jj_rescan = true;");
       genCodeLine ("    for (int i = 0; i < " + s_jj2index + "; i++) {");
-      genCodeLine ("      try {");
-      genCodeLine ("        JJCalls p = jj_2_rtns[i];");
-      genCodeLine ("        do {");
-      genCodeLine ("          if (p.gen > jj_gen) {");
-      genCodeLine ("            jj_la = p.arg;");
-      genCodeLine ("            jj_scanpos = p.first;");
-      genCodeLine ("            jj_lastpos = p.first;");
-      genCodeLine ("            switch (i) {");
+      genCodeLine ("      jj_done = false;");
+      genCodeLine ("      JJCalls p = jj_2_rtns[i];");
+      genCodeLine ("      do {");
+      genCodeLine ("        if (p.gen > jj_gen) {");
+      genCodeLine ("          jj_la = p.arg;");
+      genCodeLine ("          jj_scanpos = p.first;");
+      genCodeLine ("          jj_lastpos = p.first;");
+      genCodeLine ("          switch (i) {");
       for (int i = 0; i < s_jj2index; i++)
       {
-        genCodeLine ("              case " + i + ": jj_3_" + (i + 1) + "(); break;");
+        genCodeLine ("            case " + i + ": jj_3_" + (i + 1) + "(); break;");
       }
-      genCodeLine ("            }");
       genCodeLine ("          }");
-      genCodeLine ("          p = p.next;");
-      genCodeLine ("        } while (p != null);");
-      genCodeLine ("      } catch(LookaheadSuccess ls) { /* ignore */ }");
+      genCodeLine ("        }");
+      genCodeLine ("        p = p.next;");
+      genCodeLine ("      } while (p != null && !jj_done);");
       genCodeLine ("    }");
+      genCodeLine ("    jj_done = false;");
       genCodeLine ("    jj_rescan = false;");
       genCodeLine ("  }");
       genCodeNewLine ();
@@ -1156,9 +1435,21 @@ public class ParseGenJava extends CodeGenerator
       genCodeLine ("    p.arg = xla;");
       genCodeLine ("  }");
       genCodeNewLine ();
+      genCodeLine ("  private void jj_calls_clear() {");
+      genCodeLine ("    for (int i = 0; i < jj_2_rtns.length; i++) {");
+      genCodeLine ("      if (jj_2_rtns[i] == null)");
+      genCodeLine ("        jj_2_rtns[i] = new JJCalls();");
+      genCodeLine ("      // Reuse the calls of the previous input");
+      genCodeLine ("      for (JJCalls c = jj_2_rtns[i]; c != null; c = c.next) {");
+      genCodeLine ("        c.gen = 0;");
+      genCodeLine ("        c.first = null;");
+      genCodeLine ("      }");
+      genCodeLine ("    }");
+      genCodeLine ("  }");
+      genCodeNewLine ();
     }
 
-    if (s_jj2index != 0 && Options.isErrorReporting ())
+    if (s_jj2index != 0 && Options.isErrorReporting () && !Options.isDeferredErrorReporting ())
     {
       genCodeLine ("  static final class JJCalls {");
       genCodeLine ("	 int gen;");
@@ -1169,6 +1460,24 @@ public class ParseGenJava extends CodeGenerator
       genCodeNewLine ();
     }
 
+    if (s_adaptiveLookaheadCount != 0)
+    {
+      genCodeLine ("  static final class JJDfaState {");
+      genCodeLine ("	 static final JJDfaState[] NONE = new JJDfaState[0];");
+      genCodeLine ("	 /** The token kind of the transition to this state */");
+      genCodeLine ("	 final int kind;");
+      genCodeLine ("	 /** The result of the lookahead or JJ_DFA_UNKNOWN if more tokens are needed */");
+      genCodeLine ("	 final int result;");
+      genCodeLine ("	 /** Only replaced, never modified */");
+      genCodeLine ("	 volatile JJDfaState[] next = NONE;");
+      genCodeLine ("	 JJDfaState(final int kind, final int result) {");
+      genCodeLine ("	   this.kind = kind;");
+      genCodeLine ("	   this.result = result;");
+      genCodeLine ("	 }");
+      genCodeLine ("  }");
+      genCodeNewLine ();
+    }
+
     if (s_cu_from_insertion_point_2.size () != 0)
     {
       printTokenSetup (s_cu_from_insertion_point_2.get (0));
@@ -1186,6 +1495,378 @@ public class ParseGenJava extends CodeGenerator
     saveOutput (Options.getOutputDirectory () + File.separator + s_cu_name + getFileExtension ());
   }
 
+  /**
+   * Generate ReInit for an input that is kept in memory. The reader is reused
+   * like the buffers of the char stream and the lookahead state, so a parser
+   * can be reused for many short inputs without allocations except for the
+   * tokens. It is only needed by the options PARSER_POOL, which adds a parser
+   * per thread, and BATCH_PARSER.
+   */
+  private void _genCharSequenceReInit ()
+  {
+    genCodeNewLine ();
+    genCodeLine ("  private JJCharSequenceReader jj_reader;");
+    genCodeNewLine ();
+    genCodeLine ("  /**");
+    genCodeLine ("   * Reinitialise with an input that is kept in memory.");
+    genCodeLine ("   * @param input the input to parse");
+    genCodeLine ("   */");
+    genCodeLine ("  public void ReInit(final CharSequence input) {");
+    genCodeLine ("    if (jj_reader == null)");
+    genCodeLine ("      jj_reader = new JJCharSequenceReader();");
+    genCodeLine ("    jj_reader.reset(input);");
+    genCodeLine ("    ReInit(jj_reader);");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  static final class JJCharSequenceReader extends java.io.Reader {");
+    genCodeLine ("    private CharSequence input = \"\";");
+    genCodeLine ("    private int pos;");
+    genCodeNewLine ();
+    genCodeLine ("    void reset(final CharSequence s) {");
+    genCodeLine ("      input = s;");
+    genCodeLine ("      pos = 0;");
+    genCodeLine ("    }");
+    genCodeNewLine ();
+    genCodeLine ("    @Override");
+    genCodeLine ("    public int read(final char[] buf, final int off, final int len) {");
+    genCodeLine ("      final int n = Math.min(len, input.length() - pos);");
+    genCodeLine ("      if (n <= 0)");
+    genCodeLine ("        return len == 0 ? 0 : -1;");
+    genCodeLine ("      if (input instanceof String)");
+    genCodeLine ("        ((String) input).getChars(pos, pos + n, buf, off);");
+    genCodeLine ("      else");
+    genCodeLine ("        for (int i = 0; i < n; i++)");
+    genCodeLine ("          buf[off + i] = input.charAt(pos + i);");
+    genCodeLine ("      pos += n;");
+    genCodeLine ("      return n;");
+    genCodeLine ("    }");
+    genCodeNewLine ();
+    genCodeLine ("    @Override");
+    genCodeLine ("    public void close() {");
+    genCodeLine ("      // Release the input - the char stream closes the reader at the end of the input");
+    genCodeLine ("      reset(\"\");");
+    genCodeLine ("    }");
+    genCodeLine ("  }");
+    if (Options.isParserPool ())
+    {
+      genCodeNewLine ();
+      genCodeLine ("  private static final ThreadLocal<" + s_cu_name + "> jj_thread_parser = new ThreadLocal<" + s_cu_name + ">();");
+      genCodeNewLine ();
+      genCodeLine ("  /**");
+      genCodeLine ("   * Get the parser of the current thread. It is created on the first call");
+      genCodeLine ("   * and reinitialised by every call, so it must not be used any more after");
+      genCodeLine ("   * the next call in the same thread.");
+      genCodeLine ("   * @param input the input to parse");
+      genCodeLine ("   * @return the parser of the current thread");
+      genCodeLine ("   */");
+      genCodeLine ("  public static " + s_cu_name + " forThread(final CharSequence input) {");
+      genCodeLine ("    " + s_cu_name + " parser = jj_thread_parser.get();");
+      genCodeLine ("    if (parser == null) {");
+      genCodeLine ("      parser = new " + s_cu_name + "(new JJCharSequenceReader());");
+      genCodeLine ("      jj_thread_parser.set(parser);");
+      genCodeLine ("    }");
+      genCodeLine ("    parser.ReInit(input);");
+      genCodeLine ("    return parser;");
+      genCodeLine ("  }");
+    }
+  }
+
+  /**
+   * Generate the methods of the ring buffer for option TOKEN_WINDOW. The window
+   * contains the tokens after the current token that were already read, so
+   * the tokens are still linked like without the window. If the current token
+   * is changed by user code the window is read again from the current token.
+   */
+  private void _genTokenWindow ()
+  {
+    genCodeLine ("  private void jj_window_sync() {");
+    genCodeLine ("    if (token != jj_window_token) {");
+    genCodeLine ("      // The current token was changed by user code or ReInit");
+    genCodeLine ("      jj_window_token = token;");
+    genCodeLine ("      jj_window_count = 0;");
+    genCodeLine ("    }");
+    genCodeLine ("    if (jj_window_count == 0)");
+    genCodeLine ("      jj_window_fill();");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  /** Append the token after the last token of the window. */");
+    genCodeLine ("  private void jj_window_fill() {");
+    genCodeLine ("    final Token last = jj_window_count == 0 ? jj_window_token : jj_window[(jj_window_pos + jj_window_count - 1) & jj_window_mask];");
+    genCodeLine ("    if (last.next == null)");
+    genCodeLine ("      last.next = token_source.getNextToken();");
+    genCodeLine ("    if (jj_window_count == jj_window.length) {");
+    genCodeLine ("      final int size = jj_window.length * 2;");
+    genCodeLine ("      final Token[] window = new Token[size];");
+    genCodeLine ("      for (int i = 0; i < jj_window_count; i++)");
+    genCodeLine ("        window[i] = jj_window[(jj_window_pos + i) & jj_window_mask];");
+    genCodeLine ("      jj_window = window;");
+    genCodeLine ("      jj_window_mask = size - 1;");
+    genCodeLine ("      jj_window_pos = 0;");
+    genCodeLine ("    }");
+    genCodeLine ("    final int i = (jj_window_pos + jj_window_count) & jj_window_mask;");
+    genCodeLine ("    jj_window[i] = last.next;");
+    genCodeLine ("    jj_window_count++;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  /** @return the token after the passed token that was not read yet */");
+    genCodeLine ("  private Token jj_window_next(final Token t) {");
+    genCodeLine ("    if (token != jj_window_token || jj_window_count == 0)");
+    genCodeLine ("      jj_window_sync();");
+    genCodeLine ("    while (t.next == null)");
+    genCodeLine ("      jj_window_fill();");
+    genCodeLine ("    return t.next;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  private void jj_window_clear() {");
+    genCodeLine ("    java.util.Arrays.fill(jj_window, null);");
+    genCodeLine ("    jj_window_token = null;");
+    genCodeLine ("    jj_window_pos = 0;");
+    genCodeLine ("    jj_window_count = 0;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+  }
+
+  /**
+   * Generate the lookahead log for option DEFERRED_ERROR_REPORTING. Instead of
+   * keeping a list of calls per lookahead that is swept while tokens are
+   * consumed, every call is appended to a log. The calls that ended before the
+   * current token can't contribute to an error message, so they are only
+   * dropped when the log is full. The log is rescanned in the same order as
+   * the lists, so the error messages are the same.<br>
+   * Most calls fail at the first token. These are only relevant until the next
+   * token is consumed, so like <code>jj_la1</code> they only store the current
+   * generation per lookahead and don't enter the log. Calls that scanned
+   * nothing are never relevant and are not stored at all.
+   */
+  private void _genDeferredLookaheadCalls ()
+  {
+    genCodeLine ("  private void jj_rescan_token() {");
+    genCodeLine ("    jj_rescan = true;");
+    genCodeLine ("    for (int i = 0; i < " + s_jj2index + "; i++) {");
+    genCodeLine ("      jj_done = false;");
+    genCodeLine ("      for (int c = 0; c < jj_calls_count && !jj_done; c++) {");
+    genCodeLine ("        if (jj_calls_index[c] == i && jj_calls_gen[c] > jj_gen)");
+    genCodeLine ("          jj_rescan_call(i, jj_calls_arg[c], jj_calls_first[c]);");
+    genCodeLine ("      }");
+    genCodeLine ("      if (jj_2_gen[i] == jj_gen && !jj_done)");
+    genCodeLine ("        jj_rescan_call(i, jj_2_arg[i], token);");
+    genCodeLine ("    }");
+    genCodeLine ("    jj_done = false;");
+    genCodeLine ("    jj_rescan = false;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  private void jj_rescan_call(int index, int xla, Token first) {");
+    genCodeLine ("    jj_la = xla;");
+    genCodeLine ("    jj_scanpos = first;");
+    genCodeLine ("    jj_lastpos = first;");
+    genCodeLine ("    switch (index) {");
+    for (int i = 0; i < s_jj2index; i++)
+    {
+      genCodeLine ("      case " + i + ": jj_3_" + (i + 1) + "(); break;");
+    }
+    genCodeLine ("    }");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  private void jj_save(int index, int xla) {");
+    genCodeLine ("    final int scanned = xla - jj_la;");
+    genCodeLine ("    if (scanned <= 0)");
+    genCodeLine ("      return;");
+    genCodeLine ("    if (scanned == 1 && jj_2_gen[index] != jj_gen) {");
+    genCodeLine ("      // Only relevant until the next token is consumed");
+    genCodeLine ("      jj_2_gen[index] = jj_gen;");
+    genCodeLine ("      jj_2_arg[index] = xla;");
+    genCodeLine ("      return;");
+    genCodeLine ("    }");
+    genCodeLine ("    if (jj_calls_count == jj_calls_index.length)");
+    genCodeLine ("      jj_calls_compact();");
+    genCodeLine ("    final int c = jj_calls_count++;");
+    genCodeLine ("    jj_calls_index[c] = index;");
+    genCodeLine ("    jj_calls_gen[c] = jj_gen + scanned;");
+    genCodeLine ("    jj_calls_arg[c] = xla;");
+    genCodeLine ("    jj_calls_first[c] = token;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  private void jj_calls_compact() {");
+    genCodeLine ("    // Keep the calls that scanned beyond the current token");
+    genCodeLine ("    int n = 0;");
+    genCodeLine ("    for (int c = 0; c < jj_calls_count; c++) {");
+    genCodeLine ("      if (jj_calls_gen[c] > jj_gen) {");
+    genCodeLine ("        jj_calls_index[n] = jj_calls_index[c];");
+    genCodeLine ("        jj_calls_gen[n] = jj_calls_gen[c];");
+    genCodeLine ("        jj_calls_arg[n] = jj_calls_arg[c];");
+    genCodeLine ("        jj_calls_first[n] = jj_calls_first[c];");
+    genCodeLine ("        n++;");
+    genCodeLine ("      }");
+    genCodeLine ("    }");
+    genCodeLine ("    for (int c = n; c < jj_calls_count; c++)");
+    genCodeLine ("      jj_calls_first[c] = null;");
+    genCodeLine ("    jj_calls_count = n;");
+    genCodeLine ("    if (n > jj_calls_index.length / 2) {");
+    genCodeLine ("      final int size = jj_calls_index.length * 2;");
+    genCodeLine ("      jj_calls_index = java.util.Arrays.copyOf(jj_calls_index, size);");
+    genCodeLine ("      jj_calls_gen = java.util.Arrays.copyOf(jj_calls_gen, size);");
+    genCodeLine ("      jj_calls_arg = java.util.Arrays.copyOf(jj_calls_arg, size);");
+    genCodeLine ("      jj_calls_first = java.util.Arrays.copyOf(jj_calls_first, size);");
+    genCodeLine ("    }");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  private void jj_calls_clear() {");
+    genCodeLine ("    for (int c = 0; c < jj_calls_count; c++)");
+    genCodeLine ("      jj_calls_first[c] = null;");
+    genCodeLine ("    jj_calls_count = 0;");
+    genCodeLine ("    for (int i = 0; i < " + s_jj2index + "; i++)");
+    genCodeLine ("      jj_2_gen[i] = -1;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+  }
+
+  /**
+   * Generate the table for option MEMOIZE_LOOKAHEAD that stores the results of
+   * the phase 3 routines of the productions. It is a direct mapped cache keyed
+   * by the routine and the token at which it started. Results are only stored
+   * and used if the lookahead has no limit, because only then they don't depend
+   * on the tokens scanned before. Like the JJCalls of the error reporting the
+   * entries store the position of the last scanned token, so the entries of
+   * consumed tokens can be dropped regularly - otherwise they would keep all
+   * tokens after their start token reachable.
+   */
+  private void _genMemoizeLookahead ()
+  {
+    final EOutputLanguage eOutputLanguage = getOutputLanguage ();
+    genCodeLine ("  private static final int JJ_MEMO_SIZE = " + MEMO_SIZE + ";");
+    genCodeLine ("  private static final int JJ_MEMO_NONE = 0;");
+    genCodeLine ("  private static final int JJ_MEMO_FAIL = 1;");
+    genCodeLine ("  private static final int JJ_MEMO_SUCCESS = 2;");
+    genCodeLine ("  // Routine, start token, end token (null for failure), last scanned token and its position");
+    genCodeLine ("  private final int[] jj_memo_rtn = new int[JJ_MEMO_SIZE];");
+    genCodeLine ("  private final Token[] jj_memo_start = new Token[JJ_MEMO_SIZE];");
+    genCodeLine ("  private final Token[] jj_memo_end = new Token[JJ_MEMO_SIZE];");
+    genCodeLine ("  private final Token[] jj_memo_last = new Token[JJ_MEMO_SIZE];");
+    genCodeLine ("  private final int[] jj_memo_last_pos = new int[JJ_MEMO_SIZE];");
+    genCodeLine ("  /** The position of the current token - the number of consumed tokens */");
+    genCodeLine ("  private int jj_memo_pos;");
+    genCodeNewLine ();
+    genCodeLine ("  private static int jj_memo_index(int rtn, Token start) {");
+    genCodeLine ("    return (System.identityHashCode(start) * 31 + rtn) & (JJ_MEMO_SIZE - 1);");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  private int jj_memo_get(int rtn) {");
+    genCodeLine ("    if (jj_la < " + MEMO_MIN_LA + (Options.isErrorReporting () ? " || jj_rescan" : "") + ")");
+    genCodeLine ("      return JJ_MEMO_NONE;");
+    genCodeLine ("    final int i = jj_memo_index(rtn, jj_scanpos);");
+    genCodeLine ("    if (jj_memo_start[i] != jj_scanpos || jj_memo_rtn[i] != rtn)");
+    genCodeLine ("      return JJ_MEMO_NONE;");
+    genCodeLine ("    // Advance the last scanned token like the scan did");
+    genCodeLine ("    final Token last = jj_memo_last[i];");
+    genCodeLine ("    Token t = jj_scanpos;");
+    genCodeLine ("    while (t != jj_lastpos && t != last) t = t.next;");
+    genCodeLine ("    for (; t != last; t = t.next) {");
+    genCodeLine ("      jj_la--;");
+    genCodeLine ("      jj_lastpos = t.next;");
+    genCodeLine ("    }");
+    genCodeLine ("    if (jj_memo_end[i] == null)");
+    genCodeLine ("      return JJ_MEMO_FAIL;");
+    genCodeLine ("    jj_scanpos = jj_memo_end[i];");
+    genCodeLine ("    return JJ_MEMO_SUCCESS;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  private " +
+                 eOutputLanguage.getTypeBoolean () +
+                 " jj_memo_put(int rtn, Token start, " +
+                 eOutputLanguage.getTypeBoolean () +
+                 " failed) {");
+    genCodeLine ("    if (!jj_done && jj_la >= " + MEMO_MIN_LA + (Options.isErrorReporting () ? " && !jj_rescan" : "") + ") {");
+    genCodeLine ("      final int i = jj_memo_index(rtn, start);");
+    genCodeLine ("      jj_memo_rtn[i] = rtn;");
+    genCodeLine ("      jj_memo_start[i] = start;");
+    genCodeLine ("      jj_memo_end[i] = failed ? null : jj_scanpos;");
+    genCodeLine ("      jj_memo_last[i] = jj_lastpos;");
+    genCodeLine ("      // Lookaheads without limit start with jj_la = Integer.MAX_VALUE");
+    genCodeLine ("      jj_memo_last_pos[i] = jj_memo_pos + (Integer.MAX_VALUE - jj_la);");
+    genCodeLine ("    }");
+    genCodeLine ("    return failed;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  private void jj_memo_clear() {");
+    genCodeLine ("    java.util.Arrays.fill(jj_memo_start, null);");
+    genCodeLine ("    java.util.Arrays.fill(jj_memo_end, null);");
+    genCodeLine ("    java.util.Arrays.fill(jj_memo_last, null);");
+    genCodeLine ("    jj_memo_pos = 0;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  /** Drop the entries of which all scanned tokens were consumed. */");
+    genCodeLine ("  private void jj_memo_drop() {");
+    genCodeLine ("    for (int i = 0; i < JJ_MEMO_SIZE; i++)");
+    genCodeLine ("      if (jj_memo_start[i] != null && jj_memo_last_pos[i] - jj_memo_pos < 0) {");
+    genCodeLine ("        jj_memo_start[i] = null;");
+    genCodeLine ("        jj_memo_end[i] = null;");
+    genCodeLine ("        jj_memo_last[i] = null;");
+    genCodeLine ("      }");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+  }
+
+  /**
+   * Generate the methods for option ADAPTIVE_LOOKAHEAD that walk and extend the
+   * lookahead DFAs. The result of a scan only depends on the kinds of the
+   * scanned tokens, so it is recorded as a path of these kinds. The DFAs are
+   * read without locking. They only grow by replacing the array of the next
+   * states of a state, so a reader either sees the old or the new array.
+   */
+  private void _genLookaheadDfa ()
+  {
+    final EOutputLanguage eOutputLanguage = getOutputLanguage ();
+    genCodeLine ("  private int jj_dfa_predict(int i) {");
+    genCodeLine ("	 JJDfaState s = jj_dfa[i];");
+    genCodeLine ("	 while (s.result == JJ_DFA_UNKNOWN) {");
+    genCodeLine ("	   final int kind = jj_next_kind();");
+    genCodeLine ("	   JJDfaState n = null;");
+    genCodeLine ("	   for (final JJDfaState x : s.next) {");
+    genCodeLine ("	     if (x.kind == kind) { n = x; break; }");
+    genCodeLine ("	   }");
+    genCodeLine ("	   if (n == null) return JJ_DFA_UNKNOWN;");
+    genCodeLine ("	   s = n;");
+    genCodeLine ("	 }");
+    genCodeLine ("	 return s.result;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+    genCodeLine ("  private " +
+                 eOutputLanguage.getTypeBoolean () +
+                 " jj_dfa_add(int i, " +
+                 eOutputLanguage.getTypeBoolean () +
+                 " success) {");
+    genCodeLine ("	 int depth = 0;");
+    genCodeLine ("	 for (Token t = token; t != jj_lastpos; t = t.next) {");
+    genCodeLine ("	   if (++depth > JJ_DFA_MAX_DEPTH) return success;");
+    genCodeLine ("	 }");
+    genCodeLine ("	 if (depth == 0) return success;");
+    genCodeLine ("	 final JJDfaState start = jj_dfa[i];");
+    genCodeLine ("	 synchronized (start) {");
+    genCodeLine ("	   JJDfaState s = start;");
+    genCodeLine ("	   for (Token t = token.next; s.result == JJ_DFA_UNKNOWN; t = t.next) {");
+    genCodeLine ("	     final JJDfaState[] next = s.next;");
+    genCodeLine ("	     JJDfaState n = null;");
+    genCodeLine ("	     for (final JJDfaState x : next) {");
+    genCodeLine ("	       if (x.kind == t.kind) { n = x; break; }");
+    genCodeLine ("	     }");
+    genCodeLine ("	     if (n == null) {");
+    genCodeLine ("	       if (jj_dfa_states[i] == JJ_DFA_MAX_STATES) break;");
+    genCodeLine ("	       jj_dfa_states[i]++;");
+    genCodeLine ("	       n = new JJDfaState(t.kind, t != jj_lastpos ? JJ_DFA_UNKNOWN : success ? JJ_DFA_SUCCESS : JJ_DFA_FAILURE);");
+    genCodeLine ("	       // Copy on write - readers don't lock");
+    genCodeLine ("	       final JJDfaState[] grown = java.util.Arrays.copyOf(next, next.length + 1);");
+    genCodeLine ("	       grown[next.length] = n;");
+    genCodeLine ("	       s.next = grown;");
+    genCodeLine ("	     }");
+    genCodeLine ("	     if (t == jj_lastpos) break;");
+    genCodeLine ("	     s = n;");
+    genCodeLine ("	   }");
+    genCodeLine ("	 }");
+    genCodeLine ("	 return success;");
+    genCodeLine ("  }");
+    genCodeNewLine ();
+  }
+
   public static void reInit ()
   {
     s_lookaheadNeeded = false;
@@ -35,7 +35,9 @@ package com.helger.pgcc.parser;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -50,6 +52,8 @@ import com.helger.pgcc.output.EOutputLanguage;
 public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
 {
   private static final String TokenManagerTemplate = "/templates/TableDrivenTokenManager.template";
+  /** Default number of lazily built DFA states cached by the NFA simulation */
+  public static final int LAZY_DFA_CACHE_SIZE = 512;
   private final CodeGenerator m_codeGenerator = new CodeGenerator ();
 
   @Override
@@ -70,12 +74,17 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
     options.put ("superClass", StringHelper.hasNoText (superClass) ? "" : "extends " + superClass);
     options.put ("noDfa", Options.isNoDfa ());
     options.put ("generatedStates", tokenizerData.m_nfa.size ());
+    // The lazy DFA cache uses a char per NFA state as key
+    options.put ("lazyDfaCacheSize", tokenizerData.m_nfa.size () > Character.MAX_VALUE ? 0 : LAZY_DFA_CACHE_SIZE);
+    addTemplateOptions (options, tokenizerData);
     try
     {
+      _dumpPackageAndImports ();
       m_codeGenerator.writeTemplate (TokenManagerTemplate, options);
-      _dumpDfaTables (m_codeGenerator, tokenizerData);
-      dumpNfaTables (m_codeGenerator, tokenizerData);
+      dumpTables (m_codeGenerator, tokenizerData);
       _dumpMatchInfo (m_codeGenerator, tokenizerData);
+      if (Options.isEncodedTables ())
+        JavaTableEncoder.dumpDecodeMethods (m_codeGenerator);
     }
     catch (final IOException ioe)
     {
@@ -83,6 +92,57 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
     }
   }
 
+  private void _dumpPackageAndImports ()
+  {
+    // Copy the package and import declarations from the grammar file
+    final List <Token> tokens = JavaCCGlobals.s_cu_to_insertion_point_1;
+    int i = 0;
+    while (i < tokens.size () &&
+           (tokens.get (i).kind == JavaCCParserConstants.PACKAGE || tokens.get (i).kind == JavaCCParserConstants.IMPORT))
+    {
+      m_codeGenerator.printTokenSetup (tokens.get (i));
+      for (; i < tokens.size (); i++)
+      {
+        m_codeGenerator.printToken (tokens.get (i));
+        if (tokens.get (i).kind == JavaCCParserConstants.SEMICOLON)
+        {
+          i++;
+          break;
+        }
+      }
+      m_codeGenerator.genCodeNewLine ();
+    }
+    if (i > 0)
+      m_codeGenerator.genCodeNewLine ();
+  }
+
+  /**
+   * Add additional template variables. Called after the default variables
+   * were added.
+   *
+   * @param options
+   *        The template variables to extend. Never <code>null</code>.
+   * @param tokenizerData
+   *        The tokenizer data. Never <code>null</code>.
+   */
+  protected void addTemplateOptions (final Map <String, Object> options, final TokenizerData tokenizerData)
+  {}
+
+  /**
+   * Dump the tables used for matching - by default the string literal tables
+   * and the NFA tables.
+   *
+   * @param codeGenerator
+   *        The code generator to write to. Never <code>null</code>.
+   * @param tokenizerData
+   *        The tokenizer data. Never <code>null</code>.
+   */
+  protected void dumpTables (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
+  {
+    _dumpDfaTables (codeGenerator, tokenizerData);
+    dumpNfaTables (codeGenerator, tokenizerData);
+  }
+
   public void finish (final TokenizerData tokenizerData)
   {
     // TODO(sreeni) : Fix this mess.
@@ -99,8 +159,29 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
   private void _dumpDfaTables (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
   {
     final Map <Integer, int []> startAndSize = new HashMap <> ();
-    int i = 0;
+    if (Options.isEncodedTables ())
+      _dumpEncodedStringLiterals (codeGenerator, tokenizerData, startAndSize);
+    else
+      _dumpStringLiterals (codeGenerator, tokenizerData, startAndSize);
+
+    codeGenerator.genCodeLine ("private static final java.util.Map<Integer, int[]> startAndSize =\n" +
+                               "    new java.util.HashMap<Integer, int[]>();");
+
+    // Static block to actually initialize the map from the int array above.
+    codeGenerator.genCodeLine ("static {");
+    for (final int key : tokenizerData.m_literalSequence.keySet ())
+    {
+      final int [] arr = startAndSize.get (key);
+      codeGenerator.genCodeLine ("startAndSize.put(" + key + ", new int[]{" + arr[0] + ", " + arr[1] + "});");
+    }
+    codeGenerator.genCodeLine ("}");
+  }
 
+  private static void _dumpStringLiterals (final CodeGenerator codeGenerator,
+                                           final TokenizerData tokenizerData,
+                                           final Map <Integer, int []> startAndSize)
+  {
+    int i = 0;
     codeGenerator.genCodeLine ("private static final int[] stringLiterals = {");
     for (final int key : tokenizerData.m_literalSequence.keySet ())
     {
@@ -132,22 +213,44 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
       startAndSize.put (key, arr);
     }
     codeGenerator.genCodeLine ("};");
+  }
 
-    codeGenerator.genCodeLine ("private static final java.util.Map<Integer, int[]> startAndSize =\n" +
-                               "    new java.util.HashMap<Integer, int[]>();");
-
-    // Static block to actually initialize the map from the int array above.
-    codeGenerator.genCodeLine ("static {");
+  private static void _dumpEncodedStringLiterals (final CodeGenerator codeGenerator,
+                                                  final TokenizerData tokenizerData,
+                                                  final Map <Integer, int []> startAndSize)
+  {
+    // Same layout as in _dumpStringLiterals
+    final List <Integer> values = new ArrayList <> ();
     for (final int key : tokenizerData.m_literalSequence.keySet ())
     {
-      final int [] arr = startAndSize.get (key);
-      codeGenerator.genCodeLine ("startAndSize.put(" + key + ", new int[]{" + arr[0] + ", " + arr[1] + "});");
+      final List <String> l = tokenizerData.m_literalSequence.get (key);
+      final List <Integer> kinds = tokenizerData.m_literalKinds.get (key);
+      startAndSize.put (key, new int [] { values.size (), l.size () });
+      for (int j = 0; j < l.size (); j++)
+      {
+        final String s = l.get (j);
+        values.add (s.length ());
+        for (int k = 0; k < s.length (); k++)
+          values.add ((int) s.charAt (k));
+        final int kind = kinds.get (j);
+        values.add (kind);
+        values.add (tokenizerData.m_kindToNfaStartState.get (kind));
+      }
     }
-    codeGenerator.genCodeLine ("}");
+    final int [] aValues = _toIntArray (values);
+    codeGenerator.genCode ("private static final int[] stringLiterals = jjDecodeInts(" + aValues.length + ", ");
+    JavaTableEncoder.dumpStringArray (codeGenerator, JavaTableEncoder.encodeInts (aValues));
+    codeGenerator.genCodeLine (");");
   }
 
   private void dumpNfaTables (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
   {
+    if (Options.isEncodedTables ())
+    {
+      _dumpEncodedNfaTables (codeGenerator, tokenizerData);
+      return;
+    }
+
     final EOutputLanguage eOutputLanguage = codeGenerator.getOutputLanguage ();
 
     // WE do the following for java so that the generated code is reasonable
@@ -271,8 +374,96 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
     }
     codeGenerator.genCodeLine ("};");
 
+    dumpWildcardKinds (codeGenerator, tokenizerData);
+  }
+
+  /**
+   * Dump the NFA tables as encoded strings. The char vectors of the states are
+   * decoded on first use in <code>jjCharVector</code>.
+   */
+  private void _dumpEncodedNfaTables (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
+  {
+    final Map <Integer, TokenizerData.NfaState> nfa = tokenizerData.m_nfa;
+    final int nfaSize = nfa.size ();
+    final List <int []> compositeStates = new ArrayList <> (nfaSize);
+    final List <int []> nextStates = new ArrayList <> (nfaSize);
+    final int [] matchKinds = new int [nfaSize];
+
+    // One string per state with pairs of repeat count and long
+    codeGenerator.genCodeLine ("private static final String[] jjCharData = {");
+    for (int i = 0; i < nfaSize; i++)
+    {
+      final TokenizerData.NfaState tmp = nfa.get (i);
+      if (i > 0)
+        codeGenerator.genCodeLine (",");
+      final StringBuilder aSB = new StringBuilder ();
+      if (tmp == null)
+      {
+        compositeStates.add (new int [0]);
+        nextStates.add (new int [0]);
+        matchKinds[i] = Integer.MAX_VALUE;
+      }
+      else
+      {
+        final BitSet bits = new BitSet ();
+        for (final char c : tmp.m_characters)
+          bits.set (c);
+        final long [] longs = bits.toLongArray ();
+        for (int k = 0; k < longs.length; k++)
+        {
+          int rep = 1;
+          while (k + rep < longs.length && longs[k + rep] == longs[k])
+            rep++;
+          aSB.append ((char) rep);
+          JavaTableEncoder.encodeLong (aSB, longs[k]);
+          k += rep - 1;
+        }
+        compositeStates.add (_toIntArray (tmp.m_compositeStates));
+        nextStates.add (_toIntArray (tmp.m_nextStates));
+        matchKinds[i] = tmp.m_kind;
+      }
+      JavaTableEncoder.dumpString (codeGenerator, aSB, 0, aSB.length ());
+    }
+    codeGenerator.genCodeLine ("};");
+
+    codeGenerator.genCode ("private static final int[][] jjcompositeState = jjDecodeIntArrays(" + nfaSize + ", ");
+    JavaTableEncoder.dumpStringArray (codeGenerator, JavaTableEncoder.encodeIntArrays (compositeStates));
+    codeGenerator.genCodeLine (");");
+
+    codeGenerator.genCode ("private static final int[] jjmatchKinds = jjDecodeInts(" + nfaSize + ", ");
+    JavaTableEncoder.dumpStringArray (codeGenerator, JavaTableEncoder.encodeInts (matchKinds));
+    codeGenerator.genCodeLine (");");
+
+    codeGenerator.genCode ("private static final int[][] jjnextStateSet = jjDecodeIntArrays(" + nfaSize + ", ");
+    JavaTableEncoder.dumpStringArray (codeGenerator, JavaTableEncoder.encodeIntArrays (nextStates));
+    codeGenerator.genCodeLine (");");
+
+    codeGenerator.genCodeLine ("private static final int[] jjInitStates = {");
+    int k = 0;
+    for (final Integer a : tokenizerData.m_initialStates.values ())
+    {
+      if (k++ > 0)
+        codeGenerator.genCode (", ");
+      codeGenerator.genCode (a.toString ());
+    }
+    codeGenerator.genCodeLine ("};");
+
+    dumpWildcardKinds (codeGenerator, tokenizerData);
+  }
+
+  private static int [] _toIntArray (final Collection <Integer> aValues)
+  {
+    final int [] ret = new int [aValues.size ()];
+    int i = 0;
+    for (final Integer a : aValues)
+      ret[i++] = a.intValue ();
+    return ret;
+  }
+
+  protected static void dumpWildcardKinds (final CodeGenerator codeGenerator, final TokenizerData tokenizerData)
+  {
     codeGenerator.genCodeLine ("private static final int[] canMatchAnyChar = {");
-    k = 0;
+    int k = 0;
     for (final Integer a : tokenizerData.m_wildcardKind.values ())
     {
       if (k++ > 0)
@@ -298,7 +489,10 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
     toMore.set (allMatches.size () + 1, true);
     toSpecial.set (allMatches.size () + 1, true);
     // Kind map.
-    codeGenerator.genCodeLine ("public static final String[] jjstrLiteralImages = {");
+    final boolean bEncoded = Options.isEncodedTables ();
+    final List <String> images = new ArrayList <> (allMatches.size ());
+    if (!bEncoded)
+      codeGenerator.genCodeLine ("public static final String[] jjstrLiteralImages = {");
 
     int k = 0;
     for (final Map.Entry <Integer, TokenizerData.MatchInfo> aEntry : allMatches.entrySet ())
@@ -311,6 +505,8 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
           toSkip.set (i);
           break;
         case SPECIAL_TOKEN:
+          // The template checks the skip bit first
+          toSkip.set (i);
           toSpecial.set (i);
           break;
         case MORE:
@@ -324,6 +520,11 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
       }
       newStates[i] = matchInfo.m_newLexState;
       final String image = matchInfo.m_image;
+      if (bEncoded)
+      {
+        images.add (image);
+        continue;
+      }
       if (k++ > 0)
         codeGenerator.genCodeLine (", ");
       if (image != null)
@@ -350,7 +551,14 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
         codeGenerator.genCodeLine ("null");
       }
     }
-    codeGenerator.genCodeLine ("};");
+    if (bEncoded)
+    {
+      codeGenerator.genCode ("public static final String[] jjstrLiteralImages = jjDecodeStrings(" + images.size () + ", ");
+      JavaTableEncoder.dumpStringArray (codeGenerator, JavaTableEncoder.encodeStrings (images));
+      codeGenerator.genCodeLine (");");
+    }
+    else
+      codeGenerator.genCodeLine ("};");
 
     // Now generate the bit masks.
     generateBitVector ("jjtoSkip", toSkip, codeGenerator);
@@ -412,6 +620,23 @@ public class TableDrivenJavaCodeGenerator implements TokenManagerCodeGenerator
         continue;
       }
       codeGenerator.genCodeLine ("    case " + i + ": {\n");
+      // Same image as for the actions of the default token manager
+      if (i == 0)
+        codeGenerator.genCodeLine ("      image.setLength(0);");
+      else
+        if (matchType == TokenizerData.EMatchType.MORE)
+        {
+          codeGenerator.genCodeLine ("      image.append(input_stream.getSuffix(jjimageLen));");
+          codeGenerator.genCodeLine ("      jjimageLen = 0;");
+        }
+        else
+          if (matchInfo.m_image != null)
+          {
+            codeGenerator.genCodeLine ("      image.append(jjstrLiteralImages[" + i + "]);");
+            codeGenerator.genCodeLine ("      lengthOfMatch = jjstrLiteralImages[" + i + "].length();");
+          }
+          else
+            codeGenerator.genCodeLine ("      image.append(input_stream.getSuffix(jjimageLen + (lengthOfMatch = jjmatchedPos + 1)));");
       codeGenerator.genCodeLine ("      " + matchInfo.m_action);
       codeGenerator.genCodeLine ("      break;");
       codeGenerator.genCodeLine ("    }");
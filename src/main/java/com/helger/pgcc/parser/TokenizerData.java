@@ -35,6 +35,7 @@ package com.helger.pgcc.parser;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -216,14 +217,15 @@ public class TokenizerData
       final int vectorIndex = i >> 6;
       final long bits = (1L << (i & 077));
       EMatchType matchType = EMatchType.TOKEN;
-      if (toSkip.length > vectorIndex && (toSkip[vectorIndex] & bits) != 0L)
+      // Special tokens are also contained in the skip set, so check them first
+      if (toSpecial.length > vectorIndex && (toSpecial[vectorIndex] & bits) != 0L)
       {
-        matchType = EMatchType.SKIP;
+        matchType = EMatchType.SPECIAL_TOKEN;
       }
       else
-        if (toSpecial.length > vectorIndex && (toSpecial[vectorIndex] & bits) != 0L)
+        if (toSkip.length > vectorIndex && (toSkip[vectorIndex] & bits) != 0L)
         {
-          matchType = EMatchType.SPECIAL_TOKEN;
+          matchType = EMatchType.SKIP;
         }
         else
           if (toMore.length > vectorIndex && (toMore[vectorIndex] & bits) != 0L)
@@ -232,10 +234,23 @@ public class TokenizerData
           }
           else
           {
-            assert (toToken.length > vectorIndex && (toToken[vectorIndex] & bits) != 0L);
+            // Private regular expressions (<#...>) have a kind but are never
+            // matched on their own
             matchType = EMatchType.TOKEN;
           }
-      final MatchInfo matchInfo = new MatchInfo (Options.isIgnoreCase () ? null : ExpRStringLiteral.s_allImages[i],
+      // Same rules as for the jjstrLiteralImages of the default token manager:
+      // only real tokens that cannot be reached after a MORE and that are
+      // not subject to case folding have a fixed image.
+      String image = ExpRStringLiteral.s_allImages[i];
+      if (image != null &&
+          (matchType != EMatchType.TOKEN ||
+           LexGenJava.s_canReachOnMore[LexGenJava.s_lexStates[i]] ||
+           ((Options.isIgnoreCase () || LexGenJava.s_ignoreCase[i]) &&
+            (!image.equals (image.toLowerCase (Locale.US)) || !image.equals (image.toUpperCase (Locale.US))))))
+      {
+        image = null;
+      }
+      final MatchInfo matchInfo = new MatchInfo (image,
                                                  i,
                                                  matchType,
                                                  newLexStateIndices[i],
@@ -0,0 +1,832 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Deterministic automaton for the token manager, built from the
+ * {@link TokenizerData} by subset construction. All lexical states share one
+ * set of character classes and one state numbering. State 0 is the dead state.
+ * All states from {@link #getFirstFinalState()} on have no outgoing transitions
+ * so no transition row is stored for them.<br>
+ * The "longest match" rule is implemented by the runtime loop, the "first
+ * occurring kind" rule is resolved here by storing the smallest matched kind
+ * for each state.
+ */
+public class TokenizerDfa
+{
+  /** The dead state. */
+  public static final int DEAD_STATE = 0;
+
+  // Literal trie node - literals are matched together with the NFA
+  private static final class LiteralNode
+  {
+    private final Map <Character, LiteralNode> m_children = new TreeMap <> ();
+    private final int m_id;
+    private int m_kind = Integer.MAX_VALUE;
+
+    LiteralNode (final int id)
+    {
+      m_id = id;
+    }
+  }
+
+  // One DFA state during construction: NFA states + literal position + kind
+  private static final class Config
+  {
+    private final int [] m_nfaStates;
+    private final LiteralNode m_literal;
+    private final int m_kind;
+    private int m_index;
+
+    Config (final int [] nfaStates, final LiteralNode literal, final int kind)
+    {
+      m_nfaStates = nfaStates;
+      m_literal = literal;
+      m_kind = kind;
+    }
+
+    boolean hasTransitions ()
+    {
+      return m_nfaStates.length > 0 || (m_literal != null && !m_literal.m_children.isEmpty ());
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      if (o == this)
+        return true;
+      if (!(o instanceof Config))
+        return false;
+      final Config rhs = (Config) o;
+      return m_literal == rhs.m_literal && m_kind == rhs.m_kind && Arrays.equals (m_nfaStates, rhs.m_nfaStates);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return (Arrays.hashCode (m_nfaStates) * 31 + (m_literal == null ? -1 : m_literal.m_id)) * 31 + m_kind;
+    }
+  }
+
+  private final int [] m_charClass;
+  private final int m_classCount;
+  private final int [] m_startStates;
+  private final int [] m_next;
+  private final int [] m_kinds;
+  private final int m_firstFinalState;
+
+  private TokenizerDfa (final int [] charClass,
+                        final int classCount,
+                        final int [] startStates,
+                        final int [] next,
+                        final int [] kinds,
+                        final int firstFinalState)
+  {
+    m_charClass = charClass;
+    m_classCount = classCount;
+    m_startStates = startStates;
+    m_next = next;
+    m_kinds = kinds;
+    m_firstFinalState = firstFinalState;
+  }
+
+  /**
+   * @return The character class of every character. Array of length 65536.
+   */
+  public int [] getCharClasses ()
+  {
+    return m_charClass;
+  }
+
+  /**
+   * @return The number of character classes.
+   */
+  public int getClassCount ()
+  {
+    return m_classCount;
+  }
+
+  /**
+   * @return The start state for each lexical state.
+   */
+  public int [] getStartStates ()
+  {
+    return m_startStates;
+  }
+
+  /**
+   * @return The transition table. The next state of state <code>s</code> on
+   *         class <code>c</code> is at index
+   *         <code>s * getClassCount () + c</code>. Contains only the rows for
+   *         the states below {@link #getFirstFinalState()}.
+   */
+  public int [] getNextStates ()
+  {
+    return m_next;
+  }
+
+  /**
+   * @return The matched kind for every state. <code>Integer.MAX_VALUE</code>
+   *         if the state does not match.
+   */
+  public int [] getKinds ()
+  {
+    return m_kinds;
+  }
+
+  /**
+   * @return The total number of states including the dead state.
+   */
+  public int getStateCount ()
+  {
+    return m_kinds.length;
+  }
+
+  /**
+   * @return The first state without outgoing transitions.
+   */
+  public int getFirstFinalState ()
+  {
+    return m_firstFinalState;
+  }
+
+  private static int [] _computeCharClasses (final TokenizerData tokenizerData, final int [] classCount)
+  {
+    final int [] ret = new int [Character.MAX_VALUE + 1];
+    int next = 1;
+    final Map <Integer, Integer> split = new HashMap <> ();
+    final List <char []> sets = new ArrayList <> ();
+    for (final TokenizerData.NfaState state : tokenizerData.m_nfa.values ())
+      if (state != null && !state.m_characters.isEmpty ())
+      {
+        final char [] chars = new char [state.m_characters.size ()];
+        int i = 0;
+        for (final Character c : state.m_characters)
+          chars[i++] = c.charValue ();
+        sets.add (chars);
+      }
+    for (final List <String> literals : tokenizerData.m_literalSequence.values ())
+      for (final String literal : literals)
+        for (int i = 0; i < literal.length (); i++)
+          sets.add (new char [] { literal.charAt (i) });
+
+    // Partition refinement: all characters in one class are contained in
+    // exactly the same sets
+    for (final char [] chars : sets)
+    {
+      split.clear ();
+      for (final char c : chars)
+      {
+        final Integer old = Integer.valueOf (ret[c]);
+        Integer cls = split.get (old);
+        if (cls == null)
+        {
+          cls = Integer.valueOf (next++);
+          split.put (old, cls);
+        }
+        ret[c] = cls.intValue ();
+      }
+    }
+
+    // Renumber in order of appearance so that the numbers are dense
+    final int [] map = new int [next];
+    Arrays.fill (map, -1);
+    int count = 0;
+    for (int c = 0; c < ret.length; c++)
+    {
+      if (map[ret[c]] < 0)
+        map[ret[c]] = count++;
+      ret[c] = map[ret[c]];
+    }
+    classCount[0] = count;
+    return ret;
+  }
+
+  /**
+   * Build the DFA.
+   *
+   * @param tokenizerData
+   *        The tokenizer data to use. May not be <code>null</code>.
+   * @param maxStates
+   *        The maximum number of states to create.
+   * @return <code>null</code> if more than the maximum number of states would
+   *         be needed.
+   */
+  public static TokenizerDfa build (final TokenizerData tokenizerData, final int maxStates)
+  {
+    final int [] classCount = new int [1];
+    final int [] charClass = _computeCharClasses (tokenizerData, classCount);
+    final int nClasses = classCount[0];
+    final char [] representative = new char [nClasses];
+    final boolean [] seen = new boolean [nClasses];
+    for (int c = 0; c < charClass.length; c++)
+      if (!seen[charClass[c]])
+      {
+        seen[charClass[c]] = true;
+        representative[charClass[c]] = (char) c;
+      }
+
+    // One literal trie per lexical state
+    final int nLexStates = tokenizerData.m_lexStateNames.length;
+    final LiteralNode [] roots = new LiteralNode [nLexStates];
+    int nodeCount = 0;
+    for (int i = 0; i < nLexStates; i++)
+      roots[i] = new LiteralNode (nodeCount++);
+    for (final Map.Entry <Integer, List <String>> entry : tokenizerData.m_literalSequence.entrySet ())
+    {
+      final int lexState = entry.getKey ().intValue () >> 16;
+      final List <Integer> kinds = tokenizerData.m_literalKinds.get (entry.getKey ());
+      for (int i = 0; i < entry.getValue ().size (); i++)
+      {
+        final String literal = entry.getValue ().get (i);
+        LiteralNode node = roots[lexState];
+        for (int j = 0; j < literal.length (); j++)
+        {
+          final Character c = Character.valueOf (literal.charAt (j));
+          LiteralNode child = node.m_children.get (c);
+          if (child == null)
+          {
+            child = new LiteralNode (nodeCount++);
+            node.m_children.put (c, child);
+          }
+          node = child;
+        }
+        node.m_kind = Math.min (node.m_kind, kinds.get (i).intValue ());
+      }
+    }
+
+    final Map <Config, Config> configs = new HashMap <> ();
+    final List <Config> states = new ArrayList <> ();
+    final Config dead = new Config (new int [0], null, Integer.MAX_VALUE);
+    dead.m_index = 0;
+    configs.put (dead, dead);
+    states.add (dead);
+
+    final int [] startStates = new int [nLexStates];
+    for (int i = 0; i < nLexStates; i++)
+    {
+      final Integer initial = tokenizerData.m_initialStates.get (Integer.valueOf (i));
+      final SortedSet <Integer> set = new TreeSet <> ();
+      if (initial != null && initial.intValue () >= 0)
+      {
+        set.add (initial);
+        final TokenizerData.NfaState state = tokenizerData.m_nfa.get (initial);
+        if (state != null)
+          set.addAll (state.m_compositeStates);
+      }
+      final Config start = _intern (configs, states, new Config (_toArray (set), roots[i], Integer.MAX_VALUE));
+      startStates[i] = start.m_index;
+    }
+
+    // Transitions for all created states - the list grows while iterating
+    final List <int []> rows = new ArrayList <> ();
+    rows.add (new int [nClasses]);
+    final SortedSet <Integer> nextSet = new TreeSet <> ();
+    for (int s = 1; s < states.size (); s++)
+    {
+      if (states.size () > maxStates)
+        return null;
+      final Config cur = states.get (s);
+      final int [] row = new int [nClasses];
+      if (cur.hasTransitions ())
+        for (int cls = 0; cls < nClasses; cls++)
+        {
+          final char c = representative[cls];
+          final Character aChar = Character.valueOf (c);
+          int kind = Integer.MAX_VALUE;
+          nextSet.clear ();
+          for (final int nfaState : cur.m_nfaStates)
+          {
+            final TokenizerData.NfaState state = tokenizerData.m_nfa.get (Integer.valueOf (nfaState));
+            if (state != null && state.m_characters.contains (aChar))
+            {
+              nextSet.addAll (state.m_nextStates);
+              kind = Math.min (kind, state.m_kind);
+            }
+          }
+          final LiteralNode literal = cur.m_literal == null ? null : cur.m_literal.m_children.get (aChar);
+          if (literal != null)
+            kind = Math.min (kind, literal.m_kind);
+          if (nextSet.isEmpty () && literal == null && kind == Integer.MAX_VALUE)
+            row[cls] = DEAD_STATE;
+          else
+            row[cls] = _intern (configs, states, new Config (_toArray (nextSet), literal, kind)).m_index;
+        }
+      rows.add (row);
+    }
+
+    // Move the states without transitions to the end
+    final int nStates = states.size ();
+    final int [] renumber = new int [nStates];
+    int nextIndex = 0;
+    for (int s = 0; s < nStates; s++)
+      if (s == DEAD_STATE || states.get (s).hasTransitions ())
+        renumber[s] = nextIndex++;
+    final int firstFinalState = nextIndex;
+    for (int s = 0; s < nStates; s++)
+      if (s != DEAD_STATE && !states.get (s).hasTransitions ())
+        renumber[s] = nextIndex++;
+
+    final int [] next = new int [firstFinalState * nClasses];
+    final int [] kinds = new int [nStates];
+    for (int s = 0; s < nStates; s++)
+    {
+      final int index = renumber[s];
+      kinds[index] = states.get (s).m_kind;
+      if (index < firstFinalState)
+      {
+        final int [] row = rows.get (s);
+        for (int cls = 0; cls < nClasses; cls++)
+          next[index * nClasses + cls] = renumber[row[cls]];
+      }
+    }
+    for (int i = 0; i < nLexStates; i++)
+    {
+      // A lexical state without any tokens never matches
+      final int start = renumber[startStates[i]];
+      startStates[i] = start < firstFinalState ? start : DEAD_STATE;
+    }
+    return new TokenizerDfa (charClass, nClasses, startStates, next, kinds, firstFinalState);
+  }
+
+  // Row of an intermediate state of the UTF-8 DFA - only the 64 continuation
+  // bytes can have transitions. Also used as key for the byte columns.
+  private static final class Utf8Row
+  {
+    private final int [] m_next;
+
+    Utf8Row (final int [] next)
+    {
+      m_next = next;
+    }
+
+    @Override
+    public boolean equals (final Object o)
+    {
+      return o instanceof Utf8Row && Arrays.equals (m_next, ((Utf8Row) o).m_next);
+    }
+
+    @Override
+    public int hashCode ()
+    {
+      return Arrays.hashCode (m_next);
+    }
+  }
+
+  // Converts a DFA over chars into a DFA over UTF-8 bytes
+  private static final class Utf8Converter
+  {
+    private final TokenizerDfa m_dfa;
+    private final int m_maxStates;
+    private final int m_stateCount;
+    private final int m_firstFinalState;
+    // Temporary ids of the new states: copies of states with another kind,
+    // states without transitions and intermediate states
+    private final int m_firstCopy;
+    private final int m_firstNewFinal;
+    private final int m_firstNode;
+    // Runs of code points with the same char class - start and class
+    private final int [] [] m_bmpRuns;
+    private final int [] [] m_highRuns;
+    private final int [] [] m_lowRuns;
+    private final Map <Integer, Integer> m_finalStates = new HashMap <> ();
+    private final List <Integer> m_newFinalKinds = new ArrayList <> ();
+    private final Map <Long, Integer> m_copies = new HashMap <> ();
+    private final List <int []> m_copyRows = new ArrayList <> ();
+    private final List <Integer> m_copyKinds = new ArrayList <> ();
+    private final Map <Utf8Row, Integer> m_nodes = new HashMap <> ();
+    private final List <int []> m_nodeRows = new ArrayList <> ();
+    private final int [] [] m_leadRows;
+    // Code point ranges of the current state: start and target state
+    private int [] m_rangeStart = new int [16];
+    private int [] m_rangeTarget = new int [16];
+    private int m_rangeCount;
+
+    Utf8Converter (final TokenizerDfa dfa, final boolean ignoreCase, final int maxStates)
+    {
+      m_dfa = dfa;
+      m_maxStates = maxStates;
+      m_stateCount = dfa.getStateCount ();
+      m_firstFinalState = dfa.m_firstFinalState;
+      m_firstCopy = m_stateCount;
+      m_firstNewFinal = m_stateCount + maxStates;
+      m_firstNode = m_stateCount + 2 * maxStates;
+      m_bmpRuns = _getClassRuns (dfa.m_charClass, 0, Character.MAX_VALUE, ignoreCase);
+      m_highRuns = _getClassRuns (dfa.m_charClass, Character.MIN_HIGH_SURROGATE, Character.MAX_HIGH_SURROGATE, false);
+      m_lowRuns = _getClassRuns (dfa.m_charClass, Character.MIN_LOW_SURROGATE, Character.MAX_LOW_SURROGATE, false);
+      for (int s = m_stateCount - 1; s >= m_firstFinalState; s--)
+        m_finalStates.put (Integer.valueOf (dfa.m_kinds[s]), Integer.valueOf (s));
+      m_leadRows = new int [m_firstFinalState] [];
+    }
+
+    private static int [] [] _getClassRuns (final int [] charClass,
+                                            final int from,
+                                            final int to,
+                                            final boolean ignoreCase)
+    {
+      final List <int []> runs = new ArrayList <> ();
+      int last = -2;
+      for (int c = from; c <= to; c++)
+      {
+        // Surrogates are only valid as part of a code point outside the BMP
+        final boolean skip = from < Character.MIN_SURROGATE &&
+                             c >= Character.MIN_SURROGATE &&
+                             c <= Character.MAX_SURROGATE;
+        final int cls = skip ? -1 : charClass[ignoreCase ? Character.toLowerCase (c) : c];
+        if (cls != last)
+        {
+          runs.add (new int [] { c, cls });
+          last = cls;
+        }
+      }
+      return runs.toArray (new int [runs.size ()] []);
+    }
+
+    private int _getNext (final int state, final int cls)
+    {
+      if (cls < 0 || state == DEAD_STATE || state >= m_firstFinalState)
+        return DEAD_STATE;
+      return m_dfa.m_next[state * m_dfa.m_classCount + cls];
+    }
+
+    private int _getKind (final int state)
+    {
+      if (state >= m_firstNewFinal)
+        return m_newFinalKinds.get (state - m_firstNewFinal).intValue ();
+      if (state >= m_firstCopy)
+        return m_copyKinds.get (state - m_firstCopy).intValue ();
+      return m_dfa.m_kinds[state];
+    }
+
+    // A state without transitions that matches the passed kind
+    private int _getFinalState (final int kind)
+    {
+      Integer state = m_finalStates.get (Integer.valueOf (kind));
+      if (state == null)
+      {
+        state = Integer.valueOf (m_firstNewFinal + m_newFinalKinds.size ());
+        m_finalStates.put (Integer.valueOf (kind), state);
+        m_newFinalKinds.add (Integer.valueOf (kind));
+      }
+      return state.intValue ();
+    }
+
+    // The passed state matching at least the passed kind
+    private int _getStateWithKind (final int state, final int kind)
+    {
+      if (state != DEAD_STATE && _getKind (state) <= kind)
+        return state;
+      if (state == DEAD_STATE || state >= m_firstFinalState)
+        return _getFinalState (kind);
+
+      final Long key = Long.valueOf (((long) state << 32) | kind);
+      Integer copy = m_copies.get (key);
+      if (copy == null)
+      {
+        copy = Integer.valueOf (m_firstCopy + m_copyRows.size ());
+        m_copies.put (key, copy);
+        m_copyRows.add (m_leadRows[state]);
+        m_copyKinds.add (Integer.valueOf (kind));
+      }
+      return copy.intValue ();
+    }
+
+    private void _addRange (final int start, final int target)
+    {
+      if (m_rangeCount > 0 && m_rangeTarget[m_rangeCount - 1] == target)
+        return;
+      if (m_rangeCount == m_rangeStart.length)
+      {
+        m_rangeStart = Arrays.copyOf (m_rangeStart, m_rangeCount * 2);
+        m_rangeTarget = Arrays.copyOf (m_rangeTarget, m_rangeCount * 2);
+      }
+      m_rangeStart[m_rangeCount] = start;
+      m_rangeTarget[m_rangeCount] = target;
+      m_rangeCount++;
+    }
+
+    // The target states of all code points
+    private void _setRanges (final int state)
+    {
+      m_rangeCount = 0;
+      for (final int [] run : m_bmpRuns)
+        _addRange (run[0], _getNext (state, run[1]));
+
+      for (int i = 0; i < m_highRuns.length; i++)
+      {
+        final int highEnd = i + 1 < m_highRuns.length ? m_highRuns[i + 1][0] : Character.MAX_HIGH_SURROGATE + 1;
+        final int afterHigh = _getNext (state, m_highRuns[i][1]);
+        for (int high = m_highRuns[i][0]; high < highEnd; high++)
+        {
+          final int base = Character.toCodePoint ((char) high, Character.MIN_LOW_SURROGATE);
+          for (final int [] lowRun : m_lowRuns)
+          {
+            int target = _getNext (afterHigh, lowRun[1]);
+            if (target == DEAD_STATE && afterHigh != DEAD_STATE && m_dfa.m_kinds[afterHigh] != Integer.MAX_VALUE)
+            {
+              // A match ending with the high surrogate is extended to the
+              // whole code point, as a code point cannot be split
+              target = _getFinalState (m_dfa.m_kinds[afterHigh]);
+            }
+            _addRange (base + lowRun[0] - Character.MIN_LOW_SURROGATE, target);
+          }
+        }
+      }
+    }
+
+    private int _findRange (final int cp)
+    {
+      int lo = 0;
+      int hi = m_rangeCount - 1;
+      while (lo < hi)
+      {
+        final int mid = (lo + hi + 1) >>> 1;
+        if (m_rangeStart[mid] <= cp)
+          lo = mid;
+        else
+          hi = mid - 1;
+      }
+      return lo;
+    }
+
+    // Target of all code points in the block or -1 if they differ
+    private int _getUniformTarget (final int cp, final int size)
+    {
+      final int i = _findRange (cp);
+      final int end = i + 1 < m_rangeCount ? m_rangeStart[i + 1] : Character.MAX_CODE_POINT + 1;
+      return end >= cp + size ? m_rangeTarget[i] : -1;
+    }
+
+    private int _internNode (final int [] row)
+    {
+      boolean dead = true;
+      for (final int n : row)
+        if (n != DEAD_STATE)
+        {
+          dead = false;
+          break;
+        }
+      if (dead)
+        return DEAD_STATE;
+
+      final Utf8Row key = new Utf8Row (row);
+      Integer id = m_nodes.get (key);
+      if (id == null)
+      {
+        id = Integer.valueOf (m_firstNode + m_nodeRows.size ());
+        m_nodes.put (key, id);
+        m_nodeRows.add (row);
+      }
+      return id.intValue ();
+    }
+
+    private int _getUniformNode (final int level, final int target)
+    {
+      if (target == DEAD_STATE)
+        return DEAD_STATE;
+      final int [] row = new int [64];
+      Arrays.fill (row, level == 1 ? target : _getUniformNode (level - 1, target));
+      return _internNode (row);
+    }
+
+    // The state after a byte that needs level more continuation bytes. The
+    // first continuation byte must be in the range lo to hi.
+    private int _buildNode (final int cpStart, final int level, final int lo, final int hi)
+    {
+      final int size = 1 << (6 * (level - 1));
+      final int [] row = new int [64];
+      for (int b = 0; b < 64; b++)
+      {
+        if (0x80 + b < lo || 0x80 + b > hi)
+          continue;
+        final int start = cpStart + b * size;
+        if (level == 1)
+          row[b] = m_rangeTarget[_findRange (start)];
+        else
+        {
+          final int target = _getUniformTarget (start, size);
+          row[b] = target >= 0 ? _getUniformNode (level - 1, target) : _buildNode (start, level - 1, 0x80, 0xbf);
+        }
+      }
+      return _internNode (row);
+    }
+
+    // The transitions of the current ranges for the first byte
+    private int [] _buildLeadRow ()
+    {
+      final int [] row = new int [256];
+      for (int b = 0; b < 0x80; b++)
+        row[b] = m_rangeTarget[_findRange (b)];
+      for (int b = 0xc2; b <= 0xdf; b++)
+        row[b] = _buildNode ((b & 0x1f) << 6, 1, 0x80, 0xbf);
+      for (int b = 0xe0; b <= 0xef; b++)
+        row[b] = _buildNode ((b & 0x0f) << 12, 2, b == 0xe0 ? 0xa0 : 0x80, b == 0xed ? 0x9f : 0xbf);
+      for (int b = 0xf0; b <= 0xf4; b++)
+        row[b] = _buildNode ((b & 0x07) << 18, 3, b == 0xf0 ? 0x90 : 0x80, b == 0xf4 ? 0x8f : 0xbf);
+      return row;
+    }
+
+    private boolean _isTooLarge ()
+    {
+      return m_stateCount + m_copyRows.size () + m_newFinalKinds.size () + m_nodeRows.size () > m_maxStates;
+    }
+
+    private int _renumber (final int state, final int nCopies, final int nNodes)
+    {
+      if (state >= m_firstNode)
+        return m_firstFinalState + nCopies + state - m_firstNode;
+      if (state >= m_firstNewFinal)
+        return m_stateCount + nCopies + nNodes + state - m_firstNewFinal;
+      if (state >= m_firstCopy)
+        return m_firstFinalState + state - m_firstCopy;
+      if (state >= m_firstFinalState)
+        return state + nCopies + nNodes;
+      return state;
+    }
+
+    TokenizerDfa convert (final int [] wildcardKinds)
+    {
+      for (int s = 1; s < m_firstFinalState; s++)
+      {
+        _setRanges (s);
+        m_leadRows[s] = _buildLeadRow ();
+        if (_isTooLarge ())
+          return null;
+      }
+
+      // The token manager matches the wildcard kind for a single char, but a
+      // char is a sequence of bytes here. So the wildcard kinds are added to
+      // copies of the start states.
+      final int [] startStates = m_dfa.m_startStates.clone ();
+      for (int lexState = 0; lexState < startStates.length; lexState++)
+      {
+        final int wildcardKind = wildcardKinds[lexState];
+        if (wildcardKind == Integer.MAX_VALUE)
+          continue;
+
+        final int start = startStates[lexState];
+        _setRanges (start);
+        for (int i = 0; i < m_rangeCount; i++)
+          m_rangeTarget[i] = _getStateWithKind (m_rangeTarget[i], wildcardKind);
+        final int [] row = _buildLeadRow ();
+        startStates[lexState] = m_firstCopy + m_copyRows.size ();
+        m_copyRows.add (row);
+        m_copyKinds.add (Integer.valueOf (m_dfa.m_kinds[start]));
+        if (_isTooLarge ())
+          return null;
+      }
+
+      // States with transitions: the original ones, the copies and the
+      // intermediate states. Then all states without transitions.
+      final int nCopies = m_copyRows.size ();
+      final int nNodes = m_nodeRows.size ();
+      final int nFirstFinal = m_firstFinalState + nCopies + nNodes;
+      final int nStates = m_stateCount + nCopies + nNodes + m_newFinalKinds.size ();
+      final int [] [] rows = new int [nFirstFinal] [];
+      final int [] kinds = new int [nStates];
+      rows[DEAD_STATE] = new int [256];
+      kinds[DEAD_STATE] = m_dfa.m_kinds[DEAD_STATE];
+      for (int s = 1; s < m_firstFinalState; s++)
+      {
+        rows[s] = m_leadRows[s];
+        kinds[s] = m_dfa.m_kinds[s];
+      }
+      for (int i = 0; i < nCopies; i++)
+      {
+        rows[m_firstFinalState + i] = m_copyRows.get (i);
+        kinds[m_firstFinalState + i] = m_copyKinds.get (i).intValue ();
+      }
+      for (int i = 0; i < nNodes; i++)
+      {
+        final int [] row = new int [256];
+        System.arraycopy (m_nodeRows.get (i), 0, row, 0x80, 64);
+        rows[m_firstFinalState + nCopies + i] = row;
+        kinds[m_firstFinalState + nCopies + i] = Integer.MAX_VALUE;
+      }
+      for (int s = m_firstFinalState; s < m_stateCount; s++)
+        kinds[_renumber (s, nCopies, nNodes)] = m_dfa.m_kinds[s];
+      for (int i = 0; i < m_newFinalKinds.size (); i++)
+        kinds[_renumber (m_firstNewFinal + i, nCopies, nNodes)] = m_newFinalKinds.get (i).intValue ();
+
+      // Copies share the row arrays with the original states
+      final int [] [] renumbered = new int [nFirstFinal] [];
+      for (int s = 0; s < nFirstFinal; s++)
+      {
+        renumbered[s] = new int [256];
+        for (int b = 0; b < 256; b++)
+          renumbered[s][b] = _renumber (rows[s][b], nCopies, nNodes);
+      }
+      for (int i = 0; i < startStates.length; i++)
+        startStates[i] = _renumber (startStates[i], nCopies, nNodes);
+
+      // Bytes with the same column in all rows share a class
+      final int [] byteClass = new int [256];
+      final Map <Utf8Row, Integer> columns = new HashMap <> ();
+      for (int b = 0; b < 256; b++)
+      {
+        final int [] column = new int [nFirstFinal];
+        for (int s = 0; s < nFirstFinal; s++)
+          column[s] = renumbered[s][b];
+        final Utf8Row key = new Utf8Row (column);
+        Integer cls = columns.get (key);
+        if (cls == null)
+        {
+          cls = Integer.valueOf (columns.size ());
+          columns.put (key, cls);
+        }
+        byteClass[b] = cls.intValue ();
+      }
+      final int nClasses = columns.size ();
+      final int [] next = new int [nFirstFinal * nClasses];
+      for (int s = 0; s < nFirstFinal; s++)
+        for (int b = 0; b < 256; b++)
+          next[s * nClasses + byteClass[b]] = renumbered[s][b];
+
+      return new TokenizerDfa (byteClass, nClasses, startStates, next, kinds, nFirstFinal);
+    }
+  }
+
+  /**
+   * Convert this DFA over UTF-16 chars into a DFA over the bytes of the UTF-8
+   * encoded input. Every char transition is expanded into the byte sequences
+   * of the matching code points. Code points outside the BMP use the
+   * transitions of their surrogate pair. The states inside a byte sequence
+   * never match and invalid UTF-8 leads to the dead state.
+   *
+   * @param ignoreCase
+   *        <code>true</code> if the chars are converted to lower case before
+   *        they are looked up.
+   * @param wildcardKinds
+   *        The kind matching any single char (<code>~[]</code>) of each
+   *        lexical state or <code>Integer.MAX_VALUE</code> if there is none.
+   * @param maxStates
+   *        The maximum number of states to create.
+   * @return <code>null</code> if more than the maximum number of states would
+   *         be needed.
+   */
+  public TokenizerDfa toUtf8 (final boolean ignoreCase, final int [] wildcardKinds, final int maxStates)
+  {
+    return new Utf8Converter (this, ignoreCase, maxStates).convert (wildcardKinds);
+  }
+
+  private static Config _intern (final Map <Config, Config> configs, final List <Config> states, final Config config)
+  {
+    final Config existing = configs.get (config);
+    if (existing != null)
+      return existing;
+    config.m_index = states.size ();
+    configs.put (config, config);
+    states.add (config);
+    return config;
+  }
+
+  private static int [] _toArray (final Collection <Integer> set)
+  {
+    final int [] ret = new int [set.size ()];
+    int i = 0;
+    for (final Integer n : set)
+      ret[i++] = n.intValue ();
+    return ret;
+  }
+}
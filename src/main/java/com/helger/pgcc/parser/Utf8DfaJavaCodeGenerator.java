@@ -0,0 +1,126 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import java.util.Map;
+
+import com.helger.pgcc.output.java.FilesJava;
+
+/**
+ * DFA token manager that matches the bytes of UTF-8 encoded input instead of
+ * characters. The character DFA is converted to a DFA over bytes at generation
+ * time, so the input needs not be decoded while it is scanned. Only the images
+ * of the matched tokens are decoded.<br>
+ * The input is read with the generated <code>Utf8ByteStream</code>, therefore
+ * <code>USER_CHAR_STREAM</code> must be set. Otherwise the character based
+ * tables of {@link DfaJavaCodeGenerator} are used.<br>
+ * Use it with
+ * <code>TOKEN_MANAGER_CODE_GENERATOR=com.helger.pgcc.parser.Utf8DfaJavaCodeGenerator</code>
+ */
+public class Utf8DfaJavaCodeGenerator extends DfaJavaCodeGenerator
+{
+  private boolean m_bByteInput;
+
+  @Override
+  protected TokenizerDfa buildDfa (final TokenizerData tokenizerData)
+  {
+    m_bByteInput = false;
+    final TokenizerDfa dfa = super.buildDfa (tokenizerData);
+    if (dfa == null)
+      return null;
+
+    if (!Options.isJavaUserCharStream ())
+    {
+      JavaCCErrors.warning ("The UTF-8 token manager requires the option \"" +
+                            Options.USEROPTION__USER_CHAR_STREAM +
+                            "\". Falling back to the character based DFA.");
+      return dfa;
+    }
+    if (Options.isLazyLineColumn ())
+    {
+      JavaCCErrors.warning ("The UTF-8 token manager does not support the option \"" +
+                            Options.USEROPTION__LAZY_LINE_COLUMN +
+                            "\". Falling back to the character based DFA.");
+      return dfa;
+    }
+
+    final int [] wildcardKinds = new int [tokenizerData.m_lexStateNames.length];
+    for (int i = 0; i < wildcardKinds.length; i++)
+    {
+      final Integer kind = tokenizerData.m_wildcardKind.get (Integer.valueOf (i));
+      wildcardKinds[i] = kind == null ? Integer.MAX_VALUE : kind.intValue ();
+    }
+    final TokenizerDfa utf8Dfa = dfa.toUtf8 (Options.isIgnoreCase (), wildcardKinds, MAX_DFA_STATES);
+    if (utf8Dfa == null)
+    {
+      JavaCCErrors.warning ("The UTF-8 token manager DFA needs more than " +
+                            MAX_DFA_STATES +
+                            " states. Falling back to the character based DFA.");
+      return dfa;
+    }
+    m_bByteInput = true;
+    return utf8Dfa;
+  }
+
+  @Override
+  protected void addTemplateOptions (final Map <String, Object> options, final TokenizerData tokenizerData)
+  {
+    super.addTemplateOptions (options, tokenizerData);
+    if (m_bByteInput)
+    {
+      options.put ("utf8ByteInput", Boolean.TRUE);
+      if (Options.isGenerateJavaBoilerplateCode ())
+        FilesJava.gen_Utf8ByteStream ();
+    }
+  }
+
+  @Override
+  protected void dumpCharClasses (final CodeGenerator codeGenerator, final int [] charClass)
+  {
+    if (!m_bByteInput)
+    {
+      super.dumpCharClasses (codeGenerator, charClass);
+      return;
+    }
+
+    codeGenerator.genCodeLine ("private static final int[] jjDfaByteClass = {");
+    for (int i = 0; i < charClass.length; i++)
+    {
+      if (i > 0)
+        codeGenerator.genCode (i % 16 == 0 ? ",\n" : ", ");
+      codeGenerator.genCode (Integer.toString (charClass[i]));
+    }
+    codeGenerator.genCodeLine ("};");
+  }
+}
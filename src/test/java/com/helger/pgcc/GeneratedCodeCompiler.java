@@ -0,0 +1,191 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import com.helger.commons.io.file.FileOperations;
+import com.helger.commons.io.file.FileSystemIterator;
+import com.helger.commons.io.file.FilenameHelper;
+import com.helger.commons.io.file.IFileFilter;
+import com.helger.pgcc.jjtree.JJTree;
+import com.helger.pgcc.parser.Main;
+
+/**
+ * Generates the Java code of a grammar, compiles it and loads the classes, so
+ * that tests can check the behaviour of the generated parsers.
+ */
+public final class GeneratedCodeCompiler
+{
+  private GeneratedCodeCompiler ()
+  {}
+
+  /**
+   * Generate the code of a grammar. For <code>.jjt</code> files JJTree is run
+   * first and the options are passed to both tools. The destination directory
+   * is emptied before, because existing support files are not overwritten.
+   *
+   * @param aGrammar
+   *        the grammar file
+   * @param aDestDir
+   *        the directory the code is generated into
+   * @param aOptions
+   *        the command line options, e.g. <code>-TOKEN_WINDOW=true</code>
+   * @throws Exception
+   *         on error
+   */
+  public static void generate (@Nonnull final File aGrammar,
+                               @Nonnull final File aDestDir,
+                               @Nonnull final String... aOptions) throws Exception
+  {
+    FileOperations.deleteDirRecursiveIfExisting (aDestDir);
+    aDestDir.mkdirs ();
+    final List <String> aArgs = new ArrayList <> ();
+    aArgs.add ("-OUTPUT_DIRECTORY=" + aDestDir.getAbsolutePath ());
+    aArgs.addAll (Arrays.asList (aOptions));
+
+    File aJJ = aGrammar;
+    if (aGrammar.getName ().endsWith (".jjt"))
+    {
+      final List <String> aTreeArgs = new ArrayList <> (aArgs);
+      aTreeArgs.add (aGrammar.getAbsolutePath ());
+      assertTrue (new JJTree ().main (aTreeArgs.toArray (new String [0])).isSuccess ());
+      aJJ = new File (aDestDir, FilenameHelper.getBaseName (aGrammar) + ".jj");
+    }
+    aArgs.add (aJJ.getAbsolutePath ());
+    assertTrue (Main.mainProgram (aArgs.toArray (new String [0])).isSuccess ());
+  }
+
+  /**
+   * Compile all Java files of a directory into its sub directory
+   * <code>classes</code>.
+   *
+   * @param aSrcDir
+   *        the directory with the generated Java files
+   * @return the class loader for the compiled classes
+   * @throws Exception
+   *         on error
+   */
+  @Nonnull
+  public static ClassLoader compile (@Nonnull final File aSrcDir) throws Exception
+  {
+    final JavaCompiler aCompiler = ToolProvider.getSystemJavaCompiler ();
+    assertNotNull ("A JDK is required to compile the generated code", aCompiler);
+
+    final File aClassesDir = new File (aSrcDir, "classes");
+    aClassesDir.mkdirs ();
+    final List <String> aArgs = new ArrayList <> (Arrays.asList ("-nowarn",
+                                                                  "-encoding",
+                                                                  "UTF-8",
+                                                                  "-d",
+                                                                  aClassesDir.getAbsolutePath ()));
+    for (final File f : new FileSystemIterator (aSrcDir).withFilter (IFileFilter.filenameEndsWith (".java")))
+      aArgs.add (f.getAbsolutePath ());
+
+    final ByteArrayOutputStream aErr = new ByteArrayOutputStream ();
+    final int nRet = aCompiler.run (null, null, aErr, aArgs.toArray (new String [0]));
+    assertTrue ("Compiling " + aSrcDir + " failed:\n" + aErr, nRet == 0);
+    return new URLClassLoader (new URL [] { aClassesDir.toURI ().toURL () },
+                               GeneratedCodeCompiler.class.getClassLoader ());
+  }
+
+  /**
+   * Invoke a public method by name. Exceptions thrown by the method are
+   * rethrown unwrapped.
+   *
+   * @param aTarget
+   *        the object, or the class for static methods
+   * @param sName
+   *        the method name
+   * @param aArgs
+   *        the arguments
+   * @return the return value
+   * @throws Exception
+   *         the exception of the invoked method
+   */
+  public static Object invoke (@Nonnull final Object aTarget,
+                               @Nonnull final String sName,
+                               @Nonnull final Object... aArgs) throws Exception
+  {
+    final Class <?> aClass = aTarget instanceof Class <?> ? (Class <?>) aTarget : aTarget.getClass ();
+    for (final Method m : aClass.getMethods ())
+      if (m.getName ().equals (sName) && m.getParameterCount () == aArgs.length)
+      {
+        final Class <?> [] aTypes = m.getParameterTypes ();
+        boolean bMatch = true;
+        for (int i = 0; i < aArgs.length; ++i)
+          if (aArgs[i] != null && !_box (aTypes[i]).isInstance (aArgs[i]))
+            bMatch = false;
+        if (bMatch)
+          try
+          {
+            return m.invoke (aTarget instanceof Class <?> ? null : aTarget, aArgs);
+          }
+          catch (final InvocationTargetException ex)
+          {
+            if (ex.getCause () instanceof Exception)
+              throw (Exception) ex.getCause ();
+            throw (Error) ex.getCause ();
+          }
+      }
+    throw new NoSuchMethodException (aClass.getName () + "." + sName);
+  }
+
+  @Nonnull
+  private static Class <?> _box (@Nonnull final Class <?> aClass)
+  {
+    if (aClass == int.class)
+      return Integer.class;
+    if (aClass == boolean.class)
+      return Boolean.class;
+    if (aClass == long.class)
+      return Long.class;
+    return aClass;
+  }
+}
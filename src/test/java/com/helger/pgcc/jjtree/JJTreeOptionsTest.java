@@ -34,6 +34,8 @@
 package com.helger.pgcc.jjtree;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 
@@ -110,6 +112,50 @@ public final class JJTreeOptionsTest
     // Need some functional tests, as well.
   }
 
+  @Test
+  public void testNodeStorage ()
+  {
+    assertEquals (JJTreeOptions.NODE_STORAGE_OBJECTS, JJTreeOptions.getNodeStorage ());
+    assertFalse (JJTreeOptions.isNodeStorageFlat ());
+
+    Options.setCmdLineOption ("NODE_STORAGE=flat");
+    JJTreeOptions.validate ();
+    assertTrue (JJTreeOptions.isNodeStorageFlat ());
+    assertEquals (0, JavaCCErrors.getWarningCount ());
+
+    JJTreeOptions.init ();
+    JavaCCErrors.reInit ();
+
+    Options.setCmdLineOption ("NODE_STORAGE=compact");
+    JJTreeOptions.validate ();
+    assertEquals (JJTreeOptions.NODE_STORAGE_OBJECTS, JJTreeOptions.getNodeStorage ());
+    assertEquals (1, JavaCCErrors.getWarningCount ());
+  }
+
+  @Test
+  public void testParallelVisitor ()
+  {
+    assertFalse (JJTreeOptions.isParallelVisitor ());
+
+    Options.setCmdLineOption ("PARALLEL_VISITOR=true");
+    Options.setCmdLineOption ("VISITOR=true");
+    Options.setCmdLineOption ("JDK_VERSION=1.8");
+    JJTreeOptions.validate ();
+    assertTrue (JJTreeOptions.isParallelVisitor ());
+    assertEquals (0, JavaCCErrors.getWarningCount ());
+
+    JJTreeOptions.init ();
+    JavaCCErrors.reInit ();
+
+    // ForkJoinPool.commonPool requires Java 8
+    Options.setCmdLineOption ("PARALLEL_VISITOR=true");
+    Options.setCmdLineOption ("VISITOR=true");
+    Options.setCmdLineOption ("JDK_VERSION=1.7");
+    JJTreeOptions.validate ();
+    assertFalse (JJTreeOptions.isParallelVisitor ());
+    assertEquals (1, JavaCCErrors.getWarningCount ());
+  }
+
   @Test
   public void testValidate ()
   {
@@ -0,0 +1,68 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.jjtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import com.helger.pgcc.parser.JavaCCErrors;
+
+/**
+ * Test the checks of JJTree for option NODE_STORAGE=flat.
+ */
+public final class NodeStorageFlatFuncTest
+{
+  private static int _getWarningCount (final String sNodeStorage)
+  {
+    final File fDest = new File ("target/nodestorage-" + sNodeStorage);
+    fDest.mkdirs ();
+    assertTrue (new JJTree ().main (new String [] { "-OUTPUT_DIRECTORY=" + fDest.getAbsolutePath (),
+                                                    "-NODE_STORAGE=" + sNodeStorage,
+                                                    "grammars/OperatorsTree.jjt" })
+                             .isSuccess ());
+    return JavaCCErrors.getWarningCount ();
+  }
+
+  @Test
+  public void testReturnJjtThis ()
+  {
+    // Start() returns jjtThis which has no children in flat mode
+    assertEquals (1, _getWarningCount (JJTreeOptions.NODE_STORAGE_FLAT));
+    assertEquals (0, _getWarningCount (JJTreeOptions.NODE_STORAGE_OBJECTS));
+  }
+}
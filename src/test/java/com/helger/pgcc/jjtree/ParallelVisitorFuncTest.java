@@ -0,0 +1,105 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.jjtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedCodeCompiler;
+
+/**
+ * Test the parallel visitor generated with option PARALLEL_VISITOR.
+ */
+public final class ParallelVisitorFuncTest
+{
+  private static String _expected (final int nChildren)
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (int i = 0; i < nChildren; ++i)
+      aSB.append (i).append (',');
+    return aSB.toString ();
+  }
+
+  @Test
+  public void testVisit () throws Exception
+  {
+    final File fDest = new File ("target/parallel-visitor");
+    GeneratedCodeCompiler.generate (new File ("grammars/OperatorsTree.jjt"),
+                                    fDest,
+                                    "-JDK_VERSION=1.8",
+                                    "-PARALLEL_VISITOR=true",
+                                    "-VISITOR_EXCEPTION=java.io.IOException");
+    Files.copy (new File ("src/test/resources/visitor/ParallelVisitorChecks.java").toPath (),
+                new File (fDest, "ParallelVisitorChecks.java").toPath (),
+                StandardCopyOption.REPLACE_EXISTING);
+    final Class <?> aChecks = GeneratedCodeCompiler.compile (fDest).loadClass ("ParallelVisitorChecks");
+
+    // Not more children than the threshold - visited sequentially
+    assertEquals (_expected (10),
+                  GeneratedCodeCompiler.invoke (aChecks,
+                                                "visitNumbers",
+                                                Integer.valueOf (10),
+                                                Integer.valueOf (16),
+                                                Integer.valueOf (-1)));
+    // Merged in the order of the children
+    assertEquals (_expected (1000),
+                  GeneratedCodeCompiler.invoke (aChecks,
+                                                "visitNumbers",
+                                                Integer.valueOf (1000),
+                                                Integer.valueOf (16),
+                                                Integer.valueOf (-1)));
+
+    // The exception of a task is rethrown unwrapped
+    try
+    {
+      GeneratedCodeCompiler.invoke (aChecks,
+                                    "visitNumbers",
+                                    Integer.valueOf (1000),
+                                    Integer.valueOf (16),
+                                    Integer.valueOf (537));
+      fail ();
+    }
+    catch (final IOException ex)
+    {
+      assertEquals ("child 537", ex.getMessage ());
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.jjtree;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedCodeCompiler;
+
+/**
+ * Test the walker generated with option VISITOR.
+ */
+public final class WalkerFuncTest
+{
+  @Test
+  public void testWalk () throws Exception
+  {
+    final File fDest = new File ("target/walker");
+    GeneratedCodeCompiler.generate (new File ("grammars/OperatorsTree.jjt"), fDest, "-JDK_VERSION=1.8");
+    Files.copy (new File ("src/test/resources/visitor/WalkerChecks.java").toPath (),
+                new File (fDest, "WalkerChecks.java").toPath (),
+                StandardCopyOption.REPLACE_EXISTING);
+    final Class <?> aChecks = GeneratedCodeCompiler.compile (fDest).loadClass ("WalkerChecks");
+
+    assertEquals ("<Start <Add <Name Name> <Negate <Number Number> Negate> Add> Start>",
+                  GeneratedCodeCompiler.invoke (aChecks, "walk", "x + -1"));
+    // Children of skipped nodes are not entered, but the node is left
+    assertEquals ("<Start <Subtract <Multiply Multiply> <Number Number> Subtract> Start>",
+                  GeneratedCodeCompiler.invoke (aChecks, "walk", "(a + 1) * -b - 2"));
+
+    // Deeper than the stack of the thread
+    assertEquals ("recursion overflowed, entered 100001, left 100001",
+                  GeneratedCodeCompiler.invoke (aChecks, "walkDeep", Integer.valueOf (100000)));
+  }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.annotation.Nonnull;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedCodeCompiler;
+
+/**
+ * Test the UTF-8 decoder of the ChannelProvider of the modern templates
+ * against {@link String#String(byte[], java.nio.charset.Charset)}.
+ */
+public final class ChannelProviderFuncTest
+{
+  private static final int [] CHUNK_SIZES = { 1, 2, 3, 4, 5, 7, 64, 4096 };
+  private static final int [] BYTES_PER_READ = { 1, 3, 4096 };
+
+  private static Class <?> s_aProviderClass;
+  private static Method s_aRead;
+  private static Method s_aMapFile;
+
+  /**
+   * A channel that returns at most a few bytes per read, so that the multi
+   * byte sequences are split between the reads.
+   */
+  private static final class TrickleChannel implements ReadableByteChannel
+  {
+    private final byte [] m_aBytes;
+    private final int m_nMaxRead;
+    private int m_nPos;
+
+    TrickleChannel (@Nonnull final byte [] aBytes, final int nMaxRead)
+    {
+      m_aBytes = aBytes;
+      m_nMaxRead = nMaxRead;
+    }
+
+    public int read (@Nonnull final ByteBuffer aDest)
+    {
+      if (m_nPos == m_aBytes.length)
+        return -1;
+      final int nLen = Math.min (Math.min (m_nMaxRead, aDest.remaining ()), m_aBytes.length - m_nPos);
+      aDest.put (m_aBytes, m_nPos, nLen);
+      m_nPos += nLen;
+      return nLen;
+    }
+
+    public boolean isOpen ()
+    {
+      return true;
+    }
+
+    public void close ()
+    {}
+  }
+
+  @BeforeClass
+  public static void beforeClass () throws Exception
+  {
+    final File fDest = new File ("target/behaviour/channel-provider");
+    GeneratedCodeCompiler.generate (new File ("src/test/resources/behaviour/Behaviour.jj"),
+                                    fDest,
+                                    "-JDK_VERSION=1.8",
+                                    "-JAVA_TEMPLATE_TYPE=modern");
+    s_aProviderClass = GeneratedCodeCompiler.compile (fDest).loadClass ("ChannelProvider");
+    s_aRead = s_aProviderClass.getMethod ("read", char [].class, int.class, int.class);
+    s_aMapFile = s_aProviderClass.getMethod ("mapFile", FileChannel.class, long.class);
+  }
+
+  @Nonnull
+  private static String _decode (@Nonnull final Object aProvider, final int nChunkSize) throws Exception
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    // Don't start at offset 0
+    final char [] aBuf = new char [nChunkSize + 2];
+    while (true)
+    {
+      final int nRead = ((Integer) s_aRead.invoke (aProvider, aBuf, Integer.valueOf (1), Integer.valueOf (nChunkSize))).intValue ();
+      if (nRead < 0)
+        break;
+      aSB.append (aBuf, 1, nRead);
+    }
+    GeneratedCodeCompiler.invoke (aProvider, "close");
+    return aSB.toString ();
+  }
+
+  private static void _check (@Nonnull final String sExpected,
+                              @Nonnull final byte [] aBytes,
+                              @Nonnull final long... aMapSizes) throws Exception
+  {
+    final Constructor <?> aFromBuffer = s_aProviderClass.getConstructor (ByteBuffer.class);
+    final Constructor <?> aFromChannel = s_aProviderClass.getConstructor (ReadableByteChannel.class);
+    final File aFile = File.createTempFile ("channel", ".txt", new File ("target"));
+    try
+    {
+      Files.write (aFile.toPath (), aBytes);
+      for (final int nChunkSize : CHUNK_SIZES)
+      {
+        final String sMsg = "chunk size " + nChunkSize;
+        assertEquals (sMsg, sExpected, _decode (aFromBuffer.newInstance (ByteBuffer.wrap (aBytes)), nChunkSize));
+        for (final int nBytesPerRead : BYTES_PER_READ)
+          assertEquals (sMsg + ", " + nBytesPerRead + " bytes per read",
+                        sExpected,
+                        _decode (aFromChannel.newInstance (new TrickleChannel (aBytes, nBytesPerRead)), nChunkSize));
+        for (final long nMapSize : aMapSizes)
+          assertEquals (sMsg + ", map size " + nMapSize,
+                        sExpected,
+                        _decode (s_aMapFile.invoke (null,
+                                                    FileChannel.open (aFile.toPath (), StandardOpenOption.READ),
+                                                    Long.valueOf (nMapSize)),
+                                 nChunkSize));
+      }
+    }
+    finally
+    {
+      aFile.delete ();
+    }
+  }
+
+  private static void _checkLikeString (@Nonnull final byte [] aBytes, @Nonnull final long... aMapSizes) throws Exception
+  {
+    _check (new String (aBytes, StandardCharsets.UTF_8), aBytes, aMapSizes);
+  }
+
+  @Nonnull
+  private static byte [] _bytes (@Nonnull final int... aValues)
+  {
+    final byte [] ret = new byte [aValues.length];
+    for (int i = 0; i < aValues.length; ++i)
+      ret[i] = (byte) aValues[i];
+    return ret;
+  }
+
+  @Test
+  public void testValid () throws Exception
+  {
+    _checkLikeString (new byte [0], 4);
+    _checkLikeString ("a\u00e4\u20ac\ud83d\ude00z".getBytes (StandardCharsets.UTF_8), 4, 5);
+
+    // Bigger than the buffer of the channel
+    final Random aRandom = new Random (42);
+    final StringBuilder aSB = new StringBuilder ();
+    while (aSB.length () < 60000)
+    {
+      final int nKind = aRandom.nextInt (8);
+      if (nKind < 4)
+        aSB.append ((char) aRandom.nextInt (0x80));
+      else
+        if (nKind == 4)
+          aSB.append ((char) (0x80 + aRandom.nextInt (0x780)));
+        else
+          if (nKind == 5)
+          {
+            final char c = (char) (0x800 + aRandom.nextInt (0xf800));
+            if (!Character.isSurrogate (c))
+              aSB.append (c);
+          }
+          else
+            aSB.appendCodePoint (0x10000 + aRandom.nextInt (0x100000));
+    }
+    final byte [] aBytes = aSB.toString ().getBytes (StandardCharsets.UTF_8);
+    _checkLikeString (aBytes, 64 * 1024);
+    _checkLikeString (Arrays.copyOf (aBytes, 3000), 4, 5);
+  }
+
+  @Test
+  public void testMalformed () throws Exception
+  {
+    final int [] [] aMalformed = { // Continuation bytes without lead byte
+                                   { 0x80 },
+                                   { 0xbf, 0x80, 0x41 },
+                                   // Overlong
+                                   { 0xc0, 0x80 },
+                                   { 0xc1, 0xbf },
+                                   { 0xe0, 0x80, 0x80 },
+                                   { 0xe0, 0x9f, 0xbf },
+                                   { 0xf0, 0x80, 0x80, 0x80 },
+                                   { 0xf0, 0x8f, 0xbf, 0xbf },
+                                   // Beyond U+10FFFF
+                                   { 0xf4, 0x90, 0x80, 0x80 },
+                                   { 0xf5, 0x80, 0x80, 0x80 },
+                                   { 0xff, 0xfe },
+                                   // Truncated
+                                   { 0xc3 },
+                                   { 0xe2, 0x82 },
+                                   { 0xe2, 0x82, 0x41 },
+                                   { 0xf0, 0x9f, 0x98 },
+                                   { 0xf0, 0x9f, 0x98, 0x41 },
+                                   { 0xf0, 0x9f, 0xe2, 0x82, 0xac } };
+    for (final int [] aValues : aMalformed)
+    {
+      _checkLikeString (_bytes (aValues), 4, 5);
+      // Also in the middle of valid input
+      final byte [] aBytes = _bytes (aValues);
+      final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+      aBAOS.write (0x61);
+      aBAOS.write (aBytes, 0, aBytes.length);
+      aBAOS.write (0xc3);
+      aBAOS.write (0xa4);
+      aBAOS.write (aBytes, 0, aBytes.length);
+      aBAOS.write (0x7a);
+      _checkLikeString (aBAOS.toByteArray (), 4, 5);
+    }
+
+    // Random bytes with many lead and continuation bytes
+    final int [] aInteresting = { 0x41, 0x80, 0x8f, 0x90, 0x9f, 0xa0, 0xbf, 0xc0, 0xc2, 0xdf, 0xe0, 0xe2, 0xef, 0xf0, 0xf4, 0xf5, 0xff };
+    final Random aRandom = new Random (42);
+    final byte [] aBytes = new byte [5000];
+    for (int i = 0; i < aBytes.length; ++i)
+    {
+      aBytes[i] = (byte) (aRandom.nextBoolean () ? aInteresting[aRandom.nextInt (aInteresting.length)]
+                                                 : aRandom.nextInt (256));
+      // Encoded surrogates are tested separately
+      if (i > 0 && (aBytes[i - 1] & 0xff) == 0xed && (aBytes[i] & 0xff) >= 0xa0 && (aBytes[i] & 0xff) <= 0xbf)
+        aBytes[i] = 0x41;
+    }
+    _checkLikeString (aBytes, 4, 5);
+  }
+
+  @Test
+  public void testEncodedSurrogates () throws Exception
+  {
+    // String(byte[], UTF_8) replaces every encoded surrogate with a single
+    // U+FFFD, but ED is only valid with a second byte of 80..9F
+    _check ("a\ufffd\ufffd\ufffdb", _bytes (0x61, 0xed, 0xa0, 0x80, 0x62), 4, 5);
+    _check ("\ufffd\ufffd\ufffd\ufffd\ufffd\ufffd", _bytes (0xed, 0xa0, 0xbd, 0xed, 0xb8, 0x80), 4, 5);
+    _checkLikeString (_bytes (0xed, 0x9f, 0xbf, 0xed, 0x80), 4, 5);
+  }
+}
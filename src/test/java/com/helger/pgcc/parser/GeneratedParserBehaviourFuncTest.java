@@ -0,0 +1,335 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.helger.pgcc.GeneratedCodeCompiler;
+
+/**
+ * Compiles the parsers generated with the options of the code generator for a
+ * small corpus and compares the token stream, the parse result and the errors
+ * with the parser generated without options.
+ */
+@RunWith (Parameterized.class)
+public final class GeneratedParserBehaviourFuncTest
+{
+  private static final String [] VALID_INPUTS = { "# leading comment\n" +
+                                                  "let a, b, c;\n" +
+                                                  "x = 1 + 2 * (3 - y);  # trailing\n" +
+                                                  "f(1, \"s\\\"t\", g(h, 2), k);\n" +
+                                                  "f(x) + 1;\n" +
+                                                  "\ty;\n" +
+                                                  "retype 42;\n" +
+                                                  "retype z;\n",
+                                                  "",
+                                                  "let a;\n# only a comment" };
+  private static final String [] INVALID_INPUTS = { "let ;", "f(1,;", "x = = 1;", "a $ b;", "x = \"open;" };
+  private static final String [] IMAGE_INPUTS = { "abc 41 ;\nlonger_name x1 7;", "" };
+  private static final String [] TREE_INPUTS = { "x = 1 + 2 * -(3 - y);\nf(a, g(b), 4) * 2;\n-x;\n", "" };
+
+  private final String m_sName;
+  private final String m_sExtension;
+  private final String [] m_aOptions;
+
+  @Parameters (name = "{0}")
+  public static List <Object []> getOptionSets ()
+  {
+    return GrammarsOptionsFuncTest.getOptionSets ();
+  }
+
+  public GeneratedParserBehaviourFuncTest (final String sName, final String sExtension, final String [] aOptions)
+  {
+    m_sName = sName;
+    m_sExtension = sExtension;
+    m_aOptions = aOptions;
+  }
+
+  @Nonnull
+  private static ClassLoader _compile (@Nonnull final String sGrammar,
+                                       @Nonnull final String sDest,
+                                       @Nonnull final String... aOptions) throws Exception
+  {
+    final File fDest = new File ("target/behaviour/" + sDest);
+    final String [] aAllOptions = new String [aOptions.length + 1];
+    aAllOptions[0] = "-JDK_VERSION=1.8";
+    System.arraycopy (aOptions, 0, aAllOptions, 1, aOptions.length);
+    GeneratedCodeCompiler.generate (new File ("src/test/resources/behaviour/" + sGrammar), fDest, aAllOptions);
+    return GeneratedCodeCompiler.compile (fDest);
+  }
+
+  /**
+   * @return the object to create or ReInit the parser with - a stream or with
+   *         LAZY_TOKEN_IMAGE a token manager for an input kept in memory
+   */
+  @Nonnull
+  private static Object _createStream (@Nonnull final ClassLoader aCL,
+                                       @Nonnull final String sClassName,
+                                       @Nonnull final String sInput) throws Exception
+  {
+    try
+    {
+      // USER_CHAR_STREAM with the UTF-8 DFA
+      return aCL.loadClass ("Utf8ByteStream")
+                .getConstructor (byte [].class)
+                .newInstance ((Object) sInput.getBytes (StandardCharsets.UTF_8));
+    }
+    catch (final ClassNotFoundException ex)
+    {
+      try
+      {
+        // Only the tokens of inputs kept in memory create their image lazily
+        final Class <?> aCharStream = aCL.loadClass ("SimpleCharStream");
+        final Object aStream = aCharStream.getConstructor (String.class).newInstance (sInput);
+        return aCL.loadClass (sClassName + "TokenManager").getConstructor (aCharStream).newInstance (aStream);
+      }
+      catch (final ClassNotFoundException | NoSuchMethodException ex2)
+      {
+        return new StringReader (sInput);
+      }
+    }
+  }
+
+  @Nonnull
+  private static Object _createParser (@Nonnull final ClassLoader aCL,
+                                       @Nonnull final String sClassName,
+                                       @Nonnull final String sInput) throws Exception
+  {
+    final Object aStream = _createStream (aCL, sClassName, sInput);
+    for (final Constructor <?> c : aCL.loadClass (sClassName).getConstructors ())
+      if (c.getParameterCount () == 1 && c.getParameterTypes ()[0].isInstance (aStream))
+        return c.newInstance (aStream);
+    throw new IllegalStateException ("No constructor of " + sClassName + " for " + aStream.getClass ());
+  }
+
+  private static Object _getTokenProperty (@Nonnull final Object aToken, @Nonnull final String sName) throws Exception
+  {
+    try
+    {
+      return aToken.getClass ().getField (sName).get (aToken);
+    }
+    catch (final NoSuchFieldException ex)
+    {
+      // LAZY_LINE_COLUMN
+      return GeneratedCodeCompiler.invoke (aToken,
+                                           "get" + Character.toUpperCase (sName.charAt (0)) + sName.substring (1));
+    }
+  }
+
+  @Nonnull
+  private static String _describeToken (@Nonnull final Object aToken) throws Exception
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    Object aSpecial = _getTokenProperty (aToken, "specialToken");
+    while (aSpecial != null)
+    {
+      aSB.append ("special ").append (aSpecial).append (' ');
+      aSpecial = _getTokenProperty (aSpecial, "specialToken");
+    }
+    aSB.append (_getTokenProperty (aToken, "kind"))
+       .append (" '")
+       .append (aToken)
+       .append ("' ")
+       .append (_getTokenProperty (aToken, "beginLine"))
+       .append (':')
+       .append (_getTokenProperty (aToken, "beginColumn"))
+       .append ('-')
+       .append (_getTokenProperty (aToken, "endLine"))
+       .append (':')
+       .append (_getTokenProperty (aToken, "endColumn"));
+    return aSB.toString ();
+  }
+
+  @Nonnull
+  private static String _tokenize (@Nonnull final ClassLoader aCL, @Nonnull final String sInput) throws Exception
+  {
+    final Object aParser = _createParser (aCL, "Behaviour", sInput);
+    final StringBuilder aSB = new StringBuilder ();
+    while (true)
+    {
+      final Object aToken = GeneratedCodeCompiler.invoke (aParser, "getNextToken");
+      aSB.append (_describeToken (aToken)).append ('\n');
+      if (((Integer) _getTokenProperty (aToken, "kind")).intValue () == 0)
+        return aSB.toString ();
+    }
+  }
+
+  @Nonnull
+  private static String _parse (@Nonnull final ClassLoader aCL) throws Exception
+  {
+    final StringBuilder aSB = new StringBuilder ();
+
+    // Reuse one parser for all valid inputs
+    final Object aParser = _createParser (aCL, "Behaviour", "");
+    for (final String sInput : VALID_INPUTS)
+    {
+      GeneratedCodeCompiler.invoke (aParser, "ReInit", _createStream (aCL, "Behaviour", sInput));
+      GeneratedCodeCompiler.invoke (aParser, "Program");
+    }
+    aSB.append (GeneratedCodeCompiler.invoke (aParser, "getTrace")).append ('\n');
+
+    for (final String sInput : INVALID_INPUTS)
+    {
+      final Object aInvalidParser = _createParser (aCL, "Behaviour", sInput);
+      try
+      {
+        GeneratedCodeCompiler.invoke (aInvalidParser, "Program");
+        aSB.append ("no error");
+      }
+      catch (final Exception | Error ex)
+      {
+        aSB.append (ex.getClass ().getSimpleName ());
+        if (ex.getClass ().getSimpleName ().equals ("ParseException"))
+        {
+          final Object aCurrentToken = ex.getClass ().getField ("currentToken").get (ex);
+          aSB.append (" at ").append (_describeToken (_getTokenProperty (aCurrentToken, "next")));
+        }
+      }
+      aSB.append (" after ").append (GeneratedCodeCompiler.invoke (aInvalidParser, "getTrace")).append ('\n');
+    }
+    return aSB.toString ();
+  }
+
+  @Nonnull
+  private static String _parseImageActions (@Nonnull final ClassLoader aCL, @Nonnull final String sInput) throws Exception
+  {
+    final Object aParser = _createParser (aCL, "ImageActions", sInput);
+    GeneratedCodeCompiler.invoke (aParser, "Program");
+    return (String) GeneratedCodeCompiler.invoke (aParser, "getTrace");
+  }
+
+  private static void _dumpTree (@Nonnull final Object aNode, @Nonnull final StringBuilder aSB) throws Exception
+  {
+    aSB.append (aNode);
+    final int nChildren = ((Integer) GeneratedCodeCompiler.invoke (aNode, "jjtGetNumChildren")).intValue ();
+    if (nChildren > 0)
+    {
+      aSB.append ('(');
+      for (int i = 0; i < nChildren; ++i)
+      {
+        if (i > 0)
+          aSB.append (", ");
+        _dumpTree (GeneratedCodeCompiler.invoke (aNode, "jjtGetChild", Integer.valueOf (i)), aSB);
+      }
+      aSB.append (')');
+    }
+  }
+
+  @Nonnull
+  private static Object _parseTree (@Nonnull final ClassLoader aCL, @Nonnull final String sInput) throws Exception
+  {
+    final Object aParser = _createParser (aCL, "BehaviourTree", sInput);
+    GeneratedCodeCompiler.invoke (aParser, "Start");
+    final Field aState = aParser.getClass ().getDeclaredField ("jjtree");
+    aState.setAccessible (true);
+    return GeneratedCodeCompiler.invoke (aState.get (aParser), "rootNode");
+  }
+
+  @Nonnull
+  private static String _buildTrees (@Nonnull final ClassLoader aCL) throws Exception
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    for (final String sInput : TREE_INPUTS)
+    {
+      final Object aRoot = _parseTree (aCL, sInput);
+      _dumpTree (aRoot, aSB);
+      aSB.append ('\n');
+
+      Class <?> aSerializer;
+      try
+      {
+        aSerializer = aCL.loadClass ("BehaviourTreeTreeSerializer");
+      }
+      catch (final ClassNotFoundException ex)
+      {
+        continue;
+      }
+      // The deserialized tree must be identical
+      final ByteArrayOutputStream aBAOS = new ByteArrayOutputStream ();
+      GeneratedCodeCompiler.invoke (aSerializer, "write", aRoot, aBAOS);
+      final Object aReadRoot = GeneratedCodeCompiler.invoke (aSerializer,
+                                                             "read",
+                                                             ByteBuffer.wrap (aBAOS.toByteArray ()));
+      final StringBuilder aReadSB = new StringBuilder ();
+      _dumpTree (aReadRoot, aReadSB);
+      assertEquals (aSB.substring (aSB.lastIndexOf ("\n", aSB.length () - 2) + 1, aSB.length () - 1),
+                    aReadSB.toString ());
+    }
+    return aSB.toString ();
+  }
+
+  @Test
+  public void testSameBehaviourAsClassicParser () throws Exception
+  {
+    if (m_sExtension.equals (".jjt"))
+    {
+      final ClassLoader aClassic = _compile ("BehaviourTree.jjt", "tree-classic");
+      final ClassLoader aTested = _compile ("BehaviourTree.jjt", "tree-" + m_sName, m_aOptions);
+      assertEquals (_buildTrees (aClassic), _buildTrees (aTested));
+    }
+    else
+    {
+      final ClassLoader aClassic = _compile ("Behaviour.jj", "classic");
+      final ClassLoader aTested = _compile ("Behaviour.jj", m_sName, m_aOptions);
+      for (final String sInput : VALID_INPUTS)
+        assertEquals (_tokenize (aClassic, sInput), _tokenize (aTested, sInput));
+      for (final String sInput : INVALID_INPUTS)
+        if (!sInput.contains ("$") && !sInput.contains ("\"open"))
+          assertEquals (_tokenize (aClassic, sInput), _tokenize (aTested, sInput));
+      assertEquals (_parse (aClassic), _parse (aTested));
+
+      // Actions that read Token.image
+      final ClassLoader aImageClassic = _compile ("ImageActions.jj", "image-classic");
+      final ClassLoader aImageTested = _compile ("ImageActions.jj", "image-" + m_sName, m_aOptions);
+      for (final String sInput : IMAGE_INPUTS)
+        assertEquals (_parseImageActions (aImageClassic, sInput), _parseImageActions (aImageTested, sInput));
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ast.CompilationUnit;
+import com.helger.commons.io.file.FileSystemIterator;
+import com.helger.commons.io.file.FilenameHelper;
+import com.helger.commons.io.file.IFileFilter;
+import com.helger.pgcc.GeneratedCodeCompiler;
+
+/**
+ * Generates the code of all demo grammars with the options of the code
+ * generator and checks that the created Java files can be parsed and, if the
+ * grammar needs no other classes, compiled.
+ */
+@RunWith (Parameterized.class)
+public final class GrammarsOptionsFuncTest
+{
+  private static final Logger s_aLogger = LoggerFactory.getLogger (GrammarsOptionsFuncTest.class);
+
+  /** The grammars that use classes which are not generated */
+  private static final Set <String> EXTERNAL_CLASSES_GRAMMARS = new HashSet <> (Arrays.asList ("EcmaScript.jjt",
+                                                                                              "GdmoTranslator.jj",
+                                                                                              "JavaCC.jj",
+                                                                                              "ParserCSS30.jjt",
+                                                                                              "ParserCSSCharsetDetector.jjt",
+                                                                                              "ParserXP2.jjt",
+                                                                                              "PetalParser.jj",
+                                                                                              "RTFParser.jj",
+                                                                                              "RuleCompiler.jj"));
+
+  private final String m_sName;
+  private final String m_sExtension;
+  private final String [] m_aOptions;
+
+  /**
+   * @return the option sets of the parser generator - name, grammar file
+   *         extension and options
+   */
+  @Parameters (name = "{0}")
+  public static List <Object []> getOptionSets ()
+  {
+    final List <Object []> ret = new ArrayList <> ();
+    ret.add (new Object [] { "dfa",
+                             ".jj",
+                             new String [] { "-TOKEN_MANAGER_CODE_GENERATOR=" + DfaJavaCodeGenerator.class.getName () } });
+    ret.add (new Object [] { "utf8dfa",
+                             ".jj",
+                             new String [] { "-USER_CHAR_STREAM=true",
+                                             "-TOKEN_MANAGER_CODE_GENERATOR=" +
+                                                                       Utf8DfaJavaCodeGenerator.class.getName () } });
+    ret.add (new Object [] { "eof", ".jj", new String [] { "-EOF_SENTINEL=true" } });
+    ret.add (new Object [] { "lazy", ".jj", new String [] { "-LAZY_TOKEN_IMAGE=true" } });
+    ret.add (new Object [] { "lazylc", ".jj", new String [] { "-LAZY_LINE_COLUMN=true" } });
+    ret.add (new Object [] { "encoded", ".jj", new String [] { "-ENCODED_TABLES=true" } });
+    ret.add (new Object [] { "memo", ".jj", new String [] { "-MEMOIZE_LOOKAHEAD=true" } });
+    ret.add (new Object [] { "static", ".jj", new String [] { "-STATIC_LOOKAHEAD=true" } });
+    ret.add (new Object [] { "adaptive", ".jj", new String [] { "-ADAPTIVE_LOOKAHEAD=true" } });
+    ret.add (new Object [] { "deferred",
+                             ".jj",
+                             new String [] { "-ERROR_REPORTING=true", "-DEFERRED_ERROR_REPORTING=true" } });
+    ret.add (new Object [] { "window", ".jj", new String [] { "-TOKEN_WINDOW=true" } });
+    ret.add (new Object [] { "pool", ".jj", new String [] { "-ERROR_REPORTING=true", "-PARSER_POOL=true" } });
+    ret.add (new Object [] { "batch", ".jj", new String [] { "-BATCH_PARSER=true" } });
+    ret.add (new Object [] { "tail", ".jj", new String [] { "-TAIL_RECURSION_LOOPS=true" } });
+    ret.add (new Object [] { "inline", ".jj", new String [] { "-INLINE_PRODUCTIONS=8" } });
+    ret.add (new Object [] { "flat", ".jjt", new String [] { "-NODE_STORAGE=flat" } });
+    ret.add (new Object [] { "serializer", ".jjt", new String [] { "-TRACK_TOKENS=true", "-TREE_SERIALIZER=true" } });
+    ret.add (new Object [] { "serializerlc",
+                             ".jjt",
+                             new String [] { "-TRACK_TOKENS=true", "-TREE_SERIALIZER=true", "-LAZY_LINE_COLUMN=true" } });
+    ret.add (new Object [] { "parallel", ".jjt", new String [] { "-PARALLEL_VISITOR=true" } });
+    return ret;
+  }
+
+  public GrammarsOptionsFuncTest (final String sName, final String sExtension, final String [] aOptions)
+  {
+    m_sName = sName;
+    m_sExtension = sExtension;
+    m_aOptions = aOptions;
+  }
+
+  @Test
+  public void testParseDemoGrammars () throws Exception
+  {
+    final File fDest = new File ("target/grammars-" + m_sName);
+    fDest.mkdirs ();
+    final boolean bUserCharStream = Arrays.asList (m_aOptions).contains ("-USER_CHAR_STREAM=true");
+
+    for (final File f : new FileSystemIterator (new File ("grammars")).withFilter (IFileFilter.filenameEndsWith (m_sExtension)))
+    {
+      s_aLogger.info ("Parsing " + f.getName () + " with " + Arrays.toString (m_aOptions));
+
+      final File fGrammarDest = new File (fDest, FilenameHelper.getBaseName (f));
+      final List <String> aArgs = new ArrayList <> ();
+      aArgs.add ("-JDK_VERSION=1.8");
+      aArgs.addAll (Arrays.asList (m_aOptions));
+      GeneratedCodeCompiler.generate (f, fGrammarDest, aArgs.toArray (new String [0]));
+
+      // Parse all created Java files
+      for (final File fJava : new FileSystemIterator (fGrammarDest).withFilter (IFileFilter.filenameEndsWith (".java")))
+      {
+        final CompilationUnit aCU = JavaParser.parse (fJava, StandardCharsets.UTF_8);
+        assertNotNull (aCU);
+      }
+
+      // The main methods of the grammars need the constructors for an
+      // InputStream, that are not generated with USER_CHAR_STREAM
+      if (!EXTERNAL_CLASSES_GRAMMARS.contains (f.getName ()) && !bUserCharStream)
+        GeneratedCodeCompiler.compile (fGrammarDest);
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test class for class {@link JavaMethodSplitter}.
+ */
+public final class JavaMethodSplitterTest
+{
+  @Test
+  public void testEstimateSize ()
+  {
+    assertEquals (0, JavaMethodSplitter.estimateSize (""));
+    // iload, sipush, if_icmple, sipush, istore
+    assertEquals (15, JavaMethodSplitter.estimateSize ("if (kind > 1655)\n  kind = 1655;"));
+    // aload_0, iconst_1, invokevirtual
+    assertEquals (5, JavaMethodSplitter.estimateSize ("{ jjCheckNAdd(1); }"));
+    // Labels are part of the switch
+    assertEquals (JavaMethodSplitter.estimateSize ("case 1: case 2:"),
+                  JavaMethodSplitter.estimateSize ("case ':': case '\\'':"));
+  }
+
+  @Test
+  public void testSplitCases ()
+  {
+    final List <String> aLines = new ArrayList <> ();
+    for (int i = 0; i < 1000; i++)
+    {
+      aLines.add ("   case " + i + ":");
+      if ((i % 2) == 0)
+      {
+        // Falls through
+        aLines.add ("      if (curChar == " + i + ")");
+        aLines.add ("         kind = " + i + ";");
+      }
+      else
+        aLines.add ("      break;");
+    }
+    final int nSize = JavaMethodSplitter.estimateSize (String.join ("\n", aLines));
+    assertTrue (nSize > 10000);
+
+    final List <List <String>> aChunks = JavaMethodSplitter.splitCases (aLines,
+                                                                        "   case ",
+                                                                        x -> x.equals ("      break;"),
+                                                                        1000,
+                                                                        3000);
+    assertTrue (aChunks.size () > 3);
+    final List <String> aAll = new ArrayList <> ();
+    for (int i = 0; i < aChunks.size (); i++)
+    {
+      final List <String> aChunk = aChunks.get (i);
+      assertTrue (JavaMethodSplitter.estimateSize (String.join ("\n", aChunk)) <= (i == 0 ? 1000 : 3000));
+      // Only split after a break
+      assertTrue (aChunk.get (aChunk.size () - 1).equals ("      break;"));
+      aAll.addAll (aChunk);
+    }
+    assertEquals (aLines, aAll);
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.ref.WeakReference;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedCodeCompiler;
+
+/**
+ * Test the table of option MEMOIZE_LOOKAHEAD in a generated parser.
+ */
+public final class MemoizeLookaheadFuncTest
+{
+  @Test
+  public void testConsumedTokensAreNotRetained () throws Exception
+  {
+    final File fDest = new File ("target/behaviour/memo-retain");
+    GeneratedCodeCompiler.generate (new File ("src/test/resources/behaviour/Behaviour.jj"),
+                                    fDest,
+                                    "-JDK_VERSION=1.8",
+                                    "-MEMOIZE_LOOKAHEAD=true");
+    final ClassLoader aCL = GeneratedCodeCompiler.compile (fDest);
+
+    // The lookahead of the first statement is memoized, the long expression
+    // afterwards needs no more lookaheads
+    final StringBuilder aInput = new StringBuilder ("f(1);\n1");
+    for (int i = 0; i < 20000; ++i)
+      aInput.append (" + 1");
+    aInput.append (";\n");
+
+    final Object aParser = aCL.loadClass ("Behaviour")
+                              .getConstructor (Reader.class)
+                              .newInstance (new StringReader (aInput.toString ()));
+    final WeakReference <Object> aFirstToken = new WeakReference <> (GeneratedCodeCompiler.invoke (aParser,
+                                                                                                   "getToken",
+                                                                                                   Integer.valueOf (1)));
+    GeneratedCodeCompiler.invoke (aParser, "Program");
+
+    for (int i = 0; i < 10 && aFirstToken.get () != null; ++i)
+    {
+      System.gc ();
+      Thread.sleep (10);
+    }
+    assertNull ("The consumed tokens are still reachable", aFirstToken.get ());
+  }
+}
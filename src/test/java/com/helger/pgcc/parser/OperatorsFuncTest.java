@@ -0,0 +1,136 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedCodeCompiler;
+
+/**
+ * Test the parsers generated for the OPERATORS expansion of the demo grammars.
+ */
+public final class OperatorsFuncTest
+{
+  @Nonnull
+  private static ClassLoader _compile (@Nonnull final String sGrammar) throws Exception
+  {
+    final File fDest = new File ("target/operators/" + sGrammar);
+    GeneratedCodeCompiler.generate (new File ("grammars/" + sGrammar), fDest, "-JDK_VERSION=1.8");
+    return GeneratedCodeCompiler.compile (fDest);
+  }
+
+  @Nonnull
+  private static Object _createParser (@Nonnull final ClassLoader aCL,
+                                       @Nonnull final String sClassName,
+                                       @Nonnull final String sInput) throws Exception
+  {
+    return aCL.loadClass (sClassName).getConstructor (Reader.class).newInstance (new StringReader (sInput));
+  }
+
+  private static long _evaluate (@Nonnull final ClassLoader aCL, @Nonnull final String sInput) throws Exception
+  {
+    return ((Long) GeneratedCodeCompiler.invoke (_createParser (aCL, "OperatorsParser", sInput),
+                                                 "Statements")).longValue ();
+  }
+
+  @Test
+  public void testEvaluate () throws Exception
+  {
+    final ClassLoader aCL = _compile ("OperatorsParser.jj");
+
+    // RIGHT associative
+    assertEquals (512, _evaluate (aCL, "2**3**2"));
+    // LEFT associative
+    assertEquals (3, _evaluate (aCL, "10-4-3"));
+    // POSTFIX binds stronger than PREFIX
+    assertEquals (-6, _evaluate (aCL, "-3!!"));
+    // Precedence of the levels
+    assertEquals (7, _evaluate (aCL, "1 + 2 * 3"));
+    assertEquals (9, _evaluate (aCL, "(1 + 2) * 3"));
+    assertEquals (-8, _evaluate (aCL, "-2**3"));
+    assertEquals (1, _evaluate (aCL, "1 + 1 == 2 && !0"));
+    assertEquals (42, _evaluate (aCL, "a = 6; b = a + 1; a * b"));
+  }
+
+  private static void _dumpTree (@Nonnull final Object aNode, @Nonnull final StringBuilder aSB) throws Exception
+  {
+    aSB.append (aNode);
+    final Object aValue = GeneratedCodeCompiler.invoke (aNode, "jjtGetValue");
+    if (aValue != null)
+      aSB.append (':').append (aValue);
+    final int nChildren = ((Integer) GeneratedCodeCompiler.invoke (aNode, "jjtGetNumChildren")).intValue ();
+    if (nChildren > 0)
+    {
+      aSB.append ('(');
+      for (int i = 0; i < nChildren; ++i)
+      {
+        if (i > 0)
+          aSB.append (", ");
+        _dumpTree (GeneratedCodeCompiler.invoke (aNode, "jjtGetChild", Integer.valueOf (i)), aSB);
+      }
+      aSB.append (')');
+    }
+  }
+
+  @Nonnull
+  private static String _buildTree (@Nonnull final ClassLoader aCL, @Nonnull final String sInput) throws Exception
+  {
+    final Object aRoot = GeneratedCodeCompiler.invoke (_createParser (aCL, "OperatorsTree", sInput), "Start");
+    final StringBuilder aSB = new StringBuilder ();
+    _dumpTree (aRoot, aSB);
+    return aSB.toString ();
+  }
+
+  @Test
+  public void testTree () throws Exception
+  {
+    final ClassLoader aCL = _compile ("OperatorsTree.jjt");
+
+    assertEquals ("Start(Subtract(Subtract(Number:10, Number:4), Number:3))", _buildTree (aCL, "10 - 4 - 3"));
+    assertEquals ("Start(Assign(Name:a, Assign(Name:b, Add(Number:1, Multiply(Number:2, Negate(Number:3))))))",
+                  _buildTree (aCL, "a = b = 1 + 2 * -3"));
+    assertEquals ("Start(Multiply(Add(Name:x, Number:1), Increment:post(Name:y)))", _buildTree (aCL, "(x + 1) * y++"));
+    assertEquals ("Start(Negate(Increment:post(Name:x)))", _buildTree (aCL, "-x++"));
+    // The prefix "+" creates no node
+    assertEquals ("Start(Name:x)", _buildTree (aCL, "+x"));
+  }
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.helger.pgcc.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+
+import org.junit.Test;
+
+import com.helger.pgcc.GeneratedCodeCompiler;
+import com.helger.pgcc.PGPrinter;
+
+/**
+ * Test the splitting of huge methods of the generated token managers with a
+ * grammar whose jjMoveNfa_0 is far beyond the HugeMethodLimit.
+ */
+public final class SplitHugeMethodsFuncTest
+{
+  private static final File GRAMMAR = new File ("src/test/resources/behaviour/HugeLexer.jj");
+  private static final Pattern KEYWORD = Pattern.compile ("< K\\d+: \"(\\w+)\" >");
+  private static final Pattern REGEX = Pattern.compile ("< R(\\d+): \"(\\w+)\" \\(\\[\"0\"-\"(\\d)\"\\]\\)\\+ \\(\"(\\w)\"");
+
+  private static final class CollectingPrinter implements PGPrinter.IPrinter
+  {
+    private final List <String> m_aLines = new ArrayList <> ();
+
+    public void println (@Nonnull final String s)
+    {
+      m_aLines.add (s);
+    }
+
+    public void flush ()
+    {}
+
+    public void close ()
+    {}
+  }
+
+  @Nonnull
+  private static List <String> _generate (@Nonnull final File aDestDir, @Nonnull final String sSplit) throws Exception
+  {
+    final CollectingPrinter aPrinter = new CollectingPrinter ();
+    PGPrinter.init (aPrinter);
+    try
+    {
+      GeneratedCodeCompiler.generate (GRAMMAR, aDestDir, "-JDK_VERSION=1.8", "-SPLIT_HUGE_METHODS=" + sSplit);
+    }
+    finally
+    {
+      PGPrinter.init (new PGPrinter.PSPrinter (System.out, false), new PGPrinter.PSPrinter (System.err, false));
+    }
+    return aPrinter.m_aLines;
+  }
+
+  @Nonnull
+  private static String _createInput () throws Exception
+  {
+    final String sGrammar = new String (Files.readAllBytes (GRAMMAR.toPath ()), StandardCharsets.UTF_8);
+    final StringBuilder aSB = new StringBuilder ();
+    final Matcher aKeywords = KEYWORD.matcher (sGrammar);
+    while (aKeywords.find ())
+    {
+      final String sKeyword = aKeywords.group (1);
+      // The keyword, a longer identifier and a prefix of it
+      aSB.append (sKeyword).append (' ').append (sKeyword).append ("x ");
+      aSB.append (sKeyword, 0, (sKeyword.length () + 1) / 2).append ('\n');
+    }
+    final Matcher aRegExs = REGEX.matcher (sGrammar);
+    while (aRegExs.find ())
+    {
+      final String sPrefix = aRegExs.group (2);
+      final String sDigit = aRegExs.group (3);
+      aSB.append (sPrefix).append (sDigit).append ("0").append (aRegExs.group (4)).append (' ');
+      aSB.append (sPrefix).append (sDigit).append ("#").append (aRegExs.group (1)).append (' ');
+      // Not terminated
+      aSB.append (sPrefix).append (sDigit).append (' ');
+      aSB.append ("42 3.14 ").append (sPrefix).append ("_1\n");
+    }
+    return aSB.toString ();
+  }
+
+  @Nonnull
+  private static String _tokenize (@Nonnull final ClassLoader aCL, @Nonnull final String sInput) throws Exception
+  {
+    final Object aParser = aCL.loadClass ("HugeLexer").getConstructor (Reader.class).newInstance (new StringReader (sInput));
+    final StringBuilder aSB = new StringBuilder ();
+    int nTokens = 0;
+    while (true)
+    {
+      final Object aToken = GeneratedCodeCompiler.invoke (aParser, "getNextToken");
+      final int nKind = aToken.getClass ().getField ("kind").getInt (aToken);
+      aSB.append (nKind).append (' ').append (aToken).append ('\n');
+      if (nKind == 0)
+      {
+        assertTrue (nTokens > 4000);
+        return aSB.toString ();
+      }
+      nTokens++;
+    }
+  }
+
+  @Test
+  public void testSplitKeepsTokens () throws Exception
+  {
+    final File fSplit = new File ("target/behaviour/split-huge");
+    final List <String> aSplitNotes = _generate (fSplit, "true");
+    final File fUnsplit = new File ("target/behaviour/split-huge-off");
+    final List <String> aUnsplitNotes = _generate (fUnsplit, "false");
+
+    assertTrue (aSplitNotes.toString (),
+                aSplitNotes.stream ()
+                           .anyMatch (s -> s.startsWith ("Note: Method HugeLexerTokenManager.jjMoveNfa_0 ") &&
+                                           s.contains (" was split into ")));
+    assertFalse (aUnsplitNotes.toString (), aUnsplitNotes.stream ().anyMatch (s -> s.contains (" was split into ")));
+
+    final String sSplitCode = new String (Files.readAllBytes (new File (fSplit, "HugeLexerTokenManager.java").toPath ()),
+                                          StandardCharsets.UTF_8);
+    assertTrue (sSplitCode.contains ("private int jjMoveNfa_0_1("));
+
+    final String sInput = _createInput ();
+    assertEquals (_tokenize (GeneratedCodeCompiler.compile (fUnsplit), sInput),
+                  _tokenize (GeneratedCodeCompiler.compile (fSplit), sInput));
+  }
+}
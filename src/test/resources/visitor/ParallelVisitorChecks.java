@@ -0,0 +1,128 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Visits trees of the OperatorsTree demo grammar in parallel. Compiled together
+ * with the generated code by ParallelVisitorFuncTest.
+ */
+public final class ParallelVisitorChecks
+{
+  private ParallelVisitorChecks ()
+  {}
+
+  private static final class NumberCollector extends OperatorsTreeParallelVisitor
+  {
+    private final int m_nFailAt;
+
+    NumberCollector (final ForkJoinPool aPool, final int nThreshold, final int nFailAt)
+    {
+      super (aPool, nThreshold);
+      m_nFailAt = nFailAt;
+    }
+
+    @Override
+    protected Object createData (final SimpleNode node, final Object parentData)
+    {
+      return new StringBuilder ();
+    }
+
+    @Override
+    protected void mergeData (final Object target, final Object source)
+    {
+      ((StringBuilder) target).append (source);
+    }
+
+    @Override
+    public Object visit (final ASTNumber node, final Object data) throws IOException
+    {
+      final int n = Integer.parseInt ((String) node.jjtGetValue ());
+      if (n == m_nFailAt)
+        throw new IOException ("child " + n);
+      if (n % 50 == 0)
+      {
+        // Let the following ranges finish first
+        try
+        {
+          Thread.sleep (5);
+        }
+        catch (final InterruptedException ex)
+        {
+          Thread.currentThread ().interrupt ();
+        }
+      }
+      ((StringBuilder) data).append (n).append (',');
+      return data;
+    }
+  }
+
+  /**
+   * Visit a node with number children.
+   *
+   * @param nChildren
+   *        the number of children
+   * @param nThreshold
+   *        the threshold of the visitor
+   * @param nFailAt
+   *        the child at which an IOException is thrown, or -1
+   * @return the numbers in the order of the merged data
+   * @throws IOException
+   *         the exception of the child
+   */
+  public static String visitNumbers (final int nChildren, final int nThreshold, final int nFailAt) throws IOException
+  {
+    final SimpleNode aRoot = new ASTStart (OperatorsTreeTreeConstants.JJTSTART);
+    for (int i = nChildren - 1; i >= 0; --i)
+    {
+      final SimpleNode aChild = new ASTNumber (OperatorsTreeTreeConstants.JJTNUMBER);
+      aChild.jjtSetValue (Integer.toString (i));
+      aChild.jjtSetParent (aRoot);
+      aRoot.jjtAddChild (aChild, i);
+    }
+
+    final ForkJoinPool aPool = new ForkJoinPool (4);
+    try
+    {
+      final StringBuilder aSB = new StringBuilder ();
+      aRoot.jjtAccept (new NumberCollector (aPool, nThreshold, nFailAt), aSB);
+      return aSB.toString ();
+    }
+    finally
+    {
+      aPool.shutdown ();
+    }
+  }
+}
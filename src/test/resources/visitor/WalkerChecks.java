@@ -0,0 +1,138 @@
+/**
+ * Copyright 2017-2019 Philip Helger, pgcc@helger.com
+ *
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ * Author: sreeni@google.com (Sreeni Viswanadha)
+ *
+ * Copyright (c) 2006, Sun Microsystems, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice,
+ *       this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Sun Microsystems, Inc. nor the names of its
+ *       contributors may be used to endorse or promote products derived from
+ *       this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+ * THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+import java.io.StringReader;
+
+/**
+ * Walks trees of the OperatorsTree demo grammar. Compiled together with the
+ * generated code by WalkerFuncTest.
+ */
+public final class WalkerChecks
+{
+  private WalkerChecks ()
+  {}
+
+  /**
+   * @param sInput
+   *        the expression to parse
+   * @return the enter and leave calls in the order of the walk. The children of
+   *         the Multiply nodes are skipped.
+   * @throws ParseException
+   *         on error
+   */
+  public static String walk (final String sInput) throws ParseException
+  {
+    final StringBuilder aSB = new StringBuilder ();
+    new OperatorsTreeWalker ()
+    {
+      @Override
+      protected boolean enterDefault (final SimpleNode node)
+      {
+        aSB.append ('<').append (node).append (' ');
+        return true;
+      }
+
+      @Override
+      protected void leaveDefault (final SimpleNode node)
+      {
+        aSB.append (node).append ("> ");
+      }
+
+      @Override
+      protected boolean enter (final ASTMultiply node)
+      {
+        aSB.append ("<Multiply ");
+        return false;
+      }
+    }.walk (new OperatorsTree (new StringReader (sInput)).Start ());
+    return aSB.toString ().trim ();
+  }
+
+  /**
+   * Walk a chain of nodes on a thread with a small stack.
+   *
+   * @param nDepth
+   *        the depth of the chain
+   * @return whether a recursive visitor overflows the stack and the number of
+   *         entered and left nodes
+   * @throws InterruptedException
+   *         if interrupted
+   */
+  public static String walkDeep (final int nDepth) throws InterruptedException
+  {
+    final SimpleNode aRoot = new ASTStart (OperatorsTreeTreeConstants.JJTSTART);
+    SimpleNode aParent = aRoot;
+    for (int i = 0; i < nDepth; ++i)
+    {
+      final SimpleNode aChild = new ASTNegate (OperatorsTreeTreeConstants.JJTNEGATE);
+      aChild.jjtSetParent (aParent);
+      aParent.jjtAddChild (aChild, 0);
+      aParent = aChild;
+    }
+
+    final StringBuilder aSB = new StringBuilder ();
+    final Thread aThread = new Thread (null, () -> {
+      try
+      {
+        aRoot.jjtAccept (new OperatorsTreeDefaultVisitor (), null);
+        aSB.append ("recursion passed");
+      }
+      catch (final StackOverflowError ex)
+      {
+        aSB.append ("recursion overflowed");
+      }
+
+      final int [] aCounts = new int [2];
+      new OperatorsTreeWalker ()
+      {
+        @Override
+        protected boolean enterDefault (final SimpleNode node)
+        {
+          aCounts[0]++;
+          return true;
+        }
+
+        @Override
+        protected void leaveDefault (final SimpleNode node)
+        {
+          aCounts[1]++;
+        }
+      }.walk (aRoot);
+      aSB.append (", entered ").append (aCounts[0]).append (", left ").append (aCounts[1]);
+    }, "walker", 256 * 1024);
+    aThread.start ();
+    aThread.join ();
+    return aSB.toString ();
+  }
+}